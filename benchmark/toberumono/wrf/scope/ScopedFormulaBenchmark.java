@@ -0,0 +1,102 @@
+package toberumono.wrf.scope;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import toberumono.json.JSONObject;
+import toberumono.json.JSONSystem;
+
+/**
+ * Benchmarks for the {@link ScopedFormulaProcessor} and {@link Scope} resolution. The formulae are built from the values in the
+ * configuration file specified by the {@code benchmark.configuration} system property (defaults to {@code configuration.json}).
+ * 
+ * @author Toberumono
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScopedFormulaBenchmark {
+	@Param({"timing.global.duration.hours * 3600 + timing.global.duration.minutes * 60 + timing.global.duration.seconds",
+			"grib.timestep.hours % timing.global.round.hoursStep == 0 ? grib.maxConcurrentDownloads : 1", "general.maxKeptOutputs > 0 && !grib.timestep.wrap"})
+	private String formula;
+	
+	@Param({"1", "8", "32"})
+	private int depth;
+	
+	private ScopedMap configuration, leaf;
+	private ScopedFormula compiled;
+	
+	/**
+	 * Loads the configuration file and builds the {@link Scope} trees used by the benchmarks.
+	 * 
+	 * @throws IOException
+	 *             if the configuration file could not be read
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		configuration = ScopedMap.buildFromJSON((JSONObject) JSONSystem.loadJSON(Paths.get(System.getProperty("benchmark.configuration", "configuration.json"))));
+		configuration.put("computed", "=" + formula);
+		compiled = ScopedFormulaProcessor.preProcess(formula);
+		leaf = configuration;
+		for (int i = 0; i < depth; i++) { //Builds a chain of nested Scopes so that variable lookups have to walk up to the configuration's root
+			ScopedMap next = new ScopedMap(leaf);
+			leaf.put("level-" + i, next);
+			leaf = next;
+		}
+	}
+	
+	/**
+	 * @return the result of lexing and compiling the formula
+	 */
+	@Benchmark
+	public ScopedFormula preProcess() {
+		return ScopedFormulaProcessor.preProcess(formula);
+	}
+	
+	/**
+	 * @return the result of processing the formula via the cache of compiled formulae
+	 */
+	@Benchmark
+	public Object process() {
+		return ScopedFormulaProcessor.process(formula, configuration, null);
+	}
+	
+	/**
+	 * @return the result of evaluating the compiled formula from the end of the chain of nested {@link Scope Scopes}
+	 */
+	@Benchmark
+	public Object evaluateFromDepth() {
+		return compiled.evaluate(leaf, null);
+	}
+	
+	/**
+	 * @return the value of a top-level configuration section accessed from the end of the chain of nested {@link Scope Scopes}
+	 */
+	@Benchmark
+	public Object accessScope() {
+		return ScopedFormulaProcessor.accessScope("timing.global.duration.hours", leaf);
+	}
+	
+	/**
+	 * @return the value of a formula entry in a {@link ScopedMap}
+	 */
+	@Benchmark
+	public Object scopedMapGet() {
+		return configuration.get("computed");
+	}
+}
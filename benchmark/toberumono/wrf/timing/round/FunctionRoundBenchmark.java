@@ -0,0 +1,66 @@
+package toberumono.wrf.timing.round;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import toberumono.json.JSONObject;
+import toberumono.json.JSONSystem;
+import toberumono.wrf.scope.ScopedMap;
+
+/**
+ * Benchmarks for {@link FunctionRound}. The rounding functions are equivalent to the bucket rounding in the global timing section of the
+ * configuration file specified by the {@code benchmark.configuration} system property (defaults to {@code configuration.json}).
+ * 
+ * @author Toberumono
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionRoundBenchmark {
+	private FunctionRound round;
+	private Calendar base;
+	
+	/**
+	 * Loads the configuration file and builds the {@link FunctionRound} used by the benchmarks.
+	 * 
+	 * @throws IOException
+	 *             if the configuration file could not be read
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		ScopedMap configuration = ScopedMap.buildFromJSON((JSONObject) JSONSystem.loadJSON(Paths.get(System.getProperty("benchmark.configuration", "configuration.json"))));
+		ScopedMap bucket = (ScopedMap) ((ScopedMap) ((ScopedMap) configuration.get("timing")).get("global")).get("round");
+		ScopedMap parameters = new ScopedMap(null);
+		parameters.put("type", "function");
+		parameters.put("hours", "hours - (hours - " + bucket.get("hours-offset") + ") % " + bucket.get("hours-step"));
+		parameters.put("minutes", "0");
+		parameters.put("seconds", "0");
+		round = new FunctionRound(parameters, null);
+		base = Calendar.getInstance();
+		round.apply(base); //Performs the lazy computation step so that the benchmark only measures doApply
+	}
+	
+	/**
+	 * @return the rounded {@link Calendar}
+	 */
+	@Benchmark
+	public Calendar apply() {
+		return round.apply(base);
+	}
+}
@@ -42,6 +42,7 @@ import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedComponent;
+import toberumono.wrf.scope.ScopedFormulaAnalyzer;
 import toberumono.wrf.scope.ScopedMap;
 import toberumono.wrf.timing.ComputedTiming;
 import toberumono.wrf.timing.NamelistTiming;
@@ -80,6 +81,8 @@ public class Simulation extends ScopedComponent<Scope> {
 	 *            a {@link JSONObject} holding the configuration for the {@link Simulation}
 	 * @throws IOException
 	 *             if an error occurs while constructing the working directory
+	 * @throws IllegalArgumentException
+	 *             if any of the formulae in the configuration reference values that do not exist or depend on their own values
 	 */
 	public Simulation(Calendar base, Path resolver, JSONObject configuration) throws IOException {
 		super(ModuleScopedMap.buildFromJSON(configuration), null);
@@ -104,6 +107,12 @@ public class Simulation extends ScopedComponent<Scope> {
 		interval_seconds = timestep != null ? new NamelistNumber(calcIntervalSeconds(timestep)) : null;
 		doms = null;
 		serialModuleExecution = null;
+		Map<String, Scope> analysisRoots = new LinkedHashMap<>();
+		analysisRoots.put("configuration", this);
+		for (Entry<String, Module> module : modules.entrySet())
+			if (!disabledModules.contains(module.getValue())) //Disabled modules are never run, so their formulae are never evaluated
+				analysisRoots.put(module.getKey(), module.getValue());
+		ScopedFormulaAnalyzer.validate(analysisRoots); //Broken formulae should be reported before anything is run
 	}
 	
 	/**
@@ -409,6 +418,19 @@ public class Simulation extends ScopedComponent<Scope> {
 		}
 	}
 	
+	@Override
+	protected boolean isParameter(String name) {
+		switch (name) {
+			case "sim":
+			case "simulation":
+			case "source-paths":
+			case "active-paths":
+				return false;
+			default:
+				return getModule(name) == null && super.isParameter(name);
+		}
+	}
+	
 	@Override
 	public Object getValueByName(String name) throws InvalidVariableAccessException {
 		Object out = getModule(name);
@@ -0,0 +1,175 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Records which byte ranges of a partial download have been written to disk, along with the information needed to determine whether the remote file
+ * has changed since the download started. The journal is stored as a {@link Properties} file next to the partial download and is rewritten
+ * atomically each time progress is recorded.
+ * 
+ * @author Toberumono
+ */
+final class DownloadJournal {
+	private final Path path;
+	private final String url, etag, lastModified;
+	private final long length;
+	private final TreeMap<Long, Long> completed; //Maps the start of each completed range to its end (exclusive)
+	
+	/**
+	 * Constructs an empty {@link DownloadJournal}. Nothing is written to disk until progress is recorded.
+	 * 
+	 * @param path
+	 *            the {@link Path} of the journal file
+	 * @param url
+	 *            the URL being downloaded
+	 * @param length
+	 *            the length of the remote file
+	 * @param etag
+	 *            the remote file's ETag or {@code null}
+	 * @param lastModified
+	 *            the remote file's Last-Modified value or {@code null}
+	 */
+	DownloadJournal(Path path, String url, long length, String etag, String lastModified) {
+		this.path = path;
+		this.url = url;
+		this.length = length;
+		this.etag = etag;
+		this.lastModified = lastModified;
+		completed = new TreeMap<>();
+	}
+	
+	/**
+	 * Loads the {@link DownloadJournal} stored at the given {@link Path}.
+	 * 
+	 * @param path
+	 *            the {@link Path} of the journal file
+	 * @return the {@link DownloadJournal} or {@code null} if it does not exist or cannot be read
+	 */
+	static DownloadJournal load(Path path) {
+		if (!Files.isRegularFile(path))
+			return null;
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			props.load(in);
+			DownloadJournal out = new DownloadJournal(path, props.getProperty("url"), Long.parseLong(props.getProperty("length")), props.getProperty("etag"),
+					props.getProperty("last-modified"));
+			String ranges = props.getProperty("completed", "").trim();
+			if (ranges.length() > 0) {
+				for (String range : ranges.split(",")) {
+					int dash = range.indexOf('-');
+					out.add(Long.parseLong(range.substring(0, dash).trim()), Long.parseLong(range.substring(dash + 1).trim()));
+				}
+			}
+			return out;
+		}
+		catch (IOException | RuntimeException e) { //A journal that cannot be parsed is treated as missing
+			return null;
+		}
+	}
+	
+	/**
+	 * A {@link DownloadJournal} can only be used to resume a download of the same URL if the remote file has the same length and the same ETag or,
+	 * if there is no ETag, the same Last-Modified value. Journals without either validator are never resumed.
+	 * 
+	 * @param url
+	 *            the URL being downloaded
+	 * @param length
+	 *            the current length of the remote file
+	 * @param etag
+	 *            the current ETag of the remote file or {@code null}
+	 * @param lastModified
+	 *            the current Last-Modified value of the remote file or {@code null}
+	 * @return {@code true} iff the partial download recorded by the {@link DownloadJournal} can be resumed
+	 */
+	boolean matches(String url, long length, String etag, String lastModified) {
+		if (!Objects.equals(this.url, url) || this.length != length)
+			return false;
+		if (this.etag != null || etag != null)
+			return Objects.equals(this.etag, etag);
+		return this.lastModified != null && this.lastModified.equals(lastModified);
+	}
+	
+	private void add(long start, long end) {
+		if (start < 0 || end > length || start >= end)
+			throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+		Entry<Long, Long> previous = completed.floorEntry(start);
+		if (previous != null && previous.getValue() >= start) {
+			start = previous.getKey();
+			end = Math.max(end, previous.getValue());
+		}
+		for (Entry<Long, Long> next = completed.ceilingEntry(start); next != null && next.getKey() <= end; next = completed.ceilingEntry(start)) {
+			end = Math.max(end, next.getValue());
+			completed.remove(next.getKey());
+		}
+		completed.put(start, end);
+	}
+	
+	/**
+	 * Records that the given range has been written to disk and saves the {@link DownloadJournal}.
+	 * 
+	 * @param start
+	 *            the first byte in the range
+	 * @param end
+	 *            the byte after the last byte in the range
+	 * @throws IOException
+	 *             if the {@link DownloadJournal} cannot be saved
+	 */
+	synchronized void complete(long start, long end) throws IOException {
+		if (start >= end)
+			return;
+		add(start, end);
+		Properties props = new Properties();
+		props.setProperty("url", url);
+		props.setProperty("length", Long.toString(length));
+		if (etag != null)
+			props.setProperty("etag", etag);
+		if (lastModified != null)
+			props.setProperty("last-modified", lastModified);
+		StringBuilder ranges = new StringBuilder();
+		for (Entry<Long, Long> range : completed.entrySet())
+			ranges.append(',').append(range.getKey()).append('-').append(range.getValue());
+		props.setProperty("completed", ranges.length() > 0 ? ranges.substring(1) : "");
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			props.store(out, null);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * @return the ranges that have not been completed as {start, end (exclusive)} pairs in ascending order
+	 */
+	synchronized List<long[]> missing() {
+		List<long[]> out = new ArrayList<>();
+		long position = 0;
+		for (Entry<Long, Long> range : completed.entrySet()) {
+			if (range.getKey() > position)
+				out.add(new long[]{position, range.getKey()});
+			position = range.getValue();
+		}
+		if (position < length)
+			out.add(new long[]{position, length});
+		return out;
+	}
+	
+	/**
+	 * Deletes the journal file if it exists.
+	 * 
+	 * @throws IOException
+	 *             if the journal file cannot be deleted
+	 */
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+}
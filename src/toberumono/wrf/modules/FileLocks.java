@@ -0,0 +1,101 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes actions on shared files across threads and processes. A {@link FileLock} is only held on behalf of the whole JVM, so the lock file is
+ * also paired with a monitor that serializes the threads within this JVM.
+ * 
+ * @author Toberumono
+ */
+final class FileLocks {
+	private static final Map<Path, Object> monitors = new ConcurrentHashMap<>();
+	private static final byte[] RETIRED = {0};
+	
+	private FileLocks() {/* This class should not be initialized */}
+	
+	/**
+	 * An action that is performed while holding a lock.
+	 * 
+	 * @param <T>
+	 *            the type of the action's result
+	 */
+	@FunctionalInterface
+	interface LockedAction<T> {
+		
+		/**
+		 * Performs the action.
+		 * 
+		 * @return the action's result
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws InterruptedException
+		 *             if the action is interrupted
+		 */
+		T perform() throws IOException, InterruptedException;
+	}
+	
+	/**
+	 * Performs the given action while holding an exclusive lock on the given lock file. The lock file is created if it does not exist.
+	 * 
+	 * @param lockFile
+	 *            the {@link Path} to the lock file
+	 * @param action
+	 *            the action to perform
+	 * @return the action's result
+	 * @throws IOException
+	 *             if the lock cannot be acquired or the action throws an {@link IOException}
+	 * @throws InterruptedException
+	 *             if the action is interrupted
+	 */
+	static <T> T withLock(Path lockFile, LockedAction<T> action) throws IOException, InterruptedException {
+		synchronized (monitors.computeIfAbsent(lockFile.toAbsolutePath().normalize(), k -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+				return action.perform();
+			}
+		}
+	}
+	
+	/**
+	 * Performs the given action while holding an exclusive lock on the given lock file and deletes the lock file before releasing the lock. This is
+	 * meant for lock files that guard short-lived resources, which would otherwise accumulate.<br>
+	 * Runners that were already waiting for the deleted file must not proceed, so the holder marks the file as retired (by making it non-empty) after
+	 * deleting it, and a runner that acquires the lock on a retired file tries again with a new one. The lock file is never opened through another
+	 * channel while it is locked because closing that channel would release the lock on some platforms.
+	 * 
+	 * @param lockFile
+	 *            the {@link Path} to the lock file
+	 * @param action
+	 *            the action to perform
+	 * @return the action's result
+	 * @throws IOException
+	 *             if the lock cannot be acquired or the action throws an {@link IOException}
+	 * @throws InterruptedException
+	 *             if the action is interrupted
+	 */
+	static <T> T withTemporaryLock(Path lockFile, LockedAction<T> action) throws IOException, InterruptedException {
+		synchronized (monitors.computeIfAbsent(lockFile.toAbsolutePath().normalize(), k -> new Object())) {
+			while (true) {
+				try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+					if (channel.size() > 0 || !Files.exists(lockFile)) //The previous holder deleted the file while this runner was waiting for it
+						continue;
+					try {
+						return action.perform();
+					}
+					finally {
+						Files.deleteIfExists(lockFile);
+						channel.write(ByteBuffer.wrap(RETIRED), 0);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A persistent cache of GRIB files that can be shared by any number of {@link GRIBModule GRIBModules} and runner processes on the same host.<br>
+ * Each file is stored under a key derived from its URL and its validator (its ETag or, if it doesn't have one, its Last-Modified value), so a file
+ * that changes on the server is stored as a new entry. Entries are hard-linked into the destination when possible and copied otherwise (symbolic
+ * links are not used because evicting the entry would break them).<br>
+ * An entry's last-modified time records when it was downloaded, and its last-access time records when it was last used. Entries that are older than
+ * the maximum age are ignored and evicted, and the least recently used entries are evicted whenever the cache exceeds its size limit. All changes to
+ * the cache are made while holding a {@link FileLocks lock} on the cache's lock file, but only the bookkeeping is done under the lock. An entry is
+ * pinned with a hard link while the lock is held, and the copy (if one is needed) is made from the pin after the lock has been released. Similarly,
+ * the entries are scanned for eviction without holding the lock, and the lock is only taken to remove the entries that were selected.<br>
+ * The validators of the most recently stored version of each URL are also recorded so that the file can be revalidated with a conditional request
+ * instead of being downloaded again.
+ * 
+ * @author Toberumono
+ */
+public class GRIBCache {
+	private final Path entries, index, partial, pins, lockFile;
+	private final long maxBytes, maxAge;
+	private final Logger log;
+	
+	/**
+	 * Constructs a {@link GRIBCache} in the given directory, creating the directory if necessary.
+	 * 
+	 * @param directory
+	 *            the cache directory
+	 * @param maxBytes
+	 *            the maximum total size of the cached files in bytes
+	 * @param maxAge
+	 *            the maximum age of a cached file in milliseconds
+	 * @param log
+	 *            the {@link Logger} to use
+	 * @throws IOException
+	 *             if the cache directory cannot be created
+	 */
+	public GRIBCache(Path directory, long maxBytes, long maxAge, Logger log) throws IOException {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("maxBytes cannot be negative.");
+		if (maxAge < 0)
+			throw new IllegalArgumentException("maxAge cannot be negative.");
+		entries = Files.createDirectories(directory.resolve("entries"));
+		index = Files.createDirectories(directory.resolve("index"));
+		partial = Files.createDirectories(directory.resolve("partial"));
+		pins = Files.createDirectories(directory.resolve("pins"));
+		lockFile = directory.resolve("lock");
+		this.maxBytes = maxBytes;
+		this.maxAge = maxAge;
+		this.log = log;
+	}
+	
+	/**
+	 * @return the directory in which partial downloads of files that will be added to the cache should be kept
+	 */
+	public Path getPartialDirectory() {
+		return partial;
+	}
+	
+	private static String hash(String value) {
+		try {
+			StringBuilder key = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)))
+				key.append(String.format("%02x", b));
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java implementation must support SHA-256.", e);
+		}
+	}
+	
+	private Path getEntry(String url, String etag, String lastModified) {
+		return entries.resolve(hash(url + "\n" + (etag != null ? etag : lastModified)));
+	}
+	
+	private Path getIndex(String url) {
+		return index.resolve(hash(url));
+	}
+	
+	/**
+	 * A file can only be cached if it has a validator.
+	 * 
+	 * @param etag
+	 *            the file's ETag or {@code null}
+	 * @param lastModified
+	 *            the file's Last-Modified value or {@code null}
+	 * @return {@code true} iff a file with the given validators can be cached
+	 */
+	public static boolean isCacheable(String etag, String lastModified) {
+		return etag != null || lastModified != null;
+	}
+	
+	private boolean isExpired(BasicFileAttributes attributes, long now) {
+		return now - attributes.lastModifiedTime().toMillis() > maxAge;
+	}
+	
+	/**
+	 * Looks up the validators that were recorded when the given URL was last stored in the cache.
+	 * 
+	 * @param url
+	 *            the URL of the file
+	 * @return the recorded {@link Validators} or {@code null} if the cache does not have an unexpired copy of the file
+	 * @throws IOException
+	 *             if the cache cannot be read
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted
+	 */
+	public Validators getValidators(String url) throws IOException, InterruptedException {
+		Path path = getIndex(url);
+		return FileLocks.withLock(lockFile, () -> {
+			Validators validators = readIndex(path);
+			if (validators == null || !url.equals(validators.url))
+				return null;
+			Path entry = getEntry(url, validators.etag, validators.lastModified);
+			if (!Files.isRegularFile(entry)) { //Validators are only removed when they are found to refer to an evicted entry
+				Files.deleteIfExists(path);
+				return null;
+			}
+			return !isExpired(Files.readAttributes(entry, BasicFileAttributes.class), System.currentTimeMillis()) ? validators : null;
+		});
+	}
+	
+	/**
+	 * Places the cached copy of the given file at {@code dest} if the cache has an unexpired entry for it.
+	 * 
+	 * @param url
+	 *            the URL of the file
+	 * @param etag
+	 *            the file's ETag or {@code null}
+	 * @param lastModified
+	 *            the file's Last-Modified value or {@code null}
+	 * @param dest
+	 *            the {@link Path} at which the file should be placed
+	 * @return {@code true} iff the file was placed at {@code dest}
+	 * @throws IOException
+	 *             if the cache cannot be read or the file cannot be placed at {@code dest}
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted
+	 */
+	public boolean retrieve(String url, String etag, String lastModified, Path dest) throws IOException, InterruptedException {
+		if (!isCacheable(etag, lastModified))
+			return false;
+		Path entry = getEntry(url, etag, lastModified);
+		Path pin = FileLocks.withLock(lockFile, () -> {
+			if (!Files.isRegularFile(entry) || isExpired(Files.readAttributes(entry, BasicFileAttributes.class), System.currentTimeMillis()))
+				return null;
+			Files.getFileAttributeView(entry, BasicFileAttributeView.class).setTimes(null, FileTime.fromMillis(System.currentTimeMillis()), null);
+			return pin(entry, dest);
+		});
+		if (pin == null)
+			return false;
+		place(pin, dest);
+		return true;
+	}
+	
+	/**
+	 * Moves the given file into the cache, records its validators, places it at {@code dest}, and evicts entries until the cache is within its limits.
+	 * 
+	 * @param url
+	 *            the URL of the file
+	 * @param etag
+	 *            the file's ETag or {@code null}
+	 * @param lastModified
+	 *            the file's Last-Modified value or {@code null}
+	 * @param file
+	 *            the downloaded file; it is moved into the cache
+	 * @param dest
+	 *            the {@link Path} at which the file should be placed
+	 * @throws IOException
+	 *             if the file cannot be moved into the cache or placed at {@code dest}
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted
+	 */
+	public void store(String url, String etag, String lastModified, Path file, Path dest) throws IOException, InterruptedException {
+		if (!isCacheable(etag, lastModified))
+			throw new IllegalArgumentException("A file must have an ETag or a Last-Modified value to be cached.");
+		Path entry = getEntry(url, etag, lastModified);
+		Path pin = FileLocks.withLock(lockFile, () -> {
+			Files.move(file, entry, StandardCopyOption.REPLACE_EXISTING);
+			long now = System.currentTimeMillis();
+			Files.getFileAttributeView(entry, BasicFileAttributeView.class).setTimes(FileTime.fromMillis(now), FileTime.fromMillis(now), null);
+			writeIndex(getIndex(url), new Validators(url, etag, lastModified));
+			return pin(entry, dest);
+		});
+		place(pin, dest);
+		evict();
+	}
+	
+	private static Validators readIndex(Path path) {
+		if (!Files.isRegularFile(path))
+			return null;
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			props.load(in);
+			return new Validators(props.getProperty("url"), props.getProperty("etag"), props.getProperty("last-modified"));
+		}
+		catch (IOException | RuntimeException e) { //An index file that cannot be parsed is treated as missing
+			return null;
+		}
+	}
+	
+	private static void writeIndex(Path path, Validators validators) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("url", validators.url);
+		if (validators.etag != null)
+			props.setProperty("etag", validators.etag);
+		if (validators.lastModified != null)
+			props.setProperty("last-modified", validators.lastModified);
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			props.store(out, null);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Creates a hard link to the given entry so that the entry's contents remain available after the lock is released even if the entry is evicted.
+	 * The link is created next to {@code dest} if possible so that it can be moved into place. Otherwise, it is created in the cache's pin
+	 * directory, and if the cache's file system does not support hard links, the entry is copied there instead. This must be called while holding the
+	 * lock.
+	 * 
+	 * @return the {@link Path} of the pin
+	 */
+	private Path pin(Path entry, Path dest) throws IOException {
+		Path sibling = getTemporary(dest);
+		try {
+			return Files.createLink(sibling, entry);
+		}
+		catch (UnsupportedOperationException | FileSystemException e) {/* The destination is on a different file system or does not support hard links */}
+		Path pin = pins.resolve(entry.getFileName() + "." + UUID.randomUUID());
+		try {
+			return Files.createLink(pin, entry);
+		}
+		catch (UnsupportedOperationException | FileSystemException e) { //The cache's file system does not support hard links
+			return Files.copy(entry, pin);
+		}
+	}
+	
+	/**
+	 * Atomically replaces {@code dest} with the given pin, copying the pin to {@code dest}'s directory first if it is somewhere else. The pin is
+	 * always removed.
+	 */
+	private static void place(Path pin, Path dest) throws IOException {
+		Path temp = pin;
+		try {
+			if (!pin.getParent().equals(dest.toAbsolutePath().getParent()))
+				temp = Files.copy(pin, getTemporary(dest));
+			Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(pin);
+			if (temp != pin)
+				Files.deleteIfExists(temp);
+		}
+	}
+	
+	private static Path getTemporary(Path dest) {
+		Path absolute = dest.toAbsolutePath();
+		return absolute.resolveSibling(absolute.getFileName() + "." + UUID.randomUUID() + ".tmp");
+	}
+	
+	/**
+	 * Removes expired entries and then removes the least recently used entries until the cache is within its size limit. The entries are scanned
+	 * without holding the lock, and the lock is only acquired if there are entries to remove. An entry that was used or replaced after it was scanned
+	 * is kept. The recorded validators of removed entries are removed when they are {@link #getValidators(String) looked up}.
+	 */
+	private void evict() throws IOException, InterruptedException {
+		long now = System.currentTimeMillis();
+		List<Path> files = new ArrayList<>();
+		List<BasicFileAttributes> attributes = new ArrayList<>();
+		try (Stream<Path> children = Files.list(entries)) {
+			for (Path file : (Iterable<Path>) children::iterator) {
+				try {
+					attributes.add(Files.readAttributes(file, BasicFileAttributes.class));
+					files.add(file);
+				}
+				catch (NoSuchFileException e) {/* The entry was removed by another runner */}
+			}
+		}
+		List<Integer> order = new ArrayList<>(), victims = new ArrayList<>();
+		long total = 0;
+		for (int i = 0; i < files.size(); i++) {
+			if (isExpired(attributes.get(i), now))
+				victims.add(i);
+			else {
+				order.add(i);
+				total += attributes.get(i).size();
+			}
+		}
+		order.sort(Comparator.comparing(i -> attributes.get(i).lastAccessTime()));
+		for (int i = 0; i < order.size() && total > maxBytes; i++) {
+			victims.add(order.get(i));
+			total -= attributes.get(order.get(i)).size();
+		}
+		if (victims.size() == 0)
+			return;
+		FileLocks.withLock(lockFile, () -> {
+			for (int victim : victims) {
+				BasicFileAttributes scanned = attributes.get(victim), current;
+				try {
+					current = Files.readAttributes(files.get(victim), BasicFileAttributes.class);
+				}
+				catch (NoSuchFileException e) {
+					continue;
+				}
+				if (current.lastAccessTime().equals(scanned.lastAccessTime()) && current.lastModifiedTime().equals(scanned.lastModifiedTime()))
+					remove(files.get(victim));
+			}
+			return null;
+		});
+	}
+	
+	private void remove(Path entry) throws IOException {
+		log.fine("Evicting " + entry.getFileName() + " from the GRIB cache.");
+		Files.deleteIfExists(entry);
+	}
+	
+	/**
+	 * The validators that a server sent for the version of a file that is in the cache.
+	 */
+	public static final class Validators {
+		private final String url, etag, lastModified;
+		
+		Validators(String url, String etag, String lastModified) {
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+		
+		/**
+		 * @return the cached file's ETag or {@code null} if it doesn't have one
+		 */
+		public String getETag() {
+			return etag;
+		}
+		
+		/**
+		 * @return the cached file's Last-Modified value or {@code null} if it doesn't have one
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+}
@@ -0,0 +1,675 @@
+package toberumono.wrf.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Transfers GRIB files for a {@link GRIBModule}.<br>
+ * If a file is served over HTTP(S) by a server that advertises {@code Accept-Ranges: bytes}, the file is downloaded in byte ranges into a
+ * preallocated {@code .part} file, and the ranges that have been written are recorded in a {@link DownloadJournal}. Large files are split across
+ * several connections, and failed or interrupted downloads resume from the journal when they are retried (or when the same file is downloaded again
+ * into the same partial download directory). Otherwise, the file is transferred over a single connection.<br>
+ * Every connection, including the first connection of each file, holds a permit from a single pool of permits. Each file waits for its first
+ * permit, but additional segments only use permits that are free when the file's download starts, so splitting files never delays other files.<br>
+ * If a {@link GRIBCache} is provided, a file whose server supplies an ETag or Last-Modified value is looked up in the cache before it is downloaded
+ * and is added to the cache once it has been downloaded. If the cache has a copy of a file, the copy is first revalidated with a conditional GET
+ * request, so an unchanged file costs a single small HTTP exchange. Partial downloads in a shared partial download directory are locked so that only
+ * one runner works on each of them at a time.
+ * 
+ * @author Toberumono
+ */
+public class GRIBDownloader {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long JOURNAL_INTERVAL = 8L << 20;
+	private static final long COALESCE_GAP = 1L << 18;
+	private static final RemoteFile NOT_MODIFIED = new RemoteFile(-1, null, null, false);
+	
+	private final Semaphore connections;
+	private final int maxSegments, retries;
+	private final long minSegmentSize;
+	private final Path partialDirectory;
+	private final GRIBCache cache;
+	private final Logger log;
+	private final ExecutorService segmentPool;
+	
+	/**
+	 * Constructs a new {@link GRIBDownloader}.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of connections that can be open at once across all files
+	 * @param maxSegments
+	 *            the maximum number of connections that can be used to download a single file
+	 * @param minSegmentSize
+	 *            the minimum size of a segment in bytes
+	 * @param retries
+	 *            the number of times that a failed download is retried
+	 * @param partialDirectory
+	 *            the directory in which partial downloads are kept; if this is {@code null}, partial downloads are kept next to their destinations
+	 * @param cache
+	 *            the {@link GRIBCache} to check before downloading a file and to which downloaded files are added; if this is {@code null}, files
+	 *            are not cached
+	 * @param log
+	 *            the {@link Logger} to use
+	 */
+	public GRIBDownloader(int maxConnections, int maxSegments, long minSegmentSize, int retries, Path partialDirectory, GRIBCache cache, Logger log) {
+		if (maxConnections < 1)
+			throw new IllegalArgumentException("maxConnections must be greater than 0.");
+		if (minSegmentSize < 1)
+			throw new IllegalArgumentException("minSegmentSize must be greater than 0.");
+		connections = new Semaphore(maxConnections);
+		this.maxSegments = maxSegments;
+		this.minSegmentSize = minSegmentSize;
+		this.retries = Math.max(retries, 0);
+		this.partialDirectory = partialDirectory;
+		this.cache = cache;
+		this.log = log;
+		segmentPool = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "GRIB Segment Downloader");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	
+	/**
+	 * Downloads the file at the given {@link URL} to the given {@link Path}, replacing any existing file. The file only appears at {@code dest} once
+	 * it has been completely downloaded.
+	 * 
+	 * @param url
+	 *            the {@link URL} of the file
+	 * @param dest
+	 *            the {@link Path} to which the file is to be written
+	 * @throws IOException
+	 *             if every attempt to transfer the file fails
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting for a connection or a segment
+	 */
+	public void download(URL url, Path dest) throws IOException, InterruptedException {
+		withRetries(url, () -> attemptDownload(url, dest));
+	}
+	
+	/**
+	 * Downloads only the GRIB messages of the file at the given {@link URL} that contain a record whose line in the file's {@code .idx} inventory
+	 * matches one of the given {@link Pattern Patterns}. The selected messages are fetched with coalesced range requests and concatenated into
+	 * {@code dest}, which is therefore a valid (smaller) GRIB file. If the server does not publish an inventory for the file, the whole file is
+	 * {@link #download(URL, Path) downloaded} instead.
+	 * 
+	 * @param url
+	 *            the {@link URL} of the file
+	 * @param fields
+	 *            the {@link Pattern Patterns} that select records (e.g. {@code ":TMP:2 m above ground:"})
+	 * @param dest
+	 *            the {@link Path} to which the file is to be written
+	 * @throws IOException
+	 *             if every attempt to transfer the file fails
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting for a connection
+	 * @throws IllegalArgumentException
+	 *             if no records match the given {@link Pattern Patterns} (this is not retried)
+	 */
+	public void downloadSubset(URL url, Collection<Pattern> fields, Path dest) throws IOException, InterruptedException {
+		boolean[] indexed = {true};
+		withRetries(url, () -> indexed[0] = attemptSubset(url, fields, dest));
+		if (!indexed[0]) {
+			log.info("No inventory is available for " + url + ". Downloading the whole file.");
+			download(url, dest);
+		}
+	}
+	
+	private void withRetries(URL url, FileLocks.LockedAction<?> attempt) throws IOException, InterruptedException {
+		for (int i = 0;; i++) {
+			try {
+				attempt.perform();
+				return;
+			}
+			catch (InterruptedIOException e) {
+				throw e;
+			}
+			catch (IOException e) {
+				if (i >= retries)
+					throw e;
+				log.warning("Transfer of " + url + " failed (" + e.getMessage() + "). Retrying (" + (i + 1) + "/" + retries + ").");
+				log.log(Level.FINE, e.getMessage(), e);
+			}
+		}
+	}
+	
+	private Void attemptDownload(URL url, Path dest) throws IOException, InterruptedException {
+		connections.acquire();
+		try {
+			String key = url.toString();
+			RemoteFile remote = revalidate(key, url, dest);
+			if (remote == NOT_MODIFIED)
+				return null;
+			RemoteFile probed = remote != null ? remote : probe(url);
+			if (probed != null && retrieveCached(key, probed.etag, probed.lastModified, dest))
+				return null;
+			writeThrough(key, probed != null ? probed.etag : null, probed != null ? probed.lastModified : null, dest, part -> {
+				if (probed != null && probed.isRangeable() && downloadRanges(url, probed, part))
+					return probed;
+				return downloadWhole(url, part); //The file may have changed since it was probed, so only the response's validators describe it
+			});
+			return null;
+		}
+		finally {
+			connections.release();
+		}
+	}
+	
+	/**
+	 * @return {@code true} if the subset was placed at {@code dest} or {@code false} if the server does not publish an inventory for the file
+	 */
+	private boolean attemptSubset(URL url, Collection<Pattern> fields, Path dest) throws IOException, InterruptedException {
+		URL index = new URL(url.toString() + ".idx");
+		StringBuilder key = new StringBuilder(index.toString()).append('#'); //Subsets are cached under the inventory's validators
+		for (Pattern field : fields)
+			key.append(field.pattern()).append('\n');
+		connections.acquire();
+		try {
+			GRIBCache.Validators cached = cache != null ? cache.getValidators(key.toString()) : null;
+			GRIBInventory inventory = null;
+			String etag = null, lastModified = null;
+			while (inventory == null) { //The inventory and its validators must come from the same response
+				URLConnection connection = index.openConnection();
+				if (!(connection instanceof HttpURLConnection))
+					return false;
+				HttpURLConnection conn = (HttpURLConnection) connection;
+				try {
+					if (cached != null)
+						setConditionalHeaders(conn, cached);
+					int code = conn.getResponseCode();
+					if (cached != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+						if (useRevalidatedCopy(key.toString(), cached, index, dest))
+							return true;
+						cached = null; //The cached copy was evicted after it was revalidated, so the inventory is requested again
+						continue;
+					}
+					if (code != HttpURLConnection.HTTP_OK)
+						return false;
+					etag = conn.getHeaderField("ETag");
+					lastModified = conn.getHeaderField("Last-Modified");
+					try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.US_ASCII))) {
+						inventory = GRIBInventory.parse(reader);
+					}
+				}
+				finally {
+					conn.disconnect();
+				}
+			}
+			List<GRIBInventory.Request> requests = inventory.select(fields, COALESCE_GAP);
+			if (requests.size() == 0) //Retrying cannot fix the requested fields
+				throw new IllegalArgumentException("None of the records in " + index + " match the requested fields.");
+			if (retrieveCached(key.toString(), etag, lastModified, dest))
+				return true;
+			RemoteFile inventoryFile = new RemoteFile(-1, etag, lastModified, false);
+			writeThrough(key.toString(), etag, lastModified, dest, part -> {
+				try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part), BUFFER_SIZE)) {
+					for (GRIBInventory.Request request : requests)
+						fetchMessages(url, request, out);
+				}
+				return inventoryFile;
+			});
+			return true;
+		}
+		finally {
+			connections.release();
+		}
+	}
+	
+	private boolean retrieveCached(String key, String etag, String lastModified, Path dest) throws IOException, InterruptedException {
+		if (cache == null || !cache.retrieve(key, etag, lastModified, dest))
+			return false;
+		log.info("Using the cached copy of " + key);
+		return true;
+	}
+	
+	/**
+	 * If the cache has a copy of the file, sends a conditional GET request with the copy's validators. A {@code 304 Not Modified} response means that
+	 * the cached copy is current, so it is placed at {@code dest}. If the server sends the file instead, the body is discarded so that the file can
+	 * be downloaded in ranges.
+	 * 
+	 * @param key
+	 *            the key under which the file is cached
+	 * @param target
+	 *            the {@link URL} whose validators were cached
+	 * @return {@link #NOT_MODIFIED} if the cached copy was placed at {@code dest}, a {@link RemoteFile} describing the current version of
+	 *         {@code target} if the server sent it instead, or {@code null} if the file could not be revalidated
+	 */
+	private RemoteFile revalidate(String key, URL target, Path dest) throws IOException, InterruptedException {
+		GRIBCache.Validators cached = cache != null ? cache.getValidators(key) : null;
+		if (cached == null)
+			return null;
+		HttpURLConnection conn = null;
+		RemoteFile current = null;
+		boolean notModified = false;
+		try {
+			URLConnection connection = target.openConnection();
+			if (!(connection instanceof HttpURLConnection))
+				return null;
+			conn = (HttpURLConnection) connection;
+			setConditionalHeaders(conn, cached);
+			int code = conn.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED)
+				notModified = true;
+			else if (code == HttpURLConnection.HTTP_OK)
+				current = describe(conn);
+		}
+		catch (IOException e) {
+			log.log(Level.FINE, "Unable to revalidate the cached copy of " + target, e);
+			return null;
+		}
+		finally {
+			if (conn != null)
+				conn.disconnect();
+		}
+		if (!notModified)
+			return current;
+		return useRevalidatedCopy(key, cached, target, dest) ? NOT_MODIFIED : null;
+	}
+	
+	private static void setConditionalHeaders(HttpURLConnection conn, GRIBCache.Validators cached) {
+		if (cached.getETag() != null)
+			conn.setRequestProperty("If-None-Match", cached.getETag());
+		if (cached.getLastModified() != null)
+			conn.setRequestProperty("If-Modified-Since", cached.getLastModified());
+	}
+	
+	/**
+	 * Places the cached copy of a file that the server reported as not modified at {@code dest}.
+	 * 
+	 * @return {@code true} if the cached copy was placed at {@code dest} or {@code false} if it was evicted after it was revalidated
+	 */
+	private boolean useRevalidatedCopy(String key, GRIBCache.Validators cached, URL target, Path dest) throws IOException, InterruptedException {
+		//Servers are not required to repeat the validators in a 304 response, so the cached ones are used
+		if (!cache.retrieve(key, cached.getETag(), cached.getLastModified(), dest))
+			return false;
+		log.info(target + " has not been modified. Using the cached copy.");
+		return true;
+	}
+	
+	/**
+	 * Writes the file into its partial download with the given writer and then moves it into the cache (if the version that was written can be
+	 * cached) or to its destination. If the partial download directory is shared, only one runner can work on a given partial download at a time, so
+	 * the partial download is locked with a {@link FileLocks#withTemporaryLock(Path, FileLocks.LockedAction) temporary lock} and the cache is checked
+	 * again once the lock is held. The calling thread must hold one connection permit.
+	 */
+	private void writeThrough(String key, String etag, String lastModified, Path dest, PartWriter writer) throws IOException, InterruptedException {
+		Path part = getPartPath(key, dest);
+		Files.createDirectories(part.getParent());
+		FileLocks.LockedAction<Void> action = () -> {
+			RemoteFile written = writer.write(part);
+			if (cache != null && written != null && GRIBCache.isCacheable(written.etag, written.lastModified))
+				cache.store(key, written.etag, written.lastModified, part, dest);
+			else
+				Files.move(part, dest, StandardCopyOption.REPLACE_EXISTING);
+			return null;
+		};
+		if (partialDirectory == null)
+			action.perform();
+		else
+			FileLocks.withTemporaryLock(part.resolveSibling(part.getFileName() + ".lock"), () -> {
+				if (!retrieveCached(key, etag, lastModified, dest)) //Another runner may have downloaded the file while this one was waiting for the lock
+					action.perform();
+				return null;
+			});
+	}
+	
+	/**
+	 * Downloads the whole file over a single connection.
+	 * 
+	 * @return a {@link RemoteFile} describing the version of the file that was downloaded or {@code null} if the file is not served over HTTP(S)
+	 */
+	private static RemoteFile downloadWhole(URL url, Path part) throws IOException {
+		URLConnection connection = url.openConnection();
+		try (ReadableByteChannel rbc = Channels.newChannel(connection.getInputStream()); FileOutputStream fos = new FileOutputStream(part.toString());) {
+			fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+		}
+		return connection instanceof HttpURLConnection ? describe((HttpURLConnection) connection) : null;
+	}
+	
+	/**
+	 * Fetches the GRIB messages covered by the given {@link GRIBInventory.Request} and writes them to {@code out}, discarding any unwanted bytes
+	 * between them. Each message must start with a GRIB header whose length agrees with the inventory.
+	 */
+	private void fetchMessages(URL url, GRIBInventory.Request request, OutputStream out) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestProperty("Range", request.toRangeHeader());
+		try {
+			String range = conn.getHeaderField("Content-Range");
+			if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || range == null || !range.trim().startsWith("bytes " + request.getStart() + "-"))
+				throw new IOException("The server for " + url + " did not honor the range request for bytes " + request.toRangeHeader().substring(6));
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(conn.getInputStream(), BUFFER_SIZE))) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				long position = request.getStart();
+				for (long[] message : request.getMessages()) {
+					for (long skipped; position < message[0]; position += skipped)
+						if ((skipped = in.skip(message[0] - position)) <= 0)
+							throw new EOFException("The response for " + url + " ended before byte " + message[0] + ".");
+					byte[] header = new byte[16];
+					in.readFully(header);
+					long length = getMessageLength(header);
+					if (length < header.length || (message[1] >= 0 && length != message[1] - message[0]))
+						throw new IOException("The inventory for " + url + " does not match the GRIB message at byte " + message[0] + ".");
+					out.write(header);
+					for (long remaining = length - header.length; remaining > 0;) {
+						if (Thread.currentThread().isInterrupted())
+							throw new InterruptedIOException("The transfer of " + url + " was interrupted.");
+						int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+						if (read < 0)
+							throw new EOFException("The response for " + url + " ended inside the GRIB message at byte " + message[0] + ".");
+						out.write(buffer, 0, read);
+						remaining -= read;
+					}
+					position = message[0] + length;
+				}
+			}
+		}
+		finally {
+			conn.disconnect();
+		}
+	}
+	
+	/**
+	 * Reads the total length of a GRIB message from the first 16 bytes of the message (its indicator section).
+	 * 
+	 * @return the length of the message or -1 if the header does not start a GRIB edition 1 or 2 message
+	 */
+	private static long getMessageLength(byte[] header) {
+		if (header[0] != 'G' || header[1] != 'R' || header[2] != 'I' || header[3] != 'B')
+			return -1;
+		if (header[7] == 1) //GRIB1 stores the length in 3 bytes
+			return ((header[4] & 0xFFL) << 16) | ((header[5] & 0xFFL) << 8) | (header[6] & 0xFFL);
+		if (header[7] != 2) //GRIB2 stores the length in 8 bytes
+			return -1;
+		long length = 0;
+		for (int i = 8; i < 16; i++)
+			length = (length << 8) | (header[i] & 0xFFL);
+		return length;
+	}
+	
+	private Path getPartPath(String key, Path dest) {
+		try {
+			StringBuilder hash = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)))
+				hash.append(String.format("%02x", b));
+			return (partialDirectory != null ? partialDirectory : dest.toAbsolutePath().getParent()).resolve(dest.getFileName() + "." + hash.substring(0, 16) + ".part");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java implementation must support SHA-256.", e);
+		}
+	}
+	
+	/**
+	 * Sends a HEAD request to the given {@link URL} to determine whether the file can be downloaded in ranges and how it can be identified in the
+	 * cache.
+	 * 
+	 * @param url
+	 *            the {@link URL} of the file
+	 * @return a {@link RemoteFile} describing the file or {@code null} if the file is not served over HTTP(S) or the HEAD request fails
+	 */
+	private RemoteFile probe(URL url) {
+		HttpURLConnection conn = null;
+		try {
+			URLConnection connection = url.openConnection();
+			if (!(connection instanceof HttpURLConnection))
+				return null;
+			conn = (HttpURLConnection) connection;
+			conn.setRequestMethod("HEAD");
+			return conn.getResponseCode() == HttpURLConnection.HTTP_OK ? describe(conn) : null;
+		}
+		catch (IOException e) {
+			log.log(Level.FINE, "Unable to determine whether " + url + " supports ranged downloads.", e);
+			return null;
+		}
+		finally {
+			if (conn != null)
+				conn.disconnect();
+		}
+	}
+	
+	private static RemoteFile describe(HttpURLConnection conn) {
+		String encoding = conn.getContentEncoding();
+		return new RemoteFile(conn.getContentLengthLong(), conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"),
+				"bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges")) && (encoding == null || encoding.equalsIgnoreCase("identity")));
+	}
+	
+	/**
+	 * Loads the {@link DownloadJournal} for the given partial download if it can be resumed. Otherwise, the partial download is discarded and a new
+	 * {@link DownloadJournal} is returned.
+	 */
+	private DownloadJournal openJournal(URL url, RemoteFile remote, Path part) throws IOException {
+		Path path = part.resolveSibling(part.getFileName() + ".journal");
+		DownloadJournal journal = DownloadJournal.load(path);
+		if (journal != null && journal.matches(url.toString(), remote.length, remote.etag, remote.lastModified) && Files.isRegularFile(part)
+				&& Files.size(part) == remote.length) {
+			log.info("Resuming partial download of " + url);
+			return journal;
+		}
+		Files.deleteIfExists(part);
+		Files.deleteIfExists(path);
+		return new DownloadJournal(path, url.toString(), remote.length, remote.etag, remote.lastModified);
+	}
+	
+	/**
+	 * Downloads the file in byte ranges into the given partial download, resuming from its {@link DownloadJournal} if possible.
+	 * 
+	 * @return {@code true} if the file was downloaded or {@code false} if the server did not honor a range request
+	 */
+	private boolean downloadRanges(URL url, RemoteFile remote, Path part) throws IOException, InterruptedException {
+		DownloadJournal journal = openJournal(url, remote, part);
+		List<long[]> missing = journal.missing();
+		long remaining = 0;
+		for (long[] range : missing)
+			remaining += range[1] - range[0];
+		long wanted = Math.min(maxSegments, remaining / minSegmentSize) - 1;
+		int extra = 0;
+		while (extra < wanted && connections.tryAcquire())
+			extra++;
+		try {
+			fetchSegments(url, remote, part, journal, missing, remaining, extra + 1);
+			journal.delete();
+			return true;
+		}
+		catch (RangeNotHonoredException e) {
+			log.fine("The server for " + url + " did not honor a range request. Falling back to a single connection.");
+			journal.delete();
+			return false;
+		}
+		finally {
+			connections.release(extra);
+		}
+	}
+	
+	private void fetchSegments(URL url, RemoteFile remote, Path part, DownloadJournal journal, List<long[]> missing, long remaining, int count)
+			throws IOException, InterruptedException {
+		Queue<long[]> units = new ConcurrentLinkedQueue<>();
+		long unitSize = Math.max(minSegmentSize, (remaining + count - 1) / count);
+		for (long[] range : missing)
+			for (long start = range[0]; start < range[1]; start += unitSize)
+				units.add(new long[]{start, Math.min(start + unitSize, range[1])});
+		try (RandomAccessFile raf = new RandomAccessFile(part.toFile(), "rw")) {
+			raf.setLength(remote.length);
+			FileChannel out = raf.getChannel();
+			List<Future<Void>> segments = new ArrayList<>();
+			for (int i = 1; i < count && i < units.size(); i++) {
+				segments.add(segmentPool.submit(() -> {
+					fetchRanges(url, remote, out, journal, units);
+					return null;
+				}));
+			}
+			IOException failure = null;
+			try {
+				fetchRanges(url, remote, out, journal, units);
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+			for (Future<Void> segment : segments) { //Every segment must finish before the file is closed
+				try {
+					segment.get();
+				}
+				catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+				}
+				catch (InterruptedException e) {
+					segments.forEach(s -> s.cancel(true));
+					throw e;
+				}
+			}
+			if (failure != null)
+				throw failure;
+		}
+	}
+	
+	private void fetchRanges(URL url, RemoteFile remote, FileChannel out, DownloadJournal journal, Queue<long[]> units) throws IOException {
+		try {
+			for (long[] unit = units.poll(); unit != null; unit = units.poll())
+				fetchRange(url, remote, out, journal, unit[0], unit[1]);
+		}
+		catch (IOException e) {
+			units.clear(); //This stops the other connections from starting new ranges
+			throw e;
+		}
+	}
+	
+	private void fetchRange(URL url, RemoteFile remote, FileChannel out, DownloadJournal journal, long start, long end) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+		if (remote.getValidator() != null) //The server sends the whole file instead of the range if the file has changed
+			conn.setRequestProperty("If-Range", remote.getValidator());
+		long position = start, recorded = start;
+		try {
+			String range = conn.getHeaderField("Content-Range");
+			if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || range == null || !range.trim().startsWith("bytes " + start + "-"))
+				throw new RangeNotHonoredException();
+			try (InputStream in = conn.getInputStream()) {
+				ReadableByteChannel rbc = Channels.newChannel(in);
+				ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+				while (position < end) {
+					if (Thread.currentThread().isInterrupted())
+						throw new InterruptedIOException("The transfer of " + url + " was interrupted.");
+					buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+					if (rbc.read(buffer) < 0)
+						throw new IOException("The connection for bytes " + start + "-" + (end - 1) + " of " + url + " closed after " + (position - start) + " bytes.");
+					buffer.flip();
+					while (buffer.hasRemaining())
+						position += out.write(buffer, position);
+					if (position - recorded >= JOURNAL_INTERVAL) {
+						out.force(false); //The data must be on disk before the journal claims it
+						journal.complete(recorded, position);
+						recorded = position;
+					}
+				}
+			}
+			out.force(false);
+			journal.complete(recorded, position);
+		}
+		catch (IOException e) {
+			conn.disconnect();
+			if (position > recorded) { //Keep whatever was written before the failure
+				try {
+					out.force(false);
+					journal.complete(recorded, position);
+				}
+				catch (IOException j) {
+					e.addSuppressed(j);
+				}
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * The information about a remote file that is needed to download it in ranges and to identify it in the cache.
+	 */
+	private static final class RemoteFile {
+		private final long length;
+		private final String etag, lastModified;
+		private final boolean acceptsRanges;
+		
+		RemoteFile(long length, String etag, String lastModified, boolean acceptsRanges) {
+			this.length = length;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.acceptsRanges = acceptsRanges;
+		}
+		
+		/**
+		 * @return {@code true} iff the file can be downloaded in byte ranges
+		 */
+		boolean isRangeable() {
+			return acceptsRanges && length > 0;
+		}
+		
+		/**
+		 * @return the value to send in the If-Range header or {@code null} if there isn't one (weak ETags cannot be used in If-Range)
+		 */
+		String getValidator() {
+			return etag != null && !etag.startsWith("W/") ? etag : lastModified;
+		}
+	
+	}
+	
+	/**
+	 * Writes a file into a partial download.
+	 */
+	@FunctionalInterface
+	private interface PartWriter {
+		
+		/**
+		 * Writes the file.
+		 * 
+		 * @param part
+		 *            the {@link Path} of the partial download
+		 * @return a {@link RemoteFile} whose validators identify the version of the file that was written or {@code null} if the version is unknown
+		 * @throws IOException
+		 *             if the file cannot be transferred
+		 * @throws InterruptedException
+		 *             if the transfer is interrupted
+		 */
+		RemoteFile write(Path part) throws IOException, InterruptedException;
+	}
+	
+	/**
+	 * Thrown when a server responds to a range request with something other than the requested range.
+	 */
+	private static class RangeNotHonoredException extends IOException {
+		private static final long serialVersionUID = 1L;
+	}
+}
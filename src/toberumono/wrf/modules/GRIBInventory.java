@@ -0,0 +1,138 @@
+package toberumono.wrf.modules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The inventory of a GRIB file as published in the {@code .idx} file that NOMADS-style servers place next to each GRIB file.<br>
+ * Each line of an inventory describes one record: {@code number:offset:d=date:variable:level:forecast:...}. A record extends from its offset to the
+ * offset of the next record with a different offset (records that share an offset are sub-messages of the same GRIB message), and the last record
+ * extends to the end of the file.
+ * 
+ * @author Toberumono
+ */
+final class GRIBInventory {
+	private final List<String> lines;
+	private final long[] starts;
+	
+	private GRIBInventory(List<String> lines, long[] starts) {
+		this.lines = lines;
+		this.starts = starts;
+	}
+	
+	/**
+	 * Parses an inventory.
+	 * 
+	 * @param reader
+	 *            a {@link BufferedReader} over the inventory
+	 * @return the parsed {@link GRIBInventory}
+	 * @throws IOException
+	 *             if the inventory cannot be read or is malformed
+	 */
+	static GRIBInventory parse(BufferedReader reader) throws IOException {
+		List<String> lines = new ArrayList<>();
+		List<Long> starts = new ArrayList<>();
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			if ((line = line.trim()).length() == 0)
+				continue;
+			String[] parts = line.split(":", 3);
+			try {
+				if (parts.length < 3)
+					throw new NumberFormatException();
+				long start = Long.parseLong(parts[1].trim());
+				if (start < 0 || (starts.size() > 0 && start < starts.get(starts.size() - 1)))
+					throw new NumberFormatException();
+				starts.add(start);
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("Malformed inventory line: " + line);
+			}
+			lines.add(line);
+		}
+		long[] out = new long[starts.size()];
+		for (int i = 0; i < out.length; i++)
+			out[i] = starts.get(i);
+		return new GRIBInventory(lines, out);
+	}
+	
+	/**
+	 * Selects the GRIB messages that contain at least one record whose inventory line matches one of the given {@link Pattern Patterns} and groups
+	 * them into requests. Messages that are separated by fewer than {@code maxGap} unwanted bytes are placed in the same request so that they can be
+	 * downloaded with a single range request.
+	 * 
+	 * @param fields
+	 *            the {@link Pattern Patterns} that select records; each is {@link java.util.regex.Matcher#find() found} in the record's inventory line
+	 *            (e.g. {@code ":TMP:2 m above ground:"})
+	 * @param maxGap
+	 *            the largest number of unwanted bytes that can be downloaded to avoid starting a new request
+	 * @return the {@link Request Requests} that cover the selected messages in ascending order
+	 */
+	List<Request> select(Collection<Pattern> fields, long maxGap) {
+		List<long[]> messages = new ArrayList<>();
+		for (int i = 0; i < lines.size();) {
+			int next = i;
+			boolean wanted = false;
+			for (; next < lines.size() && starts[next] == starts[i]; next++)
+				for (Pattern field : fields)
+					wanted |= field.matcher(lines.get(next)).find();
+			if (wanted)
+				messages.add(new long[]{starts[i], next < lines.size() ? starts[next] : -1});
+			i = next;
+		}
+		List<Request> requests = new ArrayList<>();
+		Request current = null;
+		for (long[] message : messages) {
+			if (current == null || message[0] - current.end > maxGap)
+				requests.add(current = new Request(message[0]));
+			current.messages.add(message);
+			current.end = message[1];
+		}
+		return requests;
+	}
+	
+	/**
+	 * A single range request that covers one or more of the selected GRIB messages.
+	 */
+	static final class Request {
+		private final long start;
+		private long end;
+		private final List<long[]> messages;
+		
+		Request(long start) {
+			this.start = start;
+			messages = new ArrayList<>();
+		}
+		
+		/**
+		 * @return the first byte of the request
+		 */
+		long getStart() {
+			return start;
+		}
+		
+		/**
+		 * @return the byte after the last byte of the request or -1 if the request extends to the end of the file
+		 */
+		long getEnd() {
+			return end;
+		}
+		
+		/**
+		 * @return the selected messages as {start, end (exclusive)} pairs in ascending order; the end of the last message in the file is -1
+		 */
+		List<long[]> getMessages() {
+			return messages;
+		}
+		
+		/**
+		 * @return the value of the Range header for this request
+		 */
+		String toRangeHeader() {
+			return "bytes=" + start + "-" + (end >= 0 ? Long.toString(end - 1) : "");
+		}
+	}
+}
@@ -1,13 +1,12 @@
 package toberumono.wrf.modules;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -18,14 +17,17 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 
 import toberumono.wrf.Module;
 import toberumono.wrf.Simulation;
 import toberumono.wrf.WRFRunnerComponentFactory;
 import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
+import toberumono.wrf.scope.ScopedList;
 import toberumono.wrf.scope.ScopedMap;
 import toberumono.wrf.timing.Timing;
+import toberumono.wrf.timing.TimingSnapshot;
 
 import static java.util.Calendar.*;
 import static toberumono.wrf.SimulationConstants.*;
@@ -45,8 +47,14 @@ public class GRIBModule extends Module {
 	private volatile Timing incremented;
 	private volatile ScopedMap timestep, intermediate;
 	private Boolean wrap, useIncrementDuration;
-	private Integer maxConcurrentDownloads;
+	private Integer maxConcurrentDownloads, maxSegmentsPerFile, maxRetries;
+	private Long minSegmentSize;
+	private Path partialDirectory, cacheDirectory;
+	private Long cacheSize, cacheMaxAge;
+	private volatile ScopedList fields;
+	private volatile List<Pattern> fieldPatterns;
 	private volatile ExecutorService pool;
+	private volatile GRIBDownloader downloader;
 	
 	/**
 	 * Initializes a new {@link GRIBModule} with the given {@code parameters} for the given {@link Simulation}
@@ -65,7 +73,17 @@ public class GRIBModule extends Module {
 		wrap = null;
 		useIncrementDuration = null;
 		maxConcurrentDownloads = null;
+		maxSegmentsPerFile = null;
+		minSegmentSize = null;
+		maxRetries = null;
+		partialDirectory = null;
+		cacheDirectory = null;
+		cacheSize = null;
+		cacheMaxAge = null;
+		fields = null;
+		fieldPatterns = null;
 		pool = null;
+		downloader = null;
 	}
 	
 	/**
@@ -141,6 +159,172 @@ public class GRIBModule extends Module {
 		return maxConcurrentDownloads;
 	}
 	
+	/**
+	 * @return the maximum number of connections that can be used to download a single GRIB file. The connections count against
+	 *         {@link #getMaxConcurrentDownloads()}. Defaults to 4
+	 */
+	@NamedScopeValue("max-segments-per-file")
+	public Integer getMaxSegmentsPerFile() {
+		if (maxSegmentsPerFile == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (maxSegmentsPerFile == null) {
+					Object msf = ((ScopedMap) getParameters().get("configuration")).get("max-segments-per-file");
+					maxSegmentsPerFile = msf != null ? evaluateToNumber(msf, "max-segments-per-file").intValue() : 4;
+				}
+			}
+		return maxSegmentsPerFile;
+	}
+	
+	/**
+	 * @return the minimum number of bytes in each segment of a GRIB file that is downloaded over multiple connections. Defaults to 4 MiB
+	 */
+	@NamedScopeValue("min-segment-size")
+	public Long getMinSegmentSize() {
+		if (minSegmentSize == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (minSegmentSize == null) {
+					Object mss = ((ScopedMap) getParameters().get("configuration")).get("min-segment-size");
+					minSegmentSize = mss != null ? evaluateToNumber(mss, "min-segment-size").longValue() : 4L << 20;
+					if (minSegmentSize < 1)
+						throw new IllegalArgumentException("min-segment-size must be greater than 0.");
+				}
+			}
+		return minSegmentSize;
+	}
+	
+	/**
+	 * @return the number of times that a failed GRIB file download is retried. Retries resume partial downloads where possible. Defaults to 2
+	 */
+	@NamedScopeValue("max-retries")
+	public Integer getMaxRetries() {
+		if (maxRetries == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (maxRetries == null) {
+					Object mr = ((ScopedMap) getParameters().get("configuration")).get("max-retries");
+					maxRetries = mr != null ? evaluateToNumber(mr, "max-retries").intValue() : 2;
+				}
+			}
+		return maxRetries;
+	}
+	
+	/**
+	 * @return the directory in which partial GRIB file downloads are kept or {@code null} if they are kept in the module's active directory. Defaults
+	 *         to the "partial" subdirectory of the {@link #getCacheDirectory() cache directory} if there is one. Partial downloads can only be resumed
+	 *         by later {@link Simulation Simulations} if this is set
+	 */
+	@NamedScopeValue(value = "partial-download-directory", asString = true)
+	public Path getPartialDirectory() {
+		if (partialDirectory == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (partialDirectory == null) {
+					Object pd = ((ScopedMap) getParameters().get("configuration")).get("partial-download-directory");
+					if (pd != null)
+						partialDirectory = getSim().getResolver().resolve(evaluateToType(pd, "partial-download-directory", String.class));
+					else if (getCacheDirectory() != null)
+						partialDirectory = getCacheDirectory().resolve("partial");
+				}
+			}
+		return partialDirectory;
+	}
+	
+	/**
+	 * @return the directory of the {@link GRIBCache} that is shared by every {@link Simulation} that uses the same directory or {@code null} if
+	 *         downloaded GRIB files are not cached
+	 */
+	@NamedScopeValue(value = "cache-directory", asString = true)
+	public Path getCacheDirectory() {
+		if (cacheDirectory == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (cacheDirectory == null) {
+					Object cd = ((ScopedMap) getParameters().get("configuration")).get("cache-directory");
+					if (cd != null)
+						cacheDirectory = getSim().getResolver().resolve(evaluateToType(cd, "cache-directory", String.class));
+				}
+			}
+		return cacheDirectory;
+	}
+	
+	/**
+	 * @return the maximum total size of the files in the {@link GRIBCache} in bytes. Defaults to 20 GiB
+	 */
+	@NamedScopeValue("cache-size")
+	public Long getCacheSize() {
+		if (cacheSize == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (cacheSize == null) {
+					Object cs = ((ScopedMap) getParameters().get("configuration")).get("cache-size");
+					cacheSize = cs != null ? evaluateToNumber(cs, "cache-size").longValue() : 20L << 30;
+				}
+			}
+		return cacheSize;
+	}
+	
+	/**
+	 * @return the number of hours after which a file in the {@link GRIBCache} is no longer used. Defaults to 168 (one week)
+	 */
+	@NamedScopeValue("cache-max-age")
+	public Long getCacheMaxAge() {
+		if (cacheMaxAge == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (cacheMaxAge == null) {
+					Object cma = ((ScopedMap) getParameters().get("configuration")).get("cache-max-age");
+					cacheMaxAge = cma != null ? evaluateToNumber(cma, "cache-max-age").longValue() : 168L;
+				}
+			}
+		return cacheMaxAge;
+	}
+	
+	/**
+	 * @return a {@link ScopedList} of regular expressions that select the records to download from each GRIB file's {@code .idx} inventory (e.g.
+	 *         ":TMP:2 m above ground:"). If it is empty, whole GRIB files are downloaded
+	 */
+	@NamedScopeValue("fields")
+	public ScopedList getFields() {
+		if (fields != null) //First one is to avoid unnecessary use of synchronization
+			return fields;
+		synchronized (this) {
+			if (fields != null)
+				return fields;
+			ScopedList parsed = new ScopedList(this);
+			Object f = ((ScopedMap) getParameters().get("configuration")).get("fields");
+			if (f instanceof String)
+				parsed.add(evaluateToType(f, "fields", String.class));
+			else if (f instanceof ScopedList)
+				((ScopedList) f).stream().map(o -> evaluateToType(o, "fields", String.class)).forEach(parsed::add);
+			else if (f != null)
+				throw new IllegalArgumentException("fields must be a String or a list of Strings.");
+			fields = parsed;
+		}
+		return fields;
+	}
+	
+	private List<Pattern> getFieldPatterns() {
+		if (fieldPatterns != null)
+			return fieldPatterns;
+		synchronized (this) {
+			if (fieldPatterns == null) {
+				List<Pattern> patterns = new ArrayList<>();
+				for (Object field : getFields())
+					patterns.add(Pattern.compile((String) field));
+				fieldPatterns = patterns;
+			}
+		}
+		return fieldPatterns;
+	}
+	
+	private GRIBDownloader getDownloader() throws IOException {
+		if (downloader != null)
+			return downloader;
+		synchronized (this) {
+			if (downloader == null) {
+				GRIBCache cache = getCacheDirectory() != null ? new GRIBCache(getCacheDirectory(), getCacheSize(), TimeUnit.HOURS.toMillis(getCacheMaxAge()), getLogger()) : null;
+				downloader = new GRIBDownloader(getMaxConcurrentDownloads(), getMaxSegmentsPerFile(), getMinSegmentSize(), getMaxRetries(), getPartialDirectory(),
+						cache, getLogger());
+			}
+		}
+		return downloader;
+	}
+	
 	private ExecutorService getPool() {
 		if (pool != null)
 			return pool;
@@ -213,8 +397,9 @@ public class GRIBModule extends Module {
 			throw new IllegalArgumentException("max-concurrent-downloads must be greater than 0.");
 		
 		int[] offsets = new int[TIMING_FIELD_IDS.size()], steps = new int[TIMING_FIELD_IDS.size()];
-		Calendar constant = getTiming().getStart(), increment = (Calendar) getIncrementedTiming().getStart().clone();
-		Calendar end = useIncrementDuration() ? getIncrementedTiming().getEnd() : getSim().getTiming().getEnd();
+		TimingSnapshot incremented = getIncrementedTiming().getSnapshot();
+		Calendar constant = getTiming().getSnapshot().getStartCalendar(), increment = incremented.getStartCalendar();
+		Calendar end = (useIncrementDuration() ? incremented : getSim().getTiming().getSnapshot()).getEndCalendar();
 		if (increment.after(end)) {
 			getLogger().info("increment (" + increment.toString() + ") starts after the Simulation's end time (" + end.toString() + "). No GRIB files will be downloaded.");
 			return;
@@ -323,7 +508,8 @@ public class GRIBModule extends Module {
 	}
 	
 	/**
-	 * Transfers a file from the given {@link URL} and places it in the grib directory.<br>
+	 * Transfers a file from the given {@link URL} via the {@link GRIBDownloader} and places it in the grib directory. If any {@link #getFields()
+	 * fields} are specified, only the matching records are transferred.<br>
 	 * The filename used in the grib directory is the component of the url after the final '/' (
 	 * {@code name = url.substring(url.lastIndexOf('/') + 1)}).
 	 * 
@@ -336,12 +522,15 @@ public class GRIBModule extends Module {
 		return () -> {
 			Path dest = getSim().getActivePath(getName()).resolve(url.substring(url.lastIndexOf('/') + 1));
 			getLogger().info("Transferring: " + url + " -> " + dest.toString());
-			try (ReadableByteChannel rbc = Channels.newChannel(new URL(url).openStream()); FileOutputStream fos = new FileOutputStream(dest.toString());) {
-				fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+			try {
+				if (getFieldPatterns().size() > 0)
+					getDownloader().downloadSubset(new URL(url), getFieldPatterns(), dest);
+				else
+					getDownloader().download(new URL(url), dest);
 				getLogger().fine("Completed Transfer: " + url + " -> " + dest.toString());
 				return true; //This makes it Callable
 			}
-			catch (IOException e) {
+			catch (IOException | IllegalArgumentException e) {
 				getLogger().severe("Failed Transfer: " + url + " -> " + dest.toString());
 				getLogger().log(Level.FINE, e.getMessage(), e);
 				throw e;
@@ -18,6 +18,7 @@ import toberumono.wrf.components.parallel.Parallel;
 import toberumono.wrf.scope.ModuleScopedMap;
 import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.TimingSnapshot;
 
 import static toberumono.utils.general.ProcessBuilders.*;
 
@@ -68,7 +69,8 @@ public class WRFModule extends Module {
 		NamelistValueList<NamelistNumber> shour = new NamelistValueList<>(), sminute = new NamelistValueList<>(), ssecond = new NamelistValueList<>();
 		NamelistValueList<NamelistNumber> eyear = new NamelistValueList<>(), emonth = new NamelistValueList<>(), eday = new NamelistValueList<>();
 		NamelistValueList<NamelistNumber> ehour = new NamelistValueList<>(), eminute = new NamelistValueList<>(), esecond = new NamelistValueList<>();
-		Calendar start = getTiming().getStart(), end = getTiming().getEnd();
+		TimingSnapshot timing = getTiming().getSnapshot();
+		Calendar start = timing.getStartCalendar(), end = timing.getEndCalendar();
 		for (int i = 0; i < getSim().getDoms(); i++) {
 			syear.add(new NamelistNumber(start.get(Calendar.YEAR)));
 			smonth.add(new NamelistNumber(start.get(Calendar.MONTH) + 1)); //We have to add 1 to the month because Java's Calendar system starts the months at 0
@@ -98,13 +100,13 @@ public class WRFModule extends Module {
 		tc.put("end_second", esecond);
 		int[] runDuration = new int[timeCodes.length];
 		for (int i = timeCodes.length - 1; i > 0; i--) { //We build backward to avoid adding in additional negatives in later iterations
-			runDuration[i] += getTiming().getEnd().get(calendarCodes[i]) - getTiming().getStart().get(calendarCodes[i]);
+			runDuration[i] += end.get(calendarCodes[i]) - start.get(calendarCodes[i]);
 			while (runDuration[i] < 0) {
 				runDuration[i - 1]--;
 				runDuration[i] += timeCodeMultipliers[i];
 			}
 		}
-		runDuration[0] += getTiming().getEnd().get(calendarCodes[0]) - getTiming().getStart().get(calendarCodes[0]);
+		runDuration[0] += end.get(calendarCodes[0]) - start.get(calendarCodes[0]);
 		for (int i = 0; i < timeCodes.length; i++)
 			if (tc.containsKey("run_" + timeCodes[i]))
 				((NamelistValueList<NamelistNumber>) tc.get("run_" + timeCodes[i])).set(0, new NamelistNumber(runDuration[i]));
@@ -1,12 +1,15 @@
 package toberumono.wrf.scope;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import toberumono.utils.functions.ExceptedSupplier;
-
 /**
  * An implementation of {@link Scope} that works with the {@link NamedScopeValue} annotation to simplify the process of adding values to a
  * {@link Scope}.
@@ -16,47 +19,95 @@ import toberumono.utils.functions.ExceptedSupplier;
  *            the type of the parent {@link Scope}
  */
 public class AbstractScope<T extends Scope> implements Scope {
+	private static final MethodHandle TO_STRING;
+	static {
+		try {
+			TO_STRING = MethodHandles.lookup().findStatic(AbstractScope.class, "asString", MethodType.methodType(Object.class, Object.class));
+		}
+		catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/*
+	 * Reflection is only performed the first time that an instance of a given class is constructed. Every subsequent instance of that class shares
+	 * the resulting table.
+	 */
+	private static final ClassValue<Map<String, MethodHandle>> namedItemTables = new ClassValue<Map<String, MethodHandle>>() {
+		@Override
+		protected Map<String, MethodHandle> computeValue(Class<?> type) {
+			Map<String, MethodHandle> namedItems = new HashMap<>();
+			for (Field f : type.getFields())
+				addFieldIfNamed(namedItems, f);
+			for (Field f : type.getDeclaredFields()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
+				addFieldIfNamed(namedItems, f);
+			for (Method m : type.getMethods())
+				addMethodIfNamed(namedItems, m);
+			for (Method m : type.getDeclaredMethods()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
+				addMethodIfNamed(namedItems, m);
+			return Collections.unmodifiableMap(namedItems);
+		}
+	};
+	
 	private final T parent;
-	private final Map<String, ExceptedSupplier<Object>> namedItems;
+	private final Map<String, MethodHandle> namedItems;
+	private final ScopeLookupCache lookups;
 	
 	/**
-	 * Constructs the {@link AbstractScope} and builds the scopes variable table from fields and methods annotated with {@link NamedScopeValue}.
+	 * Constructs the {@link AbstractScope} and binds it to the variable table built from the fields and methods in its class that are annotated with
+	 * {@link NamedScopeValue}. The table is only built once per class.
 	 * 
 	 * @param parent
 	 *            the parent {@link Scope}
 	 */
 	public AbstractScope(T parent) {
 		this.parent = parent;
-		namedItems = new HashMap<>();
-		for (Field f : getClass().getFields())
-			addFieldIfNamed(f);
-		for (Field f : getClass().getDeclaredFields()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
-			addFieldIfNamed(f);
-		for (Method m : getClass().getMethods())
-			addMethodIfNamed(m);
-		for (Method m : getClass().getDeclaredMethods()) //Second pass is to allow names declared in the current type to override those declared in its supertypes
-			addMethodIfNamed(m);
+		namedItems = namedItemTables.get(getClass());
+		lookups = new ScopeLookupCache();
 	}
 	
-	private void addFieldIfNamed(Field f) {
+	private static void addFieldIfNamed(Map<String, MethodHandle> namedItems, Field f) {
 		NamedScopeValue nsv = f.getAnnotation(NamedScopeValue.class);
 		if (nsv != null) {
 			f.setAccessible(true);
-			addNamedValue(nsv, nsv.asString() ? () -> (f.get(this) != null ? f.get(this).toString() : null) : () -> f.get(this));
+			try {
+				MethodHandle getter = MethodHandles.lookup().unreflectGetter(f);
+				addNamedValue(namedItems, nsv, Modifier.isStatic(f.getModifiers()) ? MethodHandles.dropArguments(getter, 0, Object.class) : getter);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to access " + f, e);
+			}
 		}
 	}
 	
-	private void addMethodIfNamed(Method m) {
+	private static void addMethodIfNamed(Map<String, MethodHandle> namedItems, Method m) {
 		NamedScopeValue nsv = m.getAnnotation(NamedScopeValue.class);
 		if (nsv != null) {
 			m.setAccessible(true);
-			addNamedValue(nsv, nsv.asString() ? () -> (m.invoke(this) != null ? m.invoke(this).toString() : null) : () -> m.invoke(this));
+			try {
+				MethodHandle method = MethodHandles.lookup().unreflect(m);
+				addNamedValue(namedItems, nsv, Modifier.isStatic(m.getModifiers()) ? MethodHandles.dropArguments(method, 0, Object.class) : method);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to access " + m, e);
+			}
 		}
 	}
 	
-	private void addNamedValue(NamedScopeValue nsv, ExceptedSupplier<Object> supplier) {
+	/*
+	 * Every accessor is adapted to (Object)Object so that getValueByName can use invokeExact
+	 */
+	private static void addNamedValue(Map<String, MethodHandle> namedItems, NamedScopeValue nsv, MethodHandle accessor) {
+		accessor = accessor.asType(MethodType.methodType(Object.class, Object.class));
+		if (nsv.asString()) //This calls the accessor once and then calls toString on the result
+			accessor = MethodHandles.filterReturnValue(accessor, TO_STRING);
 		for (String name : nsv.value())
-			namedItems.put(name, supplier);
+			namedItems.put(name, accessor);
+	}
+	
+	@SuppressWarnings("unused") //Used via TO_STRING
+	private static Object asString(Object value) {
+		return value != null ? value.toString() : null;
 	}
 	
 	@Override
@@ -69,11 +120,25 @@ public class AbstractScope<T extends Scope> implements Scope {
 		return namedItems.containsKey(name);
 	}
 	
+	@Override
+	public Object getScopedValueByName(String name) throws InvalidVariableAccessException {
+		Scope owner = lookups.find(this, name);
+		if (owner == null)
+			throw new InvalidVariableAccessException("Could not access " + name);
+		return owner.getValueByName(name);
+	}
+	
+	@Override
+	public boolean hasScopedValueByName(String name) {
+		return lookups.find(this, name) != null;
+	}
+	
 	@Override
 	public Object getValueByName(String name) throws InvalidVariableAccessException {
 		try {
-			if (namedItems.containsKey(name))
-				return namedItems.get(name).get();
+			MethodHandle accessor = namedItems.get(name);
+			if (accessor != null)
+				return (Object) accessor.invokeExact((Object) this);
 			else
 				throw new InvalidVariableAccessException("'" + name + "' does not exist in the current scope.");
 		}
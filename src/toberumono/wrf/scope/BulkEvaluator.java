@@ -0,0 +1,170 @@
+package toberumono.wrf.scope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.wrf.scope.ScopedFormulaAnalyzer.Node;
+
+/**
+ * Evaluates every formula in a tree of {@link ScopedMap ScopedMaps} and {@link ScopedList ScopedLists} in dependency order, evaluating formulae that
+ * do not depend on each other concurrently, and then builds an immutable snapshot of the fully-resolved tree.
+ * 
+ * @author Toberumono
+ * @see ScopedFormulaProcessor#evaluateAll(ScopedMap, java.util.concurrent.ForkJoinPool)
+ */
+final class BulkEvaluator {
+	private static final Object NULL = new Object(); //ConcurrentHashMap cannot hold null values
+	
+	private final Map<Node, Set<Node>> graph;
+	private final Executor pool;
+	private final Map<Node, CompletableFuture<Void>> tasks;
+	private final Map<Node, Object> values;
+	
+	private BulkEvaluator(Map<Node, Set<Node>> graph, Executor pool) {
+		this.graph = graph;
+		this.pool = pool;
+		tasks = new HashMap<>();
+		values = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Evaluates every formula in the tree rooted at the given {@link ScopedMap}.
+	 * 
+	 * @param root
+	 *            the root of the tree
+	 * @param pool
+	 *            the {@link Executor} on which the formulae are to be evaluated
+	 * @return an immutable snapshot of the tree
+	 */
+	static Map<String, Object> evaluateAll(ScopedMap root, Executor pool) {
+		BulkEvaluator evaluator = new BulkEvaluator(ScopedFormulaAnalyzer.buildReferenceGraph(root), pool);
+		for (List<Node> component : evaluator.getComponents())
+			evaluator.schedule(component);
+		try {
+			CompletableFuture.allOf(evaluator.tasks.values().stream().distinct().toArray(CompletableFuture<?>[]::new)).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw e;
+		}
+		return evaluator.snapshot(root);
+	}
+	
+	/*
+	 * Groups the formulae into strongly connected components with an iterative version of Tarjan's algorithm. Each component is added after every
+	 * component that it references, so the components are in dependency order.
+	 */
+	private List<List<Node>> getComponents() {
+		Map<Node, Integer> index = new HashMap<>(), low = new HashMap<>();
+		Deque<Node> stack = new ArrayDeque<>(), path = new ArrayDeque<>();
+		Deque<Iterator<Node>> pending = new ArrayDeque<>(); //The unexplored references of each node on the path
+		Set<Node> onStack = new HashSet<>();
+		List<List<Node>> components = new ArrayList<>();
+		for (Node root : graph.keySet()) {
+			if (index.containsKey(root))
+				continue;
+			for (Node next = root;;) {
+				if (next != null) {
+					index.put(next, index.size());
+					low.put(next, index.get(next));
+					stack.push(next);
+					onStack.add(next);
+					path.push(next);
+					pending.push(graph.get(next).iterator());
+					next = null;
+				}
+				if (path.isEmpty())
+					break;
+				Node node = path.peek();
+				if (pending.peek().hasNext()) {
+					Node dependency = pending.peek().next();
+					if (!graph.containsKey(dependency)) //Formulae outside of the tree are evaluated when they are first read
+						continue;
+					if (!index.containsKey(dependency))
+						next = dependency;
+					else if (onStack.contains(dependency))
+						low.put(node, Math.min(low.get(node), index.get(dependency)));
+					continue;
+				}
+				path.pop();
+				pending.pop();
+				if (!path.isEmpty())
+					low.put(path.peek(), Math.min(low.get(path.peek()), low.get(node)));
+				if (low.get(node).equals(index.get(node))) {
+					List<Node> component = new ArrayList<>();
+					Node member;
+					do {
+						onStack.remove(member = stack.pop());
+						component.add(member);
+					} while (member != node);
+					components.add(component);
+				}
+			}
+		}
+		return components;
+	}
+	
+	/*
+	 * The analyzer rejects cycles that are followed every time their formulae are evaluated, so the formulae in a component only reference each other
+	 * in branches that might not be taken. They are evaluated one after another in a single task, reading each other lazily.
+	 */
+	private void schedule(List<Node> component) {
+		List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+		for (Node node : component)
+			for (Node dependency : graph.get(node))
+				if (tasks.containsKey(dependency)) //Only components that have already been scheduled are in tasks
+					dependencies.add(tasks.get(dependency));
+		CompletableFuture<Void> task = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()])).thenRunAsync(() -> {
+			for (Node node : component) {
+				Object value = node.evaluate();
+				values.put(node, value == null ? NULL : value);
+			}
+		}, pool);
+		for (Node node : component)
+			tasks.put(node, task);
+	}
+	
+	private Map<String, Object> snapshot(ScopedMap map) {
+		Map<String, Object> out = new LinkedHashMap<>();
+		for (Entry<String, Object> e : map.getRawValues().entrySet())
+			out.put(e.getKey(), snapshot(new Node(map, e.getKey()), e.getValue()));
+		return Collections.unmodifiableMap(out);
+	}
+	
+	private List<Object> snapshot(ScopedList list) {
+		List<Object> raw = list.getRawValues(), out = new ArrayList<>(raw.size());
+		for (int i = 0; i < raw.size(); i++)
+			out.add(snapshot(new Node(list, i), raw.get(i)));
+		return Collections.unmodifiableList(out);
+	}
+	
+	private Object snapshot(Node node, Object raw) {
+		if (raw instanceof ScopedFormula) {
+			Object value = values.get(node);
+			return value == NULL ? null : value;
+		}
+		if (raw instanceof ScopedMap)
+			return snapshot((ScopedMap) raw);
+		if (raw instanceof ScopedList)
+			return snapshot((ScopedList) raw);
+		return raw instanceof ConsCell ? node.evaluate() : raw;
+	}
+}
@@ -0,0 +1,171 @@
+package toberumono.wrf.scope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the {@link ScopedMap} and {@link ScopedList} entries that are read while a {@link ScopedFormula} is being evaluated so that its result can
+ * be reused until one of those entries is modified.<br>
+ * Values provided by other implementations of {@link Scope} (e.g. {@link AbstractScope}) are assumed to be fixed once the {@link Scope} tree has
+ * been built.
+ * 
+ * @author Toberumono
+ */
+final class FormulaDependencies {
+	private static final AtomicLong clock = new AtomicLong(0);
+	private static final ThreadLocal<FormulaDependencies> current = new ThreadLocal<>();
+	
+	private final FormulaDependencies enclosing;
+	private final Map<String, Result> cache;
+	private final String fieldName;
+	private final List<Stamps> sources;
+	private final List<String> keys;
+	private final List<Long> stamps;
+	
+	private FormulaDependencies(FormulaDependencies enclosing, Map<String, Result> cache, String fieldName) {
+		this.enclosing = enclosing;
+		this.cache = cache;
+		this.fieldName = fieldName;
+		sources = new ArrayList<>();
+		keys = new ArrayList<>();
+		stamps = new ArrayList<>();
+	}
+	
+	private void add(Stamps source, String key, long stamp) {
+		sources.add(source);
+		keys.add(key);
+		stamps.add(stamp);
+	}
+	
+	/**
+	 * Records that the entry with the given key in the structure that owns the given {@link Stamps} was read. If no {@link ScopedFormula} is being
+	 * evaluated on the current thread, this does nothing.
+	 * 
+	 * @param source
+	 *            the {@link Stamps} of the structure that was read
+	 * @param key
+	 *            the key that was read
+	 */
+	static void recordRead(Stamps source, String key) {
+		FormulaDependencies deps = current.get();
+		if (deps != null)
+			deps.add(source, key, source.get(key));
+	}
+	
+	/**
+	 * Evaluates the given {@link ScopedFormula}, re-using the result stored in {@code cache} if none of the entries that it read during its last
+	 * evaluation have been modified since.
+	 * 
+	 * @param formula
+	 *            the {@link ScopedFormula} to evaluate
+	 * @param scope
+	 *            the formula's {@link Scope}
+	 * @param fieldName
+	 *            the name of the field that the formula was assigned to
+	 * @param owner
+	 *            the {@link Stamps} of the structure that holds the formula or {@code null} if the structure cannot be modified
+	 * @param cache
+	 *            the cache of results for the structure that holds the formula; this also identifies the structure
+	 * @return the result of evaluating the formula
+	 * @throws InvalidVariableAccessException
+	 *             if the formula depends on its own value
+	 */
+	static Object evaluate(ScopedFormula formula, Scope scope, String fieldName, Stamps owner, Map<String, Result> cache) {
+		Result cached = cache.get(fieldName);
+		if (cached != null && cached.isValid()) {
+			FormulaDependencies enclosing = current.get();
+			if (enclosing != null) //The enclosing formula depends on everything that this formula depends on
+				for (int i = 0; i < cached.sources.length; i++)
+					enclosing.add(cached.sources[i], cached.keys[i], cached.stamps[i]);
+			return cached.value;
+		}
+		for (FormulaDependencies active = current.get(); active != null; active = active.enclosing)
+			if (active.cache == cache && (fieldName == null ? active.fieldName == null : fieldName.equals(active.fieldName)))
+				throw new InvalidVariableAccessException("Circular reference: the value of " + fieldName + " depends on itself.");
+		FormulaDependencies deps = new FormulaDependencies(current.get(), cache, fieldName);
+		if (owner != null) //Replacing the formula itself must invalidate the result
+			deps.add(owner, fieldName, owner.get(fieldName));
+		current.set(deps);
+		Object value;
+		try {
+			value = formula.evaluate(scope, fieldName);
+		}
+		finally {
+			if (deps.enclosing != null) {
+				current.set(deps.enclosing);
+				for (int i = 0; i < deps.sources.size(); i++)
+					deps.enclosing.add(deps.sources.get(i), deps.keys.get(i), deps.stamps.get(i));
+			}
+			else
+				current.remove();
+		}
+		cache.put(fieldName, new Result(value, deps));
+		return value;
+	}
+	
+	/**
+	 * Tracks when the entries of a {@link ScopedMap} or {@link ScopedList} were last modified. All stamps are drawn from a single increasing clock,
+	 * so a stamp that has been recorded can only be matched again if the entry has not been modified since.
+	 */
+	static final class Stamps {
+		private final Map<String, Long> keyStamps = new ConcurrentHashMap<>();
+		private volatile long all = 0;
+		
+		/**
+		 * @param key
+		 *            the key (this can be {@code null} for structures that are only tracked as a whole)
+		 * @return the stamp of the last modification that affected the given key
+		 */
+		long get(String key) {
+			Long stamp = key == null ? null : keyStamps.get(key);
+			return stamp == null ? all : Math.max(stamp, all);
+		}
+		
+		/**
+		 * Marks the entry with the given key as modified.
+		 * 
+		 * @param key
+		 *            the key
+		 */
+		void modified(String key) {
+			keyStamps.put(key, clock.incrementAndGet());
+		}
+		
+		/**
+		 * Marks every entry as modified.
+		 */
+		void modifiedAll() {
+			all = clock.incrementAndGet();
+			keyStamps.clear();
+		}
+	}
+	
+	/**
+	 * An immutable record of a {@link ScopedFormula} result and the stamps of the entries that were read to produce it.
+	 */
+	static final class Result {
+		private final Object value;
+		private final Stamps[] sources;
+		private final String[] keys;
+		private final long[] stamps;
+		
+		private Result(Object value, FormulaDependencies deps) {
+			this.value = value;
+			sources = deps.sources.toArray(new Stamps[deps.sources.size()]);
+			keys = deps.keys.toArray(new String[deps.keys.size()]);
+			stamps = new long[deps.stamps.size()];
+			for (int i = 0; i < stamps.length; i++)
+				stamps[i] = deps.stamps.get(i);
+		}
+		
+		boolean isValid() {
+			for (int i = 0; i < sources.length; i++)
+				if (sources[i].get(keys[i]) != stamps[i])
+					return false;
+			return true;
+		}
+	}
+}
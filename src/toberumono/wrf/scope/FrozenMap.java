@@ -0,0 +1,129 @@
+package toberumono.wrf.scope;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact, read-only {@link Map} that stores its keys in a sorted array alongside a parallel array of values. It is used as the backing
+ * structure of frozen {@link ScopedMap ScopedMaps}.<br>
+ * Both arrays are filled before the constructor returns and are never modified afterwards, so instances can be read from any thread without
+ * synchronization once they have been published through a final field. Every method that would modify the map throws an
+ * {@link UnsupportedOperationException}.
+ * 
+ * @author Toberumono
+ * @see ScopedMap#freeze()
+ */
+final class FrozenMap extends AbstractMap<String, Object> {
+	private final String[] keys;
+	private final Object[] values;
+	
+	/**
+	 * Creates a {@link FrozenMap} containing the entries of the given {@link ScopedMap}. Nested {@link ScopedMap ScopedMaps} and
+	 * {@link ScopedList ScopedLists} that belong to {@code source} are frozen as well.
+	 * 
+	 * @param source
+	 *            the {@link ScopedMap} being frozen
+	 * @param backing
+	 *            the raw entries of {@code source}
+	 * @param copy
+	 *            the frozen copy of {@code source}, which becomes the parent of the frozen copies of the nested structures
+	 */
+	FrozenMap(ScopedMap source, Map<String, Object> backing, Scope copy) {
+		keys = backing.keySet().toArray(new String[backing.size()]);
+		Arrays.sort(keys);
+		values = new Object[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			values[i] = freezeValue(backing.get(keys[i]), source, copy);
+	}
+	
+	/**
+	 * Freezes the given value if it is a {@link ScopedMap} or {@link ScopedList} whose parent is {@code source}. Structures with other parents are
+	 * shared rather than copied because they do not belong to the tree being frozen.
+	 * 
+	 * @param value
+	 *            the value
+	 * @param source
+	 *            the structure being frozen
+	 * @param copy
+	 *            the frozen copy of {@code source}
+	 * @return the value that is to be stored in {@code copy}
+	 */
+	static Object freezeValue(Object value, Scope source, Scope copy) {
+		if (value instanceof ScopedMap && ((ScopedMap) value).getParent() == source)
+			return ((ScopedMap) value).freeze(copy);
+		if (value instanceof ScopedList && ((ScopedList) value).getParent() == source)
+			return ((ScopedList) value).freeze(copy);
+		return value;
+	}
+	
+	private int indexOf(Object key) {
+		return key instanceof String ? Arrays.binarySearch(keys, key) : -1;
+	}
+	
+	@Override
+	public Object get(Object key) {
+		int index = indexOf(key);
+		return index >= 0 ? values[index] : null;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+	
+	@Override
+	public int size() {
+		return keys.length;
+	}
+	
+	@Override
+	public Object remove(Object key) {
+		throw new UnsupportedOperationException("A frozen ScopedMap cannot be modified.");
+	}
+	
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("A frozen ScopedMap cannot be modified.");
+	}
+	
+	@Override
+	public Object put(String key, Object value) {
+		throw new UnsupportedOperationException("A frozen ScopedMap cannot be modified.");
+	}
+	
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<Entry<String, Object>>() {
+			@Override
+			public int size() {
+				return keys.length;
+			}
+			
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				return new Iterator<Entry<String, Object>>() {
+					private int index = 0;
+					
+					@Override
+					public boolean hasNext() {
+						return index < keys.length;
+					}
+					
+					@Override
+					public Entry<String, Object> next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						Entry<String, Object> out = new SimpleImmutableEntry<>(keys[index], values[index]);
+						index++;
+						return out;
+					}
+				};
+			}
+		};
+	}
+}
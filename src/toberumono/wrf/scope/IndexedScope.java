@@ -0,0 +1,21 @@
+package toberumono.wrf.scope;
+
+import java.util.List;
+
+/**
+ * A {@link Scope} that also exposes a fixed set of integer values by position. {@link ScopedFormula ScopedFormulae} that have been bound to the
+ * names of those values via {@link ScopedFormula#bind(List)} read them directly from the {@link IndexedScope} instead of looking them up by name.
+ * 
+ * @author Toberumono
+ */
+public interface IndexedScope extends Scope {
+	
+	/**
+	 * This method <i>only</i> checks the current {@link Scope Scope's} values - it does not query the parent {@link Scope}.
+	 * 
+	 * @param index
+	 *            the index of the name in the {@link List} that the {@link ScopedFormula} was bound to
+	 * @return the value at the given index
+	 */
+	public int getValueByIndex(int index);
+}
@@ -23,6 +23,28 @@ public class ModuleScopedMap extends ScopedMap {
 		super(parent);
 	}
 	
+	/**
+	 * Creates a frozen copy of the given {@link ModuleScopedMap}.
+	 * 
+	 * @param parent
+	 *            the parent {@link Scope} of the copy
+	 * @param source
+	 *            the {@link ModuleScopedMap} to copy
+	 */
+	protected ModuleScopedMap(Scope parent, ModuleScopedMap source) {
+		super(parent, source);
+	}
+	
+	@Override
+	public ModuleScopedMap freeze() {
+		return (ModuleScopedMap) super.freeze();
+	}
+	
+	@Override
+	protected ModuleScopedMap freeze(Scope parent) {
+		return new ModuleScopedMap(parent, this);
+	}
+	
 	/**
 	 * @return {@link #getParent()} so that the module's scope is correctly used as the scope for computations in parameter maps
 	 */
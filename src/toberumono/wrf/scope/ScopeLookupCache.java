@@ -0,0 +1,140 @@
+package toberumono.wrf.scope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches which {@link Scope} in the parent chain of a specific {@link Scope} provides each name that has been looked up from it, including names
+ * that no {@link Scope} in the chain provides.<br>
+ * Every cached lookup is tagged with the value of a global version counter that is incremented whenever a {@link ScopedMap} or {@link ScopedList}
+ * that a lookup has passed through gains or loses a name, and lookups with an old version are repeated. Structures that no lookup has passed through
+ * cannot have affected any cached lookup, so changes to their names do not increment the counter. The names provided by other implementations of
+ * {@link Scope} are assumed to be fixed once the {@link Scope} tree has been built.
+ * 
+ * @author Toberumono
+ */
+final class ScopeLookupCache {
+	private static final AtomicLong names = new AtomicLong(0);
+	
+	private final Map<String, Lookup> lookups;
+	
+	ScopeLookupCache() {
+		lookups = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Invalidates all cached lookups. This must be called whenever a {@link ScopedMap} or {@link ScopedList} that has been
+	 * {@link #observe(Scope) observed} gains or loses a name.
+	 */
+	static void namesModified() {
+		names.incrementAndGet();
+	}
+	
+	/**
+	 * Finds the {@link Scope} that provides the given name, starting from the given {@link Scope}, which must be the {@link Scope} that owns the
+	 * {@link ScopeLookupCache}.
+	 * 
+	 * @param scope
+	 *            the {@link Scope} from which to start
+	 * @param name
+	 *            the name
+	 * @return the first {@link Scope} in the parent chain for which {@link Scope#hasValueByName(String)} returns {@code true}, or {@code null} if
+	 *         there isn't one
+	 */
+	Scope find(Scope scope, String name) {
+		Lookup lookup = lookups.get(name);
+		if (lookup == null || !lookup.isCurrent())
+			lookups.put(name, lookup = search(scope, name));
+		lookup.recordMisses(name);
+		return lookup.getOwner();
+	}
+	
+	/**
+	 * Follows the parent chain of the given {@link Scope} until it finds a {@link Scope} that provides the given name.
+	 * 
+	 * @param scope
+	 *            the {@link Scope} from which to start
+	 * @param name
+	 *            the name
+	 * @return a {@link Lookup} describing the result
+	 */
+	static Lookup search(Scope scope, String name) {
+		long version = names.get(); //This must be read before searching so that concurrent modifications invalidate the result
+		List<Scope> searched = new ArrayList<>();
+		Scope s = scope;
+		for (; s != null && !observe(s).hasValueByName(name); s = s.getParent()) {
+			if (s instanceof ScopedMap || s instanceof ScopedList)
+				searched.add(s);
+			else if (s instanceof ScopedComponent && ((ScopedComponent<?>) s).getParameters() != null)
+				searched.add(((ScopedComponent<?>) s).getParameters());
+		}
+		return new Lookup(s, searched.toArray(new Scope[searched.size()]), version);
+	}
+	
+	/**
+	 * Marks the {@link ScopedMap} or {@link ScopedList} that provides the names of the given {@link Scope} as observed so that changes to its names
+	 * invalidate the cached lookups. This must be called before the {@link Scope} is checked for a name.
+	 * 
+	 * @param scope
+	 *            the {@link Scope} that a lookup is passing through
+	 * @return {@code scope}
+	 */
+	static Scope observe(Scope scope) {
+		if (scope instanceof ScopedMap)
+			((ScopedMap) scope).observed();
+		else if (scope instanceof ScopedList)
+			((ScopedList) scope).observed();
+		else if (scope instanceof ScopedComponent && ((ScopedComponent<?>) scope).getParameters() != null)
+			((ScopedComponent<?>) scope).getParameters().observed();
+		return scope;
+	}
+	
+	/**
+	 * The result of following a parent chain until a {@link Scope} that provides a specific name was found.
+	 */
+	static final class Lookup {
+		private final Scope owner;
+		private final Scope[] searched;
+		private final long version;
+		
+		private Lookup(Scope owner, Scope[] searched, long version) {
+			this.owner = owner;
+			this.searched = searched;
+			this.version = version;
+		}
+		
+		/**
+		 * @return the {@link Scope} that provides the name or {@code null} if no {@link Scope} in the chain provides it
+		 */
+		Scope getOwner() {
+			return owner;
+		}
+		
+		/**
+		 * @return {@code true} iff no {@link ScopedMap} or {@link ScopedList} has gained or lost a name since the {@link Lookup} was performed
+		 */
+		boolean isCurrent() {
+			return version == names.get();
+		}
+		
+		/**
+		 * A formula that uses the result of the {@link Lookup} depends on the {@link ScopedMap ScopedMaps} and {@link ScopedList ScopedLists} that
+		 * were searched not containing the name. Recording those reads allows cached formula results to be invalidated if one of them gains the
+		 * name.
+		 * 
+		 * @param name
+		 *            the name that was looked up
+		 */
+		void recordMisses(String name) {
+			for (Scope s : searched) {
+				if (s instanceof ScopedMap)
+					((ScopedMap) s).recordRead(name);
+				else
+					((ScopedList) s).recordRead();
+			}
+		}
+	}
+}
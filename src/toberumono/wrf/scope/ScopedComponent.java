@@ -50,6 +50,18 @@ public class ScopedComponent<T extends Scope> extends AbstractScope<T> {
 		}
 	}
 	
+	/**
+	 * Used to determine whether {@link #getValueByName(String)} will retrieve the named value from {@link #getParameters()} without evaluating
+	 * anything. Subclasses that override {@link #getValueByName(String)} in order to provide additional values should override this as well.
+	 * 
+	 * @param name
+	 *            the name of the value
+	 * @return {@code true} iff the value with the given name is provided by {@link #getParameters()}
+	 */
+	protected boolean isParameter(String name) {
+		return !super.hasValueByName(name) && getParameters() != null && getParameters().containsKey(name);
+	}
+	
 	/**
 	 * Takes the given {@code value} and attempts to produce an instance of {@link Number} from it. If it cannot, the given {@code field} name is used
 	 * in the error message.<br>
@@ -0,0 +1,255 @@
+package toberumono.wrf.scope;
+
+import java.util.List;
+
+import toberumono.structures.tuples.Pair;
+
+/**
+ * A formula that has been compiled by the {@link ScopedFormulaProcessor} into an immutable expression tree. Instances of {@link ScopedFormula} do
+ * not hold any state that is specific to a single evaluation, and can therefore be evaluated any number of times, in any {@link Scope}, and from any
+ * thread.
+ * 
+ * @author Toberumono
+ * @see ScopedFormulaProcessor#preProcess(String)
+ */
+public abstract class ScopedFormula {
+	
+	ScopedFormula() {/* Only the ScopedFormulaProcessor should be constructing these */}
+	
+	/**
+	 * Evaluates the {@link ScopedFormula} within the given {@link Scope}.
+	 * 
+	 * @param scope
+	 *            the formula's {@link Scope}
+	 * @param fieldName
+	 *            the name of the field that the formula was assigned to (this can be {@code null})
+	 * @return the result of evaluating the formula
+	 * @throws InvalidVariableAccessException
+	 *             if an invalid variable access is attempted in the course of evaluating the formula
+	 */
+	public abstract Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException;
+	
+	/**
+	 * Creates a copy of the {@link ScopedFormula} in which every variable that refers to one of the given names in the current {@link Scope} reads the
+	 * value at that name's index from an {@link IndexedScope} instead. When the copy is evaluated in a {@link Scope} that is not an
+	 * {@link IndexedScope}, those variables are looked up by name as usual.
+	 * 
+	 * @param names
+	 *            the names of the values held by the {@link IndexedScope} in order
+	 * @return the bound {@link ScopedFormula} (this is the {@link ScopedFormula} itself if it does not refer to any of the given names)
+	 */
+	public ScopedFormula bind(List<String> names) {
+		return this;
+	}
+}
+
+final class LiteralFormula extends ScopedFormula {
+	private final Object value;
+	
+	LiteralFormula(Object value) {
+		this.value = value;
+	}
+	
+	Object getValue() {
+		return value;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) {
+		return value;
+	}
+	
+	@Override
+	public String toString() {
+		return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+	}
+}
+
+/*
+ * Variables are resolved through interned ScopedSymbols. Formulae can be shared across threads and Scopes (e.g. via the compiled formula cache), so
+ * they do not cache lookups themselves; the ScopeLookupCache of each Scope that the lookup starts from does that instead.
+ */
+final class VariableFormula extends ScopedFormula {
+	private final ScopedSymbol symbol;
+	
+	VariableFormula(String name) {
+		symbol = ScopedSymbol.intern(name);
+	}
+	
+	ScopedSymbol getSymbol() {
+		return symbol;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException {
+		return symbol.resolve(scope);
+	}
+	
+	@Override
+	public ScopedFormula bind(List<String> names) {
+		int last = symbol.size() - 1;
+		for (int i = 0; i < last; i++) //Leading references to the current Scope (e.g. "this.hours") do not change the Scope that the name is looked up in
+			if (symbol.getKind(i) != ScopedSymbol.CURRENT)
+				return this;
+		int index = symbol.getKind(last) == ScopedSymbol.NAME ? names.indexOf(symbol.getSegment(last)) : -1;
+		return index >= 0 ? new IndexedFormula(symbol, index) : this;
+	}
+	
+	@Override
+	public String toString() {
+		return symbol.toString();
+	}
+}
+
+/*
+ * A variable that has been bound to a position in an IndexedScope
+ */
+final class IndexedFormula extends ScopedFormula {
+	private final ScopedSymbol symbol;
+	private final int index;
+	
+	IndexedFormula(ScopedSymbol symbol, int index) {
+		this.symbol = symbol;
+		this.index = index;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException {
+		return scope instanceof IndexedScope ? ((IndexedScope) scope).getValueByIndex(index) : symbol.resolve(scope);
+	}
+	
+	@Override
+	public String toString() {
+		return symbol.toString();
+	}
+}
+
+final class InheritFormula extends ScopedFormula {
+	private final String noParentMessage;
+	
+	InheritFormula(String noParentMessage) {
+		this.noParentMessage = noParentMessage;
+	}
+	
+	String getNoParentMessage() {
+		return noParentMessage;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException {
+		if (scope == null || scope.getParent() == null)
+			throw new InvalidVariableAccessException(noParentMessage);
+		return ScopedFormulaProcessor.process(fieldName, scope.getParent(), null);
+	}
+	
+	@Override
+	public String toString() {
+		return "inherit";
+	}
+}
+
+final class UnaryFormula extends ScopedFormula {
+	private final UnOperator operator;
+	private final ScopedFormula arg;
+	
+	UnaryFormula(UnOperator operator, ScopedFormula arg) {
+		this.operator = operator;
+		this.arg = arg;
+	}
+	
+	ScopedFormula getArg() {
+		return arg;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException {
+		return operator.apply(arg, scope, fieldName);
+	}
+	
+	@Override
+	public ScopedFormula bind(List<String> names) {
+		ScopedFormula bound = arg.bind(names);
+		return bound != arg ? new UnaryFormula(operator, bound) : this;
+	}
+	
+	@Override
+	public String toString() {
+		return "(" + operator.getSymbol() + " " + arg + ")";
+	}
+}
+
+final class BinaryFormula extends ScopedFormula {
+	private final BiOperator operator;
+	private final ScopedFormula left, right;
+	
+	BinaryFormula(BiOperator operator, ScopedFormula left, ScopedFormula right) {
+		this.operator = operator;
+		this.left = left;
+		this.right = right;
+	}
+	
+	BiOperator getOperator() {
+		return operator;
+	}
+	
+	ScopedFormula getLeft() {
+		return left;
+	}
+	
+	ScopedFormula getRight() {
+		return right;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException {
+		return operator.apply(left, right, scope, fieldName);
+	}
+	
+	@Override
+	public ScopedFormula bind(List<String> names) {
+		ScopedFormula boundLeft = left.bind(names), boundRight = right.bind(names);
+		return boundLeft != left || boundRight != right ? new BinaryFormula(operator, boundLeft, boundRight) : this;
+	}
+	
+	@Override
+	public String toString() {
+		return "(" + operator.getSymbol() + " " + left + " " + right + ")";
+	}
+}
+
+/*
+ * The branches of a ternary operator. The ternary operator only evaluates the branch that it selects; evaluating this directly produces a Pair of
+ * both branches' values.
+ */
+final class PairFormula extends ScopedFormula {
+	private final ScopedFormula x, y;
+	
+	PairFormula(ScopedFormula x, ScopedFormula y) {
+		this.x = x;
+		this.y = y;
+	}
+	
+	ScopedFormula getX() {
+		return x;
+	}
+	
+	ScopedFormula getY() {
+		return y;
+	}
+	
+	@Override
+	public Object evaluate(Scope scope, String fieldName) throws InvalidVariableAccessException {
+		return new Pair<>(x.evaluate(scope, fieldName), y.evaluate(scope, fieldName));
+	}
+	
+	@Override
+	public ScopedFormula bind(List<String> names) {
+		ScopedFormula boundX = x.bind(names), boundY = y.bind(names);
+		return boundX != x || boundY != y ? new PairFormula(boundX, boundY) : this;
+	}
+	
+	@Override
+	public String toString() {
+		return "(: " + x + " " + y + ")";
+	}
+}
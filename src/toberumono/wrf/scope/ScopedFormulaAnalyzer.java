@@ -0,0 +1,332 @@
+package toberumono.wrf.scope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Checks the formulae in a tree of {@link ScopedMap ScopedMaps} and {@link ScopedList ScopedLists} without evaluating them. This allows broken
+ * configurations to be reported before any work is done instead of when the broken formula is first evaluated.<br>
+ * The analysis reports:
+ * <ul>
+ * <li>variables that cannot be found in the formula's {@link Scope} or any of its parents</li>
+ * <li>uses of {@code inherit} where there is no parent or no field name to inherit</li>
+ * <li>formulae that depend on their own values, either directly or through other formulae</li>
+ * </ul>
+ * Values that can only be determined by evaluating something (e.g. those provided via {@link NamedScopeValue}) are not inspected, and problems are
+ * only reported on paths that are taken every time the formula is evaluated. Therefore, the branches of a ternary operator are only checked if its
+ * condition can be determined without evaluating anything, and the same holds for the right operand of {@code &&} and {@code ||} and their left
+ * operands.
+ * 
+ * @author Toberumono
+ */
+public class ScopedFormulaAnalyzer {
+	private static final Object UNKNOWN = new Object(); //Used for values that cannot be determined without evaluating something
+	
+	private final Map<Object, String> names;
+	private final Map<Node, Set<Node>> references, unconditionalReferences;
+	private final List<String> problems;
+	
+	private ScopedFormulaAnalyzer() {
+		names = new IdentityHashMap<>();
+		references = new LinkedHashMap<>();
+		unconditionalReferences = new HashMap<>();
+		problems = new ArrayList<>();
+	}
+	
+	/**
+	 * Analyzes the formulae in the given {@link Scope Scopes}. If a {@link Scope} is a {@link ScopedComponent}, its
+	 * {@link ScopedComponent#getParameters() parameters} are analyzed.
+	 * 
+	 * @param roots
+	 *            the {@link Scope Scopes} to analyze mapped to the names that are to be used for them in the descriptions of any problems
+	 * @return descriptions of the problems that were found; if no problems were found, the {@link List} is empty
+	 */
+	public static List<String> analyze(Map<String, ? extends Scope> roots) {
+		ScopedFormulaAnalyzer analyzer = new ScopedFormulaAnalyzer();
+		for (Entry<String, ? extends Scope> root : roots.entrySet()) {
+			Scope scope = root.getValue() instanceof ScopedComponent ? ((ScopedComponent<?>) root.getValue()).getParameters() : root.getValue();
+			if (scope != null)
+				analyzer.walk(scope, root.getKey());
+		}
+		analyzer.findCycles();
+		return analyzer.problems;
+	}
+	
+	/**
+	 * Analyzes the formulae in the given {@link Scope Scopes} and throws an exception describing every problem that was found.
+	 * 
+	 * @param roots
+	 *            the {@link Scope Scopes} to analyze mapped to the names that are to be used for them in the descriptions of any problems
+	 * @throws IllegalArgumentException
+	 *             if any problems were found
+	 * @see #analyze(Map)
+	 */
+	public static void validate(Map<String, ? extends Scope> roots) {
+		throwIfProblems(analyze(roots));
+	}
+	
+	/*
+	 * Used by ScopedFormulaProcessor.evaluateAll. Maps each formula in the tree to the formulae that it references, including those that it only
+	 * references in branches that might not be taken.
+	 */
+	static Map<Node, Set<Node>> buildReferenceGraph(ScopedMap root) {
+		ScopedFormulaAnalyzer analyzer = new ScopedFormulaAnalyzer();
+		analyzer.walk(root, "root");
+		analyzer.findCycles();
+		throwIfProblems(analyzer.problems);
+		return analyzer.references;
+	}
+	
+	private static void throwIfProblems(List<String> problems) {
+		if (problems.size() > 0)
+			throw new IllegalArgumentException("Found " + problems.size() + " problem(s) in the configuration:\n\t" + String.join("\n\t", problems));
+	}
+	
+	private void walk(Object container, String name) {
+		if (names.containsKey(container)) //Each structure only needs to be analyzed once
+			return;
+		names.put(container, name);
+		if (container instanceof ScopedMap) {
+			ScopedMap map = (ScopedMap) container;
+			for (Entry<String, Object> e : map.getRawValues().entrySet())
+				walkValue(new Node(map, e.getKey()), e.getValue(), map.getFormulaScope(), e.getKey());
+		}
+		else if (container instanceof ScopedList) {
+			ScopedList list = (ScopedList) container;
+			List<Object> values = list.getRawValues();
+			for (int i = 0; i < values.size(); i++)
+				walkValue(new Node(list, i), values.get(i), list, null);
+		}
+	}
+	
+	private void walkValue(Node node, Object value, Scope scope, String fieldName) {
+		if (value instanceof ScopedFormula) {
+			references.computeIfAbsent(node, k -> new LinkedHashSet<>());
+			visit((ScopedFormula) value, scope, fieldName, node, true);
+		}
+		else if (value instanceof ScopedMap || value instanceof ScopedList)
+			walk(value, describe(node));
+	}
+	
+	/*
+	 * Returns the value that the formula will produce if it can be determined without evaluating anything and UNKNOWN otherwise.
+	 * always is false if the formula is in a branch that might not be taken, in which case its problems are not reported.
+	 */
+	private Object visit(ScopedFormula formula, Scope scope, String fieldName, Node owner, boolean always) {
+		if (formula instanceof LiteralFormula)
+			return ((LiteralFormula) formula).getValue();
+		if (formula instanceof VariableFormula)
+			return resolvePath(scope, ((VariableFormula) formula).getSymbol(), owner, always);
+		if (formula instanceof InheritFormula) {
+			if (scope == null || scope.getParent() == null)
+				return report(owner, ((InheritFormula) formula).getNoParentMessage(), always);
+			if (fieldName == null)
+				return report(owner, "inherit can only be used in formulae that are assigned to a named field", always);
+			ScopedFormula inherited;
+			try {
+				inherited = ScopedFormulaProcessor.getCompiledFormula(fieldName);
+			}
+			catch (RuntimeException e) {
+				return report(owner, "the inherited field name, " + fieldName + ", could not be compiled: " + e.getMessage(), always);
+			}
+			return visit(inherited, scope.getParent(), null, owner, always);
+		}
+		if (formula instanceof UnaryFormula) {
+			visit(((UnaryFormula) formula).getArg(), scope, fieldName, owner, always);
+			return UNKNOWN;
+		}
+		if (formula instanceof PairFormula) {
+			visit(((PairFormula) formula).getX(), scope, fieldName, owner, always);
+			visit(((PairFormula) formula).getY(), scope, fieldName, owner, always);
+			return UNKNOWN;
+		}
+		if (formula instanceof BinaryFormula) {
+			BinaryFormula binary = (BinaryFormula) formula;
+			Object left = visit(binary.getLeft(), scope, fieldName, owner, always);
+			if (ScopedFormulaProcessor.isTernary(binary.getOperator()) && binary.getRight() instanceof PairFormula) { //Only the selected branch is evaluated
+				PairFormula branches = (PairFormula) binary.getRight();
+				if (left instanceof Boolean)
+					return visit(((Boolean) left) ? branches.getX() : branches.getY(), scope, fieldName, owner, always);
+				visit(branches.getX(), scope, fieldName, owner, false);
+				visit(branches.getY(), scope, fieldName, owner, false);
+				return UNKNOWN;
+			}
+			if (ScopedFormulaProcessor.isShortCircuiting(binary.getOperator())) { //The right operand is skipped if the left operand decides the result
+				if (left instanceof Boolean && ScopedFormulaProcessor.isShortCircuitedBy(binary.getOperator(), (Boolean) left))
+					return left;
+				Object right = visit(binary.getRight(), scope, fieldName, owner, always && left instanceof Boolean);
+				return left instanceof Boolean && right instanceof Boolean ? right : UNKNOWN;
+			}
+			Object right = visit(binary.getRight(), scope, fieldName, owner, always);
+			if (left == UNKNOWN || right == UNKNOWN)
+				return UNKNOWN;
+			if (ScopedFormulaProcessor.isAccessor(binary.getOperator()) && left instanceof Scope && right instanceof String)
+				return resolvePath((Scope) left, ScopedSymbol.intern((String) right), owner, always);
+			if (ScopedFormulaProcessor.isArrayAccess(binary.getOperator()) && left instanceof ScopedList && right instanceof Number) {
+				ScopedList list = (ScopedList) left;
+				int index = ((Number) right).intValue();
+				if (index < 0 || index >= list.getRawValues().size())
+					return report(owner, "index " + index + " is out of bounds for " + describe(list), always);
+				return rawValue(new Node(list, index), list.getRawValues().get(index), owner, always);
+			}
+		}
+		return UNKNOWN;
+	}
+	
+	/*
+	 * Mirrors ScopedSymbol.resolve
+	 */
+	private Object resolvePath(Scope scope, ScopedSymbol symbol, Node owner, boolean always) {
+		Object out = scope;
+		for (int i = 0; i < symbol.size(); i++) {
+			String n = symbol.getSegment(i);
+			if (out == UNKNOWN)
+				return UNKNOWN;
+			if (!(out instanceof Scope))
+				return report(owner, "cannot access " + n + " because " + (out == null ? "null" : out.getClass().getName()) + " is not an instance of Scope", always);
+			switch (symbol.getKind(i)) {
+				case ScopedSymbol.PARENT:
+					out = ((Scope) out).getParent();
+					if (out == null)
+						return report(owner, "the current scope does not have a parent", always);
+					break;
+				case ScopedSymbol.CURRENT:
+					break;
+				default:
+					out = resolveName((Scope) out, n, owner, always);
+			}
+		}
+		return out;
+	}
+	
+	/*
+	 * Mirrors Scope.getScopedValueByName
+	 */
+	private Object resolveName(Scope scope, String name, Node owner, boolean always) {
+		for (Scope s = scope; s != null; s = s.getParent()) {
+			try {
+				if (!s.hasValueByName(name))
+					continue;
+			}
+			catch (RuntimeException e) { //ScopedList only accepts indices as names
+				return report(owner, name + " cannot be looked up in " + describe(s), always);
+			}
+			if (s instanceof ScopedMap)
+				return rawValue(new Node(s, name), ((ScopedMap) s).getRawValues().get(name), owner, always);
+			if (s instanceof ScopedList) {
+				int index = Integer.parseInt(name);
+				return rawValue(new Node(s, index), ((ScopedList) s).getRawValues().get(index), owner, always);
+			}
+			if (s instanceof ScopedComponent && ((ScopedComponent<?>) s).isParameter(name)) {
+				ScopedMap parameters = ((ScopedComponent<?>) s).getParameters();
+				return rawValue(new Node(parameters, name), parameters.getRawValues().get(name), owner, always);
+			}
+			return UNKNOWN;
+		}
+		return report(owner, name + " could not be found in the formula's scope or any of its parents", always);
+	}
+	
+	private Object rawValue(Node node, Object value, Node owner, boolean always) {
+		if (value instanceof ScopedFormula) {
+			references.computeIfAbsent(owner, k -> new LinkedHashSet<>()).add(node);
+			if (always)
+				unconditionalReferences.computeIfAbsent(owner, k -> new LinkedHashSet<>()).add(node);
+			return UNKNOWN;
+		}
+		return value instanceof ScopedMap || value instanceof ScopedList || !(value instanceof Scope) ? value : UNKNOWN;
+	}
+	
+	private Object report(Node owner, String problem, boolean always) {
+		if (always)
+			problems.add(describe(owner) + ": " + problem);
+		return UNKNOWN;
+	}
+	
+	/*
+	 * Only references that are made every time a formula is evaluated can form a cycle that always fails. A cycle that passes through a branch that
+	 * might not be taken (e.g. a = c ? b : 1 and b = !c ? a : 2) is left to the evaluator.
+	 * This uses an explicit stack so that long chains of references cannot overflow the call stack.
+	 */
+	private void findCycles() {
+		Map<Node, Boolean> state = new HashMap<>(); //Absent = unvisited, false = in progress, true = done
+		List<Node> path = new ArrayList<>();
+		Deque<Iterator<Node>> pending = new ArrayDeque<>(); //The unexplored references of each node on the path
+		for (Node root : references.keySet()) {
+			if (state.containsKey(root))
+				continue;
+			state.put(root, false);
+			path.add(root);
+			pending.push(unconditionalReferences.getOrDefault(root, Collections.emptySet()).iterator());
+			while (!pending.isEmpty()) {
+				if (!pending.peek().hasNext()) {
+					pending.pop();
+					state.put(path.remove(path.size() - 1), true);
+					continue;
+				}
+				Node next = pending.peek().next();
+				Boolean done = state.get(next);
+				if (done == null) {
+					state.put(next, false);
+					path.add(next);
+					pending.push(unconditionalReferences.getOrDefault(next, Collections.emptySet()).iterator());
+				}
+				else if (!done) { //The node is already on the path, so the path from that point on is a cycle
+					StringBuilder description = new StringBuilder();
+					for (Node n : path.subList(path.indexOf(next), path.size()))
+						description.append(describe(n)).append(" -> ");
+					problems.add("Circular reference: " + description.append(describe(next)));
+				}
+			}
+		}
+	}
+	
+	private String describe(Node node) {
+		return describe(node.container) + (node.key instanceof Integer ? "[" + node.key + "]" : "." + node.key);
+	}
+	
+	private String describe(Object container) {
+		String name = names.get(container);
+		return name != null ? name : container.getClass().getSimpleName();
+	}
+	
+	/*
+	 * An entry in a ScopedMap or ScopedList
+	 */
+	static final class Node {
+		private final Object container, key;
+		
+		Node(Object container, Object key) {
+			this.container = container;
+			this.key = key;
+		}
+		
+		/*
+		 * Retrieves the entry's value through the normal access path so that ScopedMap entries are cached
+		 */
+		Object evaluate() {
+			return container instanceof ScopedMap ? ((ScopedMap) container).get(key) : ((ScopedList) container).get((Integer) key);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Node && ((Node) o).container == container && Objects.equals(((Node) o).key, key);
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(container) * 31 + Objects.hashCode(key);
+		}
+	}
+}
@@ -2,14 +2,15 @@ package toberumono.wrf.scope;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.Function;
-import java.util.function.UnaryOperator;
+import java.util.function.LongBinaryOperator;
 import java.util.regex.Pattern;
 
 import toberumono.lexer.BasicDescender;
@@ -32,7 +33,6 @@ import toberumono.structures.tuples.Pair;
  * @author Toberumono
  */
 public class ScopedFormulaProcessor {
-	private static final Lock lock = new ReentrantLock();
 	private static final ConsType PARENTHESES = new BasicConsType("parentheses", "(", ")");
 	private static final ConsType VARIABLE = new BasicConsType("variable");
 	private static final ConsType NUMBER = new BasicConsType("number");
@@ -50,265 +50,295 @@ public class ScopedFormulaProcessor {
 	private static final ConsType PAIR = new BasicConsType("pair");
 	private static final ConsType KEYWORD = new BasicConsType("keyword");
 	
-	private static volatile BiOperator addition, subtraction, multiplication, division, modulus, exponent, accessor, logicalAnd, logicalOr;
-	private static volatile BiOperator array, ternary, colon, compareTo, lt, lteq, gt, gteq, eq, neq, bitwiseAnd, bitwiseOr, bitwiseXor;
-	private static volatile UnOperator bitwiseNot, logicalNot, unaryPlus, unaryMinus;
+	private static final BiOperator addition, subtraction, multiplication, division, modulus, exponent, accessor, logicalAnd, logicalOr;
+	private static final BiOperator array, ternary, colon, compareTo, lt, lteq, gt, gteq, eq, neq, bitwiseAnd, bitwiseOr, bitwiseXor;
+	private static final UnOperator bitwiseNot, logicalNot, unaryPlus, unaryMinus;
 	
-	private static volatile BasicLexer lexer = null;
+	private static final int MAX_COMPILED_FORMULAE = 1024;
+	private static final Map<String, ScopedFormula> compiledFormulae = new LinkedHashMap<String, ScopedFormula>(64, 0.75f, true) { //Least recently used first
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ScopedFormula> eldest) {
+			return size() > MAX_COMPILED_FORMULAE;
+		}
+	};
+	
+	static {
+		addition = new ArithmaticOperator(6, "+", Math::addExact, (a, b) -> a + b, BigDecimal::add, BigInteger::add) {
+			@Override
+			protected Object compute(Object t, Object u) {
+				return (t instanceof String || u instanceof String) ? t.toString() + u.toString() : super.compute(t, u);
+			}
+		};
+		subtraction = new ArithmaticOperator(6, "-", Math::subtractExact, (a, b) -> a - b, BigDecimal::subtract, BigInteger::subtract);
+		multiplication = new ArithmaticOperator(5, "*", Math::multiplyExact, (a, b) -> a * b, BigDecimal::multiply, BigInteger::multiply);
+		division = new ArithmaticOperator(5, "/", (a, b) -> {
+			if (a == Long.MIN_VALUE && b == -1)
+				throw new ArithmeticException("long overflow");
+			return a / b;
+		}, (a, b) -> a / b, BigDecimal::divide, BigInteger::divide);
+		modulus = new ArithmaticOperator(5, "%", (a, b) -> {
+			if (b <= 0) //BigInteger::mod rejects non-positive moduli, so we let it produce the error
+				throw new ArithmeticException("modulus not positive");
+			return Math.floorMod(a, b);
+		}, (a, b) -> a % b, BigDecimal::remainder, BigInteger::mod);
+		exponent = new BiOperator(4, "**", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
+				if (t instanceof Number && u instanceof Number) {
+					Double res = Math.pow(((Number) t).doubleValue(), ((Number) u).doubleValue());
+					if (isMathematicalInteger((Number) t) && isMathematicalInteger((Number) u))
+						return t instanceof Long || u instanceof Long ? res.longValue() : res.intValue();
+				}
+				throw makeInvalidArgumentCombinationException(t, u);
+			}
+		};
+		accessor = new BiOperator(1, ".", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
+				if (!(t instanceof Scope))
+					throw new IllegalArgumentException("The first argument to the accessor operator must implement Scope");
+				if (!(u instanceof String))
+					throw new IllegalArgumentException("The second argument to the accessor operator must be a String");
+				return accessScope((String) u, (Scope) t);
+			}
+		};
+		unaryPlus = new UnOperator(2, "+", Associativity.RIGHT) {
+			@Override
+			public Object apply(ScopedFormula arg, Scope scope, String fieldName) {
+				Object a = evaluate(arg, scope, fieldName);
+				if (!(a instanceof Number))
+					throw new IllegalArgumentException("Arguments to the unary plus (+) operator must be an instanceof Number");
+				return a;
+			}
+		};
+		unaryMinus = new UnOperator(2, "-", Associativity.RIGHT) {
+			@Override
+			public Object apply(ScopedFormula arg, Scope scope, String fieldName) {
+				Object a = evaluate(arg, scope, fieldName);
+				if (!(a instanceof Number))
+					throw new IllegalArgumentException("Arguments to the unary plus (+) operator must be an instanceof Number");
+				if (a instanceof Integer)
+					return Math.negateExact((Integer) a);
+				if (a instanceof Long)
+					return Math.negateExact((Long) a);
+				if (a instanceof Double)
+					return -((Double) a);
+				return returnToOriginal(toBigDecimal((Number) a).negate(), ((Number) a).getClass());
+			}
+		};
+		bitwiseNot = new UnOperator(2, "~", Associativity.RIGHT) {
+			@Override
+			public Object apply(ScopedFormula arg, Scope scope, String fieldName) {
+				Object a = evaluate(arg, scope, fieldName);
+				if ((a instanceof Number) && ScopedFormulaProcessor.isMathematicalInteger((Number) a)) {
+					if (a instanceof BigInteger)
+						return ((BigInteger) a).not();
+					else if (a instanceof Long)
+						return ~((Long) a);
+					else if (a instanceof Byte)
+						return ~((Byte) a);
+					else if (a instanceof Short)
+						return ~((Short) a);
+					else if (a instanceof Integer)
+						return ~((Integer) a);
+				}
+				throw new IllegalArgumentException("The bitwise not (~) operator can only be applied to mathematical integer values (byte, short, int, long, BigInteger)");
+			}
+		};
+		logicalNot = new UnOperator(2, "!", Associativity.RIGHT) {
+			@Override
+			public Object apply(ScopedFormula arg, Scope scope, String fieldName) {
+				Object a = evaluate(arg, scope, fieldName);
+				if (!(a instanceof Boolean))
+					throw new IllegalArgumentException("The logical not (!) operator can only be applied to boolean values");
+				return !((Boolean) a);
+			}
+		};
+		compareTo = new RelationalOperator(8, "compareTo", s -> s); //Using the identity function here, while possibly slightly less efficient, allows us to re-use the code in RelationalOperator
+		lt = new RelationalOperator(8, "<", s -> s < 0);
+		lteq = new RelationalOperator(8, "<=", s -> s <= 0);
+		gt = new RelationalOperator(8, ">", s -> s > 0);
+		gteq = new RelationalOperator(8, ">=", s -> s >= 0);
+		eq = new BiOperator(9, "==", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
+				if (t instanceof Number && u instanceof Number)
+					return compareNumbers((Number) t, (Number) u) == 0;
+				return t == u || (t != null && t.equals(u));
+			}
+		};
+		neq = new BiOperator(9, "!=", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
+				if (t instanceof Number && u instanceof Number)
+					return compareNumbers((Number) t, (Number) u) != 0;
+				return t == null ? t != u : !t.equals(u);
+			}
+		};
+		bitwiseAnd = new BitwiseOperator(10, "&", (a, b) -> a & b, BigInteger::and, Boolean::logicalAnd);
+		bitwiseXor = new BitwiseOperator(11, "^", (a, b) -> a ^ b, BigInteger::xor, Boolean::logicalXor);
+		bitwiseOr = new BitwiseOperator(12, "|", (a, b) -> a | b, BigInteger::or, Boolean::logicalOr);
+		logicalAnd = new BiOperator(13, "&&", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName);
+				if (!(t instanceof Boolean))
+					throw new IllegalArgumentException("The first argument to the logical and (&&) operator must be or evaluate to a Boolean");
+				if (!((Boolean) t))
+					return false;
+				Object u = evaluate(right, scope, fieldName);
+				if (!(u instanceof Boolean))
+					throw new IllegalArgumentException("The second argument to the logical and (&&) operator must be or evaluate to a Boolean");
+				return u;
+			}
+		};
+		logicalOr = new BiOperator(14, "||", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName);
+				if (!(t instanceof Boolean))
+					throw new IllegalArgumentException("The first argument to the logical or (||) operator must be or evaluate to a Boolean");
+				if ((Boolean) t)
+					return true;
+				Object u = evaluate(right, scope, fieldName);
+				if (!(u instanceof Boolean))
+					throw new IllegalArgumentException("The second argument to the logical or (||) operator must be or evaluate to a Boolean");
+				return u;
+			}
+		};
+		ternary = new BiOperator(1, "ternary", Associativity.RIGHT) { //Although ternary is technically evaluated after all other operators, this will work because of how the arguments to ternary are evaluated
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName);
+				if (!(t instanceof Boolean))
+					throw new IllegalArgumentException("The first argument to the ternary operator must be a Boolean");
+				if (right instanceof PairFormula) //Only the selected branch is evaluated
+					return ((Boolean) t) ? ((PairFormula) right).getX().evaluate(scope, fieldName) : ((PairFormula) right).getY().evaluate(scope, fieldName);
+				Object u = evaluate(right, scope, fieldName);
+				if (!(u instanceof Pair))
+					throw new IllegalArgumentException("The second argument to the ternary operator must be a Pair");
+				return ((Boolean) t) ? ((Pair<?, ?>) u).getX() : ((Pair<?, ?>) u).getY();
+			}
+		};
+		colon = new BiOperator(17, "colon", Associativity.LEFT) {
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
+				return new Pair<>(t, u);
+			}
+		};
+		array = new BiOperator(1, "[]", Associativity.LEFT) { //This works because of when parenthetical statements are evaluated
+			@Override
+			public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+				Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName); //TODO maybe implement sublists?
+				if (!(t instanceof List))
+					throw new IllegalArgumentException("An array access operator must be preceeded by an object that implements List");
+				if (!(u instanceof Number))
+					throw new IllegalArgumentException("The index into an array access must be a number");
+				return ((List<?>) t).get(((Number) u).intValue());
+			}
+		};
+	}
 	
 	/**
 	 * @return the initialized {@link Lexer} used by the {@link ScopedFormulaProcessor}
 	 */
 	public static BasicLexer getLexer() {
-		if (ScopedFormulaProcessor.lexer != null)
-			return ScopedFormulaProcessor.lexer;
-		try {
-			lock.lock();
-			if (ScopedFormulaProcessor.lexer != null)
-				return ScopedFormulaProcessor.lexer;
-			addition = new ArithmaticOperator(6, "+", BigDecimal::add, BigInteger::add) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					return (t instanceof String || u instanceof String) ? t.toString() + u.toString() : super.apply(left, right, process);
-				}
-			};
-			subtraction = new ArithmaticOperator(6, "-", BigDecimal::subtract, BigInteger::subtract);
-			multiplication = new ArithmaticOperator(5, "*", BigDecimal::multiply, BigInteger::multiply);
-			division = new ArithmaticOperator(5, "/", BigDecimal::divide, BigInteger::divide);
-			modulus = new ArithmaticOperator(5, "%", BigDecimal::remainder, BigInteger::mod);
-			exponent = new BiOperator(4, "**", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					if (t instanceof Number && u instanceof Number) {
-						Double res = Math.pow(((Number) t).doubleValue(), ((Number) u).doubleValue());
-						if (isMathematicalInteger((Number) t) && isMathematicalInteger((Number) u))
-							return t instanceof Long || u instanceof Long ? res.longValue() : res.intValue();
-					}
-					throw makeInvalidArgumentCombinationException(t, u);
-				}
-			};
-			accessor = new BiOperator(1, ".", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					if (!(t instanceof Scope))
-						throw new IllegalArgumentException("The first argument to the accessor operator must implement Scope");
-					if (!(u instanceof String))
-						throw new IllegalArgumentException("The second argument to the accessor operator must be a String");
-					return accessScope((String) u, (Scope) t);
-				}
-			};
-			unaryPlus = new UnOperator(2, "+", Associativity.RIGHT) {
-				@Override
-				public Object apply(ConsCell arg, UnaryOperator<ConsCell> process) {
-					Object a = processCarIfConsCell(arg, process);
-					if (!(a instanceof Number))
-						throw new IllegalArgumentException("Arguments to the unary plus (+) operator must be an instanceof Number");
-					return a;
-				}
-			};
-			unaryMinus = new UnOperator(2, "-", Associativity.RIGHT) {
-				@Override
-				public Object apply(ConsCell arg, UnaryOperator<ConsCell> process) {
-					Object a = processCarIfConsCell(arg, process);
-					if (!(a instanceof Number))
-						throw new IllegalArgumentException("Arguments to the unary plus (+) operator must be an instanceof Number");
-					return returnToOriginal(toBigDecimal((Number) a).negate(), ((Number) a).getClass());
-				}
-			};
-			bitwiseNot = new UnOperator(2, "~", Associativity.RIGHT) {
-				@Override
-				public Object apply(ConsCell arg, UnaryOperator<ConsCell> process) {
-					Object a = processCarIfConsCell(arg, process);
-					if ((a instanceof Number) && ScopedFormulaProcessor.isMathematicalInteger((Number) a)) {
-						if (a instanceof BigInteger)
-							return ((BigInteger) a).not();
-						else if (a instanceof Long)
-							return ~((Long) a);
-						else if (a instanceof Byte)
-							return ~((Byte) a);
-						else if (a instanceof Short)
-							return ~((Short) a);
-						else if (a instanceof Integer)
-							return ~((Integer) a);
-					}
-					throw new IllegalArgumentException("The bitwise not (~) operator can only be applied to mathematical integer values (byte, short, int, long, BigInteger)");
-				}
-			};
-			logicalNot = new UnOperator(2, "!", Associativity.RIGHT) {
-				@Override
-				public Object apply(ConsCell arg, UnaryOperator<ConsCell> process) {
-					Object a = processCarIfConsCell(arg, process);
-					if (!(a instanceof Boolean))
-						throw new IllegalArgumentException("The logical not (!) operator can only be applied to boolean values");
-					return !((Boolean) a);
-				}
-			};
-			compareTo = new RelationalOperator(8, "compareTo", s -> s); //Using the identity function here, while possibly slightly less efficient, allows us to re-use the code in RelationalOperator
-			lt = new RelationalOperator(8, "<", s -> s < 0);
-			lteq = new RelationalOperator(8, "<=", s -> s <= 0);
-			gt = new RelationalOperator(8, ">", s -> s > 0);
-			gteq = new RelationalOperator(8, ">=", s -> s >= 0);
-			eq = new BiOperator(9, "==", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					if (t instanceof Number && u instanceof Number)
-						return compareNumbers((Number) t, (Number) u) == 0;
-					return t == u || (t != null && t.equals(u));
-				}
-			};
-			neq = new BiOperator(9, "!=", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					if (t instanceof Number && u instanceof Number)
-						return compareNumbers((Number) t, (Number) u) != 0;
-					return t == null ? t != u : !t.equals(u);
-				}
-			};
-			bitwiseAnd = new BitwiseOperator(10, "&", BigInteger::and, Boolean::logicalAnd);
-			bitwiseXor = new BitwiseOperator(11, "^", BigInteger::xor, Boolean::logicalXor);
-			bitwiseOr = new BitwiseOperator(12, "|", BigInteger::or, Boolean::logicalOr);
-			logicalAnd = new BiOperator(13, "&&", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process);
-					if (!(t instanceof Boolean))
-						throw new IllegalArgumentException("The first argument to the logical and (&&) operator must be or evaluate to a Boolean");
-					if (!((Boolean) t))
-						return false;
-					Object u = processCarIfConsCell(right, process);
-					if (!(u instanceof Boolean))
-						throw new IllegalArgumentException("The second argument to the logical and (&&) operator must be or evaluate to a Boolean");
-					return u;
-				}
-			};
-			logicalOr = new BiOperator(14, "||", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process);
-					if (!(t instanceof Boolean))
-						throw new IllegalArgumentException("The first argument to the logical or (||) operator must be or evaluate to a Boolean");
-					if ((Boolean) t)
-						return true;
-					Object u = processCarIfConsCell(right, process);
-					if (!(u instanceof Boolean))
-						throw new IllegalArgumentException("The second argument to the logical or (||) operator must be or evaluate to a Boolean");
-					return u;
-				}
-			};
-			ternary = new BiOperator(1, "ternary", Associativity.RIGHT) { //Although ternary is technically evaluated after all other operators, this will work because of how the arguments to ternary are evaluated
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					if (!(t instanceof Boolean))
-						throw new IllegalArgumentException("The first argument to the ternary operator must be a Boolean");
-					if (!(u instanceof Pair))
-						throw new IllegalArgumentException("The second argument to the ternary operator must be a Pair");
-					return ((Boolean) t) ? ((Pair<?, ?>) u).getX() : ((Pair<?, ?>) u).getY();
-				}
-			};
-			colon = new BiOperator(17, "colon", Associativity.LEFT) {
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
-					return new Pair<>(t, u);
-				}
-			};
-			array = new BiOperator(1, "[]", Associativity.LEFT) { //This works because of when parenthetical statements are evaluated
-				@Override
-				public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-					Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process); //TODO maybe implement sublists?
-					if (!(t instanceof List))
-						throw new IllegalArgumentException("An array access operator must be preceeded by an object that implements List");
-					if (!(u instanceof Number))
-						throw new IllegalArgumentException("The index into an array access must be a number");
-					return ((List<?>) t).get(((Number) u).intValue());
-				}
-			};
-			BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
-			lexer.addRule("string'", new BasicRule(Pattern.compile("'(([^'\\\\]+|\\\\['\\\\tbnrf\"])*)'"), (l, s, m) -> new ConsCell(m.group(1), STRING)));
-			lexer.addRule("string\"", new BasicRule(Pattern.compile("\"(([^\"\\\\]+|\\\\['\\\\tbnrf\"])*)\""), (l, s, m) -> new ConsCell(m.group(1), STRING)));
-			lexer.addRule("inherit", new BasicRule(Pattern.compile("inherit", Pattern.LITERAL), (l, s, m) -> new ConsCell(m.group(), KEYWORD)));
-			lexer.addRule("boolean", new BasicRule(Pattern.compile("(true|false)"), (l, s, m) -> new ConsCell(m.group().equals("true"), BOOLEAN)));
-			lexer.addRule("accessor", new BasicRule(Pattern.compile(".", Pattern.LITERAL), (l, s, m) -> new ConsCell(accessor, ACCESSOR)));
-			lexer.addRule("integer", new BasicRule(NumberPatterns.SIGNLESS_INTEGER, (l, s, m) -> new ConsCell(Integer.parseInt(m.group()), NUMBER)));
-			lexer.addRule("double", new BasicRule(NumberPatterns.SIGNLESS_DOUBLE, (l, s, m) -> new ConsCell(Double.parseDouble(m.group()), NUMBER)));
-			lexer.addRule("+", new BasicRule(Pattern.compile("+", Pattern.LITERAL), (l, s, m) -> {
-				ConsType type = s.getLast() == null ? null : s.getLast().getCarType();
-				return new ConsCell(type == null || type == OPERATOR || type == QUESTION || type == COLON || type == ASSIGNMENT ? unaryPlus : addition, OPERATOR);
-			}));
-			lexer.addRule("-", new BasicRule(Pattern.compile("-", Pattern.LITERAL), (l, s, m) -> {
-				ConsType type = s.getLast() == null ? null : s.getLast().getCarType();
-				return new ConsCell(type == null || type == OPERATOR || type == QUESTION || type == COLON || type == ASSIGNMENT ? unaryMinus : subtraction, OPERATOR);
-			}));
-			addOperators(lexer, bitwiseNot, logicalNot, multiplication, division, modulus, exponent, compareTo, lt, lteq, gt, gteq, eq, neq, bitwiseAnd, bitwiseXor, bitwiseOr,
-					logicalAnd, logicalOr);
-			lexer.addRule("variable", new BasicRule(Pattern.compile("([a-zA-Z_]\\w*)"), (l, s, m) -> new ConsCell(m.group(), VARIABLE)));
-			lexer.addDescender("parentheses", new BasicDescender("(", ")", (l, s, m) -> s.pushLanguage(l.getLanguage()), (l, s, m) -> { //We have to reset the language here
-				s.popLanguage();
-				return new ConsCell(m, PARENTHESES);
-			}));
-			lexer.addDescender("array", new BasicDescender("[", "]", (l, s, m) -> s.pushLanguage(l.getLanguage()), (l, s, m) -> { //We have to reset the language here
-				s.popLanguage();
-				return new ConsCell(array, OPERATOR, new ConsCell(m, PARENTHESES));
-			}));
-			
-			//All non-assignment rules must go above this line
-			final BasicLanguage colonLang = (BasicLanguage) lexer.getLanguage().clone(); //This language CANNOT include assignment operators
-			
-			//Assignment operators can go here
-			
-			final BasicLanguage ternaryLang = (BasicLanguage) lexer.getLanguage().clone();
-			BasicRule colonOperatorRule = new BasicRule(Pattern.compile(":", Pattern.LITERAL), (l, s, m) -> new ConsCell(colon, OPERATOR));
-			lexer.addRule("colon", colonOperatorRule);
-			colonLang.addRule("colon", colonOperatorRule);
-			BasicRule ternaryQuestion = new BasicRule(Pattern.compile("?", Pattern.LITERAL), (l, s, m) -> {
-				ConsCell condition = new ConsCell(), current;
-				while (s.getLast() != null && s.getLast().getCarType() != COLON && s.getLast().getCarType() != QUESTION && s.getLast().getCarType() != ASSIGNMENT) {
-					(current = s.popLast()).insert(condition);
-					condition = current;
-				}
-				s.pushLanguage(ternaryLang);
-				return new ConsCell(condition, PARENTHESES, new ConsCell(ternary, QUESTION));
-			});
-			lexer.addRule("ternary?", ternaryQuestion);
-			colonLang.addRule("ternary?", ternaryQuestion);
-			ternaryLang.addRule("ternary?", ternaryQuestion);
-			BasicRule ternaryColon = new BasicRule(Pattern.compile(":", Pattern.LITERAL), (l, s, m) -> {
-				ConsCell left = s.popLast(), current, oldLast; //TODO check to be sure that there is at least one token between the ? and :
-				while (s.getLast().getCarType() != QUESTION) { //We only stop on QUESTION because that is, by definition, the only valid stopping point for this token
-					(current = s.popLast()).insert(left);
-					left = current;
-				}
-				s.getLast().setCar(s.getLast().getCar(), OPERATOR); //The QUESTION flag is no longer needed
-				s.popLanguage(); //This rule can only be reached if the current language is ternaryLang, which must be popped when the next colon is found
-				oldLast = s.getLast(); //Store the current last ConsCell for later
-				s.appendMatch(new ConsCell(m.group(), COLON)); //We append a bogus ConsCell with a carType of COLON to provide a stop-location for Ternary operators
-				current = s.getLast(); //current is now the ConsCell that we just appended
-				s.pushLanguage(colonLang); //This Language doesn't contain assignment operators because the rightmost part of the ternary operator doesn't support them
-				l.lex(s); //We don't need the return value from this - s retains the state information that we need.
-				s.popLanguage(); //We need to remove the assignment operator-free language that we just pushed
-				s.setLast(oldLast); //Set the last ConsCell to be the value that it was before we appended the extraneous ConsCell
-				ConsCell right = current.split().remove();
-				for (current = right; current != null && current.getCarType() != ASSIGNMENT && current.getCarType() != COLON; current = current.getNext());
-				if (current == null) //If it hits the end of the input without needing to split the input, return without splitting anything
-					return new ConsCell(new Pair<>(left, right), PAIR);
-				return new ConsCell(new Pair<>(left, right), PAIR, current.split());
-			});
-			ternaryLang.addRule("ternary:", ternaryColon);
-			return ScopedFormulaProcessor.lexer = lexer;
-		}
-		finally {
-			lock.unlock();
-		}
+		return LexerHolder.lexer;
 	}
 	
 	/*
-	 * This should ONLY be called from within getLexer()
+	 * The lexer is built the first time that it is requested. Class initialization is guaranteed to happen exactly once and to be visible to every
+	 * thread that uses the class, so no locking is needed. Once built, the lexer is never modified, and each call to lex uses its own state, so any
+	 * number of threads can lex formulae concurrently.
+	 */
+	private static final class LexerHolder {
+		private static final BasicLexer lexer = buildLexer();
+	}
+	
+	private static BasicLexer buildLexer() {
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addRule("string'", new BasicRule(Pattern.compile("'(([^'\\\\]+|\\\\['\\\\tbnrf\"])*)'"), (l, s, m) -> new ConsCell(m.group(1), STRING)));
+		lexer.addRule("string\"", new BasicRule(Pattern.compile("\"(([^\"\\\\]+|\\\\['\\\\tbnrf\"])*)\""), (l, s, m) -> new ConsCell(m.group(1), STRING)));
+		lexer.addRule("inherit", new BasicRule(Pattern.compile("inherit", Pattern.LITERAL), (l, s, m) -> new ConsCell(m.group(), KEYWORD)));
+		lexer.addRule("boolean", new BasicRule(Pattern.compile("(true|false)"), (l, s, m) -> new ConsCell(m.group().equals("true"), BOOLEAN)));
+		lexer.addRule("accessor", new BasicRule(Pattern.compile(".", Pattern.LITERAL), (l, s, m) -> new ConsCell(accessor, ACCESSOR)));
+		lexer.addRule("integer", new BasicRule(NumberPatterns.SIGNLESS_INTEGER, (l, s, m) -> new ConsCell(Integer.parseInt(m.group()), NUMBER)));
+		lexer.addRule("double", new BasicRule(NumberPatterns.SIGNLESS_DOUBLE, (l, s, m) -> new ConsCell(Double.parseDouble(m.group()), NUMBER)));
+		lexer.addRule("+", new BasicRule(Pattern.compile("+", Pattern.LITERAL), (l, s, m) -> {
+			ConsType type = s.getLast() == null ? null : s.getLast().getCarType();
+			return new ConsCell(type == null || type == OPERATOR || type == QUESTION || type == COLON || type == ASSIGNMENT ? unaryPlus : addition, OPERATOR);
+		}));
+		lexer.addRule("-", new BasicRule(Pattern.compile("-", Pattern.LITERAL), (l, s, m) -> {
+			ConsType type = s.getLast() == null ? null : s.getLast().getCarType();
+			return new ConsCell(type == null || type == OPERATOR || type == QUESTION || type == COLON || type == ASSIGNMENT ? unaryMinus : subtraction, OPERATOR);
+		}));
+		addOperators(lexer, bitwiseNot, logicalNot, multiplication, division, modulus, exponent, compareTo, lt, lteq, gt, gteq, eq, neq, bitwiseAnd, bitwiseXor, bitwiseOr,
+				logicalAnd, logicalOr);
+		lexer.addRule("variable", new BasicRule(Pattern.compile("([a-zA-Z_]\\w*)"), (l, s, m) -> new ConsCell(m.group(), VARIABLE)));
+		lexer.addDescender("parentheses", new BasicDescender("(", ")", (l, s, m) -> s.pushLanguage(l.getLanguage()), (l, s, m) -> { //We have to reset the language here
+			s.popLanguage();
+			return new ConsCell(m, PARENTHESES);
+		}));
+		lexer.addDescender("array", new BasicDescender("[", "]", (l, s, m) -> s.pushLanguage(l.getLanguage()), (l, s, m) -> { //We have to reset the language here
+			s.popLanguage();
+			return new ConsCell(array, OPERATOR, new ConsCell(m, PARENTHESES));
+		}));
+		
+		//All non-assignment rules must go above this line
+		final BasicLanguage colonLang = (BasicLanguage) lexer.getLanguage().clone(); //This language CANNOT include assignment operators
+		
+		//Assignment operators can go here
+		
+		final BasicLanguage ternaryLang = (BasicLanguage) lexer.getLanguage().clone();
+		BasicRule colonOperatorRule = new BasicRule(Pattern.compile(":", Pattern.LITERAL), (l, s, m) -> new ConsCell(colon, OPERATOR));
+		lexer.addRule("colon", colonOperatorRule);
+		colonLang.addRule("colon", colonOperatorRule);
+		BasicRule ternaryQuestion = new BasicRule(Pattern.compile("?", Pattern.LITERAL), (l, s, m) -> {
+			ConsCell condition = new ConsCell(), current;
+			while (s.getLast() != null && s.getLast().getCarType() != COLON && s.getLast().getCarType() != QUESTION && s.getLast().getCarType() != ASSIGNMENT) {
+				(current = s.popLast()).insert(condition);
+				condition = current;
+			}
+			s.pushLanguage(ternaryLang);
+			return new ConsCell(condition, PARENTHESES, new ConsCell(ternary, QUESTION));
+		});
+		lexer.addRule("ternary?", ternaryQuestion);
+		colonLang.addRule("ternary?", ternaryQuestion);
+		ternaryLang.addRule("ternary?", ternaryQuestion);
+		BasicRule ternaryColon = new BasicRule(Pattern.compile(":", Pattern.LITERAL), (l, s, m) -> {
+			ConsCell left = s.popLast(), current, oldLast; //TODO check to be sure that there is at least one token between the ? and :
+			while (s.getLast().getCarType() != QUESTION) { //We only stop on QUESTION because that is, by definition, the only valid stopping point for this token
+				(current = s.popLast()).insert(left);
+				left = current;
+			}
+			s.getLast().setCar(s.getLast().getCar(), OPERATOR); //The QUESTION flag is no longer needed
+			s.popLanguage(); //This rule can only be reached if the current language is ternaryLang, which must be popped when the next colon is found
+			oldLast = s.getLast(); //Store the current last ConsCell for later
+			s.appendMatch(new ConsCell(m.group(), COLON)); //We append a bogus ConsCell with a carType of COLON to provide a stop-location for Ternary operators
+			current = s.getLast(); //current is now the ConsCell that we just appended
+			s.pushLanguage(colonLang); //This Language doesn't contain assignment operators because the rightmost part of the ternary operator doesn't support them
+			l.lex(s); //We don't need the return value from this - s retains the state information that we need.
+			s.popLanguage(); //We need to remove the assignment operator-free language that we just pushed
+			s.setLast(oldLast); //Set the last ConsCell to be the value that it was before we appended the extraneous ConsCell
+			ConsCell right = current.split().remove();
+			for (current = right; current != null && current.getCarType() != ASSIGNMENT && current.getCarType() != COLON; current = current.getNext());
+			if (current == null) //If it hits the end of the input without needing to split the input, return without splitting anything
+				return new ConsCell(new Pair<>(left, right), PAIR);
+			return new ConsCell(new Pair<>(left, right), PAIR, current.split());
+		});
+		ternaryLang.addRule("ternary:", ternaryColon);
+		return lexer;
+	}
+	
+	/*
+	 * This should ONLY be called from within buildLexer()
 	 */
 	private static void addOperators(Language<ConsCell, ConsType, BasicRule, BasicDescender, ?> language, Operator... operators) {
 		for (Operator operator : operators)
@@ -316,58 +346,182 @@ public class ScopedFormulaProcessor {
 	}
 	
 	/**
-	 * Performs the preprocessing step for processing scoped formulae. This is essentially just converting the {@link String} to a {@link ConsCell}
-	 * tree.
+	 * Performs the preprocessing step for processing scoped formulae. This converts the {@link String} to a {@link ConsCell} tree and then compiles
+	 * that tree into an immutable {@link ScopedFormula} so that evaluating the formula is a single walk over its expression tree.
 	 * 
 	 * @param input
 	 *            the formula to convert
-	 * @return the formula's tokenized representation as a {@link ConsCell} tree
+	 * @return the formula's compiled representation as a {@link ScopedFormula}
 	 */
-	public static ConsCell preProcess(String input) {
-		return recursivePreProcess(getLexer().lex(input));
+	public static ScopedFormula preProcess(String input) {
+		return compile(getLexer().lex(input));
 	}
 	
-	private static ConsCell recursivePreProcess(ConsCell input) {
-		for (ConsCell current = input; current != null; current = current.getNext()) {
-			if (current.getCar() instanceof ConsCell)
-				current.setCar(recursivePreProcess((ConsCell) current.getCar()), current.getCarType());
+	/*
+	 * Used by ScopedMap and ScopedList. Formulae that fold down to a single constant are stored as that constant so that reading them does not
+	 * involve the formula machinery at all.
+	 */
+	static Object preProcessForStorage(String input) {
+		ScopedFormula formula = preProcess(input);
+		return formula instanceof LiteralFormula && ((LiteralFormula) formula).getValue() != null ? ((LiteralFormula) formula).getValue() : formula;
+	}
+	
+	/**
+	 * Compiles the tokenized formula represented by the {@link ConsCell} tree into a {@link ScopedFormula}.<br>
+	 * Operators are bound to their operands via precedence climbing in a single pass over the tokens. Lower precedence values bind more tightly,
+	 * left-associative operators group from the left, and right-associative operators group from the right.
+	 * 
+	 * @param input
+	 *            the formula as a {@link ConsCell} tree
+	 * @return the compiled {@link ScopedFormula}
+	 * @throws IllegalArgumentException
+	 *             if the formula is not well-formed
+	 */
+	static ScopedFormula compile(ConsCell input) {
+		List<Object> equation = new ArrayList<>(); //Operators are stored as Operators, everything else is a ScopedFormula
+		if (input != null && input.getCarType() == OPERATOR && input.getCar() instanceof BiOperator) //A leading binary operator uses the inherited value as its left operand
+			equation.add(new InheritFormula("The current scope does not have a parent"));
+		
+		ConsType previous = null;
+		for (ConsCell current = input; current != null; previous = current.getCarType(), current = current.getNext()) {
+			if (current.getCar() == null && current.getCarType() != NULL) //Empty ConsCells do not contribute anything to the formula
+				continue;
+			if (current.getCarType() == VARIABLE)
+				equation.add(previous != ACCESSOR ? new VariableFormula((String) current.getCar()) : new LiteralFormula(current.getCar())); //We only convert a variable name into a scope if it isn't preceded by an accessor
+			else if (current.getCarType() == KEYWORD) {
+				switch ((String) current.getCar()) {
+					case "inherit":
+						equation.add(new InheritFormula("Cannot inherit a value from a non-existent parent"));
+						break;
+					default:
+						throw new IllegalArgumentException(current.getCar() + " is not a valid keyword.");
+				}
+			}
+			else if (current.getCar() instanceof ConsCell)
+				equation.add(compile((ConsCell) current.getCar()));
 			else if (current.getCar() instanceof Pair) {
-				@SuppressWarnings("unchecked") Pair<Object, Object> pair = (Pair<Object, Object>) current.getCar();
-				if (pair.getX() instanceof ConsCell)
-					pair.setX(recursivePreProcess((ConsCell) pair.getX()));
-				if (pair.getY() instanceof ConsCell)
-					pair.setY(recursivePreProcess((ConsCell) pair.getY()));
+				Pair<?, ?> pair = (Pair<?, ?>) current.getCar();
+				equation.add(new PairFormula(compile((ConsCell) pair.getX()), compile((ConsCell) pair.getY())));
 			}
-			else if (current.getCar() == logicalAnd || current.getCar() == logicalOr) {
-				int precedence = ((Operator) current.getCar()).getPrecedence();
-				ConsCell head = current.getPrevious();
-				for (; head != input && (!(head.getCar() instanceof Operator) || ((Operator) head.getCar()).getPrecedence() < precedence); head = head.getPrevious());
-				ConsCell left, right, mid = current.split();
-				if (head == input) {
-					left = head;
-					input = new ConsCell(left.hasLength(2) ? recursivePreProcess(left) : left, PARENTHESES, mid);
-				}
-				else {
-					ConsCell temp = head.getPrevious();
-					left = head.split();
-					temp.append(new ConsCell(left.hasLength(2) ? recursivePreProcess(left) : left, PARENTHESES, mid));
-				}
-				right = mid.getNext().split();
-				for (head = right; !head.isLast() && (!(head.getCar() instanceof Operator) || ((Operator) head.getCar()).getPrecedence() < precedence); head = head.getNext());
-				if (head.isLast() && (!(head.getCar() instanceof Operator) || ((Operator) head.getCar()).getPrecedence() < precedence))
-					mid.append(new ConsCell(right.hasLength(2) ? recursivePreProcess(right) : right, PARENTHESES));
-				else {
-					head.split();
-					mid.append(new ConsCell(right.hasLength(2) ? recursivePreProcess(right) : right, PARENTHESES, head));
+			else if (current.getCar() instanceof Operator)
+				equation.add(current.getCar());
+			else
+				equation.add(new LiteralFormula(current.getCar()));
+		}
+		
+		if (equation.size() == 0)
+			return new LiteralFormula(null);
+		return new ExpressionCompiler(equation, input).compile();
+	}
+	
+	/*
+	 * Binds operators to their operands in a single pass over the tokens via precedence climbing.
+	 */
+	private static class ExpressionCompiler {
+		private final List<Object> equation;
+		private final ConsCell input;
+		private int position;
+		
+		ExpressionCompiler(List<Object> equation, ConsCell input) {
+			this.equation = equation;
+			this.input = input;
+			position = 0;
+		}
+		
+		ScopedFormula compile() {
+			ScopedFormula out = compileExpression(Integer.MAX_VALUE);
+			if (position < equation.size())
+				throw new IllegalArgumentException(input + " is not a well-formed formula.");
+			return out;
+		}
+		
+		/*
+		 * Compiles an operand and every operator after it whose precedence is at most limit.
+		 */
+		private ScopedFormula compileExpression(int limit) {
+			ScopedFormula left = compileOperand(limit);
+			while (position < equation.size() && equation.get(position) instanceof Operator) {
+				Operator operator = (Operator) equation.get(position);
+				if (operator.getPrecedence() > limit)
+					break;
+				if (operator instanceof UnOperator) {
+					if (operator.getAssociativity() != Associativity.LEFT) //A prefix operator cannot follow an operand
+						break;
+					position++;
+					left = fold((UnOperator) operator, left);
+					continue;
 				}
-				current = mid.getNext();
+				position++;
+				ScopedFormula right = compileExpression(getRightLimit(operator));
+				if (operator == colon) //Keeping the branches separate allows the ternary operator to evaluate only the branch that it selects
+					left = new PairFormula(left, right);
+				else
+					left = fold((BiOperator) operator, left, right);
+			}
+			return left;
+		}
+		
+		/*
+		 * A prefix operator can only be an operand if it binds at least as tightly as the operator that it is an operand of.
+		 */
+		private ScopedFormula compileOperand(int limit) {
+			if (position >= equation.size())
+				throw new IllegalArgumentException(input + " is not a well-formed formula.");
+			Object next = equation.get(position++);
+			if (next instanceof ScopedFormula)
+				return (ScopedFormula) next;
+			if (next instanceof UnOperator && ((Operator) next).getAssociativity() == Associativity.RIGHT && ((Operator) next).getPrecedence() <= limit)
+				return fold((UnOperator) next, compileExpression(getRightLimit((Operator) next)));
+			throw new IllegalArgumentException("The " + ((Operator) next).getSymbol() + " operator is missing an operand.");
+		}
+		
+		private static ScopedFormula fold(UnOperator operator, ScopedFormula arg) {
+			UnaryFormula out = new UnaryFormula(operator, arg);
+			return arg instanceof LiteralFormula ? foldConstant(out) : out;
+		}
+		
+		/*
+		 * Constant conditions are resolved here as well, which allows the branches that they would skip to be dropped entirely.
+		 */
+		private static ScopedFormula fold(BiOperator operator, ScopedFormula left, ScopedFormula right) {
+			if (left instanceof LiteralFormula) {
+				Object value = ((LiteralFormula) left).getValue();
+				if (operator == ternary && value instanceof Boolean && right instanceof PairFormula)
+					return ((Boolean) value) ? ((PairFormula) right).getX() : ((PairFormula) right).getY();
+				if ((operator == logicalAnd && Boolean.FALSE.equals(value)) || (operator == logicalOr && Boolean.TRUE.equals(value)))
+					return left;
+				if (right instanceof LiteralFormula)
+					return foldConstant(new BinaryFormula(operator, left, right));
+			}
+			return new BinaryFormula(operator, left, right);
+		}
+		
+		/*
+		 * An operator whose operands are all literals always produces the same value, so it is evaluated once at compile time. Operators that fail
+		 * or produce mutable values are left as they are so that they behave exactly as they would have at evaluation time.
+		 */
+		private static ScopedFormula foldConstant(ScopedFormula formula) {
+			try {
+				Object value = formula.evaluate(null, null);
+				if (value instanceof Number || value instanceof String || value instanceof Boolean)
+					return new LiteralFormula(value);
 			}
+			catch (RuntimeException e) {/* The error will be reported when the formula is evaluated */}
+			return formula;
+		}
+		
+		/*
+		 * Right-associative operators accept operators of the same precedence in their right operand, left-associative operators do not.
+		 */
+		private static int getRightLimit(Operator operator) {
+			return operator.getAssociativity() == Associativity.RIGHT ? operator.getPrecedence() : operator.getPrecedence() - 1;
 		}
-		return input;
 	}
 	
 	/**
-	 * Processes the scoped formula represented by the {@link String}.
+	 * Processes the scoped formula represented by the {@link String}.<br>
+	 * Compiled formulae are cached by their {@link String} representations, so repeated calls with the same formula only pay for the evaluation. Only
+	 * the most recently used formulae are kept, so callers that generate formulae cannot exhaust memory.
 	 * 
 	 * @param input
 	 *            the formula as a {@link String}
@@ -380,11 +534,50 @@ public class ScopedFormulaProcessor {
 	 *             if an invalid variable access is attempted in the course of processing the formula
 	 */
 	public static Object process(String input, Scope scope, String fieldName) throws InvalidVariableAccessException {
-		return process(preProcess(input), scope, fieldName).getCar();
+		return getCompiledFormula(input).evaluate(scope, fieldName);
+	}
+	
+	static ScopedFormula getCompiledFormula(String input) {
+		ScopedFormula formula;
+		synchronized (compiledFormulae) {
+			formula = compiledFormulae.get(input);
+		}
+		if (formula != null)
+			return formula;
+		formula = preProcess(input); //Compiling outside of the lock keeps slow compilations from blocking lookups
+		synchronized (compiledFormulae) {
+			ScopedFormula existing = compiledFormulae.putIfAbsent(input, formula);
+			return existing != null ? existing : formula;
+		}
+	}
+	
+	static boolean isAccessor(Operator operator) {
+		return operator == accessor;
+	}
+	
+	static boolean isArrayAccess(Operator operator) {
+		return operator == array;
+	}
+	
+	static boolean isTernary(Operator operator) {
+		return operator == ternary;
+	}
+	
+	static boolean isShortCircuiting(Operator operator) {
+		return operator == logicalAnd || operator == logicalOr;
+	}
+	
+	/*
+	 * Returns true if the given short-circuiting operator skips its right operand when its left operand has the given value.
+	 */
+	static boolean isShortCircuitedBy(Operator operator, boolean left) {
+		return operator == logicalOr ? left : !left;
 	}
 	
 	/**
-	 * Processes the scoped formula represented by the {@link ConsCell} tree.
+	 * Processes the scoped formula represented by the {@link ConsCell} tree.<br>
+	 * <b>Note:</b> this compiles the {@link ConsCell} tree on every call. Formulae that are evaluated more than once should be compiled once via
+	 * {@link #preProcess(String)} and then evaluated via {@link ScopedFormula#evaluate(Scope, String)}.
 	 * 
 	 * @param input
 	 *            the formula as a {@link ConsCell} tree
@@ -397,125 +590,53 @@ public class ScopedFormulaProcessor {
 	 *             if an invalid variable access is attempted in the course of processing the formula
 	 */
 	public static ConsCell process(ConsCell input, Scope scope, String fieldName) throws InvalidVariableAccessException {
-		ConsCell equation;
-		if (input.getCarType() == OPERATOR && input.getCar() instanceof BiOperator) {
-			if (scope == null || scope.getParent() == null)
-				throw new InvalidVariableAccessException("The current scope does not have a parent");
-			Object accessed = process(fieldName, scope.getParent(), null);
-			equation = new ConsCell(accessed, getTypeForObject(accessed));
-		}
-		else {
-			equation = new ConsCell();
-		}
-		
-		int lowest = Integer.MAX_VALUE, highest = Integer.MIN_VALUE;
-		for (ConsCell current = input, head = equation; current != null; current = current.getNext()) {
-			if (current.getCarType() == VARIABLE && head.getCarType() != ACCESSOR) { //We only convert a variable name into a scope if it isn't preceded by an accessor
-				Object accessed = accessScope((String) current.getCar(), scope);
-				head = head.append(new ConsCell(accessed, getTypeForObject(accessed)));
-			}
-			else if (current.getCarType() == KEYWORD) {
-				switch ((String) current.getCar()) {
-					case "inherit":
-						if (scope == null || scope.getParent() == null)
-							throw new InvalidVariableAccessException("Cannot inherit a value from a non-existent parent");
-						Object accessed = process(fieldName, scope.getParent(), null);
-						head = head.append(new ConsCell(accessed, getTypeForObject(accessed)));
-						break;
-					default:
-						throw new IllegalArgumentException(current.getCar() + " is not a valid keyword.");
-				}
-			}
-			else {
-				if (current.getCar() instanceof Operator) {
-					int precedence = ((Operator) current.getCar()).getPrecedence();
-					if (precedence < lowest)
-						lowest = precedence;
-					if (precedence > highest)
-						highest = precedence;
-				}
-				head = head.append(current.singular());
-			}
-		}
-		
-		UnaryOperator<ConsCell> process = c -> process(c, scope, fieldName);
-		for (int i = lowest; i <= highest; i++) { //For each precedence
-			Stack<Integer> skipStack = new Stack<>();
-			for (ConsCell head = equation; head != null; head = (skipStack.size() == 0 ? head.getNext() : head.getNext(skipStack.pop()))) {
-				if (head.getCar() instanceof Operator && ((Operator) head.getCar()).getPrecedence() == i) {
-					//This algorithm guarantees that all left-associative operators with precedence <= i will have been processed by this point
-					while (((Operator) head.getCar()).getAssociativity() == Associativity.RIGHT) {
-						ConsCell next = head.getNext();
-						if (next != null) {
-							if (!(next.getCar() instanceof Operator))
-								next = next.getNext();
-							if (next != null && next.getCar() instanceof Operator && ((Operator) next.getCar()).getPrecedence() == i) {
-								head = next;
-								skipStack.push(-1); //We need to step one item back once we are done processing the next operator
-								continue; //Check again
-							}
-						}
-						break; //If next didn't satisfy the lookahead conditions, we're done here
-					}
-					if (head.getCar() instanceof UnOperator) {
-						if (((UnOperator) head.getCar()).getAssociativity() == Associativity.LEFT) {
-							ConsCell left = head.getPrevious();
-							Object result = ((UnOperator) head.getCar()).apply(left, process);
-							head.setCar(result, getTypeForObject(result));
-							left.remove();
-							if (left == equation)
-								equation = head;
-						}
-						else { //Then this is right-associative
-							ConsCell right = head.getNext();
-							Object result = ((UnOperator) head.getCar()).apply(right, process);
-							head.setCar(result, getTypeForObject(result));
-							right.remove();
-						}
-					}
-					else if (head.getCar() instanceof BiOperator) {
-						ConsCell left = head.getPrevious(), right = head.getNext();
-						Object result = ((BiOperator) head.getCar()).apply(left, right, process);
-						head.setCar(result, getTypeForObject(result));
-						left.remove();
-						if (left == equation)
-							equation = head;
-						right.remove();
-					}
-				}
-			}
-		}
-		return equation.getCarType() == PARENTHESES ? process((ConsCell) equation.getCar(), scope, fieldName) : equation;
+		Object result = compile(input).evaluate(scope, fieldName);
+		return new ConsCell(result, getTypeForObject(result));
 	}
 	
-	private static Object accessScope(String name, Scope scope) {
-		StringBuilder nme = new StringBuilder(name.length());
-		for (int i = 0; i < name.length(); i++) {
-			if (Character.isUpperCase(name.charAt(i)))
-				nme.append('-').append(Character.toLowerCase(name.charAt(i)));
-			else
-				nme.append(name.charAt(i));
-		}
-		name = nme.toString();
-		Object out = scope;
-		for (String n : name.split("\\.")) {
-			if (!(out instanceof Scope))
-				throw new InvalidVariableAccessException(out.getClass().getName() + " is not an instance of Scope.");
-			switch (n) {
-				case "super":
-				case "parent":
-					out = ((Scope) out).getParent();
-					if (out == null)
-						throw new InvalidVariableAccessException("The current scope does not have a parent");
-					break;
-				case "this":
-				case "current":
-					break; //Don't change the scope in this case
-				default:
-					out = ((Scope) out).getScopedValueByName(n);
-			}
-		}
-		return out;
+	/**
+	 * Evaluates every formula in the tree of {@link ScopedMap ScopedMaps} and {@link ScopedList ScopedLists} rooted at the given {@link ScopedMap}
+	 * and produces an immutable snapshot of the fully-resolved tree.<br>
+	 * The formulae are checked with the {@link ScopedFormulaAnalyzer} and then evaluated in the common {@link ForkJoinPool} in dependency order.
+	 * Formulae that do not reference each other are evaluated concurrently.
+	 * 
+	 * @param root
+	 *            the root of the tree
+	 * @return an unmodifiable {@link Map} with the same structure as {@code root} where every {@link ScopedMap} has been replaced with an
+	 *         unmodifiable {@link Map}, every {@link ScopedList} with an unmodifiable {@link List}, and every formula with its value
+	 * @throws IllegalArgumentException
+	 *             if the {@link ScopedFormulaAnalyzer} finds any problems in the tree
+	 * @throws InvalidVariableAccessException
+	 *             if an invalid variable access is attempted in the course of evaluating any of the formulae
+	 * @see #evaluateAll(ScopedMap, ForkJoinPool)
+	 */
+	public static Map<String, Object> evaluateAll(ScopedMap root) throws InvalidVariableAccessException {
+		return evaluateAll(root, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Evaluates every formula in the tree of {@link ScopedMap ScopedMaps} and {@link ScopedList ScopedLists} rooted at the given {@link ScopedMap}
+	 * and produces an immutable snapshot of the fully-resolved tree.<br>
+	 * The formulae are checked with the {@link ScopedFormulaAnalyzer} and then evaluated in the given {@link ForkJoinPool} in dependency order.
+	 * Formulae that do not reference each other are evaluated concurrently.
+	 * 
+	 * @param root
+	 *            the root of the tree
+	 * @param pool
+	 *            the {@link ForkJoinPool} in which the formulae are to be evaluated
+	 * @return an unmodifiable {@link Map} with the same structure as {@code root} where every {@link ScopedMap} has been replaced with an
+	 *         unmodifiable {@link Map}, every {@link ScopedList} with an unmodifiable {@link List}, and every formula with its value
+	 * @throws IllegalArgumentException
+	 *             if the {@link ScopedFormulaAnalyzer} finds any problems in the tree
+	 * @throws InvalidVariableAccessException
+	 *             if an invalid variable access is attempted in the course of evaluating any of the formulae
+	 */
+	public static Map<String, Object> evaluateAll(ScopedMap root, ForkJoinPool pool) throws InvalidVariableAccessException {
+		return BulkEvaluator.evaluateAll(root, pool);
+	}
+	
+	static Object accessScope(String name, Scope scope) {
+		return ScopedSymbol.intern(name).resolve(scope);
 	}
 	
 	private static ConsType getTypeForObject(Object o) {
@@ -547,7 +668,15 @@ public class ScopedFormulaProcessor {
 	 * @return -1, 0, or 1 as per the rules specified in {@link Comparable#compareTo(Object)}
 	 */
 	public static int compareNumbers(Number x, Number y) {
-		return (isSpecial(x) || isSpecial(y)) ? Double.compare(x.doubleValue(), y.doubleValue()) : toBigDecimal(x).compareTo(toBigDecimal(y));
+		if (isPrimitiveInteger(x) && isPrimitiveInteger(y))
+			return Long.compare(x.longValue(), y.longValue());
+		if (isSpecial(x) || isSpecial(y))
+			return Double.compare(x.doubleValue(), y.doubleValue());
+		if (isExactDouble(x) && isExactDouble(y)) { //Neither value can be NaN at this point, so the primitive comparisons are total
+			double a = x.doubleValue(), b = y.doubleValue();
+			return a < b ? -1 : (a > b ? 1 : 0);
+		}
+		return toBigDecimal(x).compareTo(toBigDecimal(y));
 	}
 	
 	/**
@@ -571,6 +700,45 @@ public class ScopedFormulaProcessor {
 		return x instanceof Byte || x instanceof Short || x instanceof Integer || x instanceof Long || x instanceof BigInteger;
 	}
 	
+	/**
+	 * @param x
+	 *            the {@link Number} to test
+	 * @return {@code true} iff x is a {@link Byte}, {@link Short}, {@link Integer}, or {@link Long}
+	 */
+	static boolean isPrimitiveInteger(Number x) {
+		return x instanceof Integer || x instanceof Long || x instanceof Short || x instanceof Byte;
+	}
+	
+	/**
+	 * @param x
+	 *            the {@link Number} to test
+	 * @return {@code true} iff x is the boxed form of a primitive numeric type
+	 */
+	static boolean isPrimitiveNumber(Number x) {
+		return isPrimitiveInteger(x) || x instanceof Double || x instanceof Float;
+	}
+	
+	/*
+	 * Integers beyond 2^53 can't be represented exactly as doubles, so comparing them as doubles could produce false equalities
+	 */
+	private static boolean isExactDouble(Number x) {
+		if (x instanceof Double || x instanceof Float)
+			return true;
+		return isPrimitiveInteger(x) && Math.abs(x.longValue()) <= (1L << 53);
+	}
+	
+	/**
+	 * Converts a {@link Number} that is a {@link #isMathematicalInteger(Number) mathematical integer} to a {@link BigInteger}. If the given
+	 * {@link Number} is already a {@link BigInteger}, the given value is returned.
+	 * 
+	 * @param number
+	 *            the {@link Number} to convert to a {@link BigInteger}
+	 * @return a {@link BigInteger} with the same value as the given {@link Number}
+	 */
+	public static BigInteger toBigInteger(Number number) {
+		return number instanceof BigInteger ? (BigInteger) number : BigInteger.valueOf(number.longValue());
+	}
+	
 	/**
 	 * Converts a {@link Number} to a {@link BigDecimal}. If the given {@link Number} is already a {@link BigDecimal}, the given value is
 	 * returned.<br>
@@ -697,8 +865,8 @@ abstract class Operator {
 		return associativity;
 	}
 	
-	protected Object processCarIfConsCell(ConsCell cell, UnaryOperator<ConsCell> process) {
-		return cell != null ? (cell.getCar() instanceof ConsCell ? process.apply((ConsCell) cell.getCar()).getCar() : cell.getCar()) : null;
+	protected Object evaluate(ScopedFormula operand, Scope scope, String fieldName) {
+		return operand != null ? operand.evaluate(scope, fieldName) : null;
 	}
 }
 
@@ -713,7 +881,7 @@ abstract class BiOperator extends Operator {
 				"(" + (t != null ? t.getClass().getName() : null) + ", " + (u != null ? u.getClass().getName() : null) + ") is not a valid argument combination for the " + getSymbol() + " operator.");
 	}
 	
-	public abstract Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process);
+	public abstract Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName);
 }
 
 abstract class UnOperator extends Operator {
@@ -722,31 +890,54 @@ abstract class UnOperator extends Operator {
 		super(precedence, symbol, associativity);
 	}
 	
-	public abstract Object apply(ConsCell arg, UnaryOperator<ConsCell> process);
+	public abstract Object apply(ScopedFormula arg, Scope scope, String fieldName);
 }
 
 class ArithmaticOperator extends BiOperator {
-	private final BinaryOperator<BigDecimal> doubleOperation;
-	private final BinaryOperator<BigInteger> intOperation;
+	private final LongBinaryOperator exactLongOperation; //Must throw an ArithmeticException if the result cannot be represented as a long
+	private final DoubleBinaryOperator primitiveDoubleOperation;
+	private final BinaryOperator<BigDecimal> doubleOperation; //Only used when the double operation overflows or an argument is a BigDecimal
+	private final BinaryOperator<BigInteger> intOperation; //Only used when the long operation overflows or an argument is a BigInteger
 	
-	public ArithmaticOperator(int precedence, String symbol, BinaryOperator<BigDecimal> doubleOperation, BinaryOperator<BigInteger> intOperation) {
+	public ArithmaticOperator(int precedence, String symbol, LongBinaryOperator exactLongOperation, DoubleBinaryOperator primitiveDoubleOperation,
+			BinaryOperator<BigDecimal> doubleOperation, BinaryOperator<BigInteger> intOperation) {
 		super(precedence, symbol, Associativity.LEFT);
+		this.exactLongOperation = exactLongOperation;
+		this.primitiveDoubleOperation = primitiveDoubleOperation;
 		this.doubleOperation = doubleOperation;
 		this.intOperation = intOperation;
 	}
 	
 	@Override
-	public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) { //TODO add support for infinities
-		Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
+	public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+		return compute(evaluate(left, scope, fieldName), evaluate(right, scope, fieldName));
+	}
+	
+	protected Object compute(Object t, Object u) {
 		if (!(t instanceof Number) || !(u instanceof Number))
 			throw makeInvalidArgumentCombinationException(t, u);
-		if (ScopedFormulaProcessor.isMathematicalInteger((Number) t) && ScopedFormulaProcessor.isMathematicalInteger((Number) u)) //TODO should we convert the value back to autoboxable types?
-			return intOperation.apply(BigInteger.valueOf(((Number) t).longValue()), BigInteger.valueOf(((Number) u).longValue()));
+		Number x = (Number) t, y = (Number) u;
+		if (ScopedFormulaProcessor.isPrimitiveInteger(x) && ScopedFormulaProcessor.isPrimitiveInteger(y)) {
+			try {
+				long result = exactLongOperation.applyAsLong(x.longValue(), y.longValue());
+				if (x instanceof Long || y instanceof Long || result != (int) result)
+					return Long.valueOf(result);
+				return Integer.valueOf((int) result);
+			}
+			catch (ArithmeticException e) {/* The result cannot be represented as a long, so we fall back to BigInteger */}
+		}
+		if (ScopedFormulaProcessor.isMathematicalInteger(x) && ScopedFormulaProcessor.isMathematicalInteger(y))
+			return intOperation.apply(ScopedFormulaProcessor.toBigInteger(x), ScopedFormulaProcessor.toBigInteger(y));
 		if ((t instanceof Double && ((Double) t).isNaN()) || (u instanceof Double && ((Double) u).isNaN()))
 			return Double.NaN;
 		if ((t instanceof Float && ((Float) t).isNaN()) || (u instanceof Float && ((Float) u).isNaN()))
 			return Float.NaN;
-		return doubleOperation.apply(ScopedFormulaProcessor.toBigDecimal((Number) t), ScopedFormulaProcessor.toBigDecimal((Number) u)); //TODO should we convert the value back to autoboxable types?
+		if (ScopedFormulaProcessor.isPrimitiveNumber(x) && ScopedFormulaProcessor.isPrimitiveNumber(y)) {
+			double a = x.doubleValue(), b = y.doubleValue(), result = primitiveDoubleOperation.applyAsDouble(a, b);
+			if (Double.isFinite(result) || !Double.isFinite(a) || !Double.isFinite(b)) //A non-finite result from finite arguments is an overflow
+				return result;
+		}
+		return doubleOperation.apply(ScopedFormulaProcessor.toBigDecimal(x), ScopedFormulaProcessor.toBigDecimal(y));
 	}
 }
 
@@ -760,8 +951,8 @@ class RelationalOperator extends BiOperator {
 	
 	@Override
 	@SuppressWarnings({"unchecked", "rawtypes"})
-	public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-		Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
+	public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+		Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
 		if (t instanceof Comparable && t.getClass().isInstance(u))
 			return sign.apply(((Comparable) t).compareTo(((Comparable) t).getClass().cast(u)));
 		if (u instanceof Comparable && u.getClass().isInstance(t))
@@ -773,24 +964,30 @@ class RelationalOperator extends BiOperator {
 }
 
 class BitwiseOperator extends BiOperator {
+	private final LongBinaryOperator longOperation;
 	private final BinaryOperator<BigInteger> intOperation;
 	private final BinaryOperator<Boolean> booleanOperation;
 	
-	public BitwiseOperator(int precedence, String symbol, BinaryOperator<BigInteger> intOperation, BinaryOperator<Boolean> booleanOperation) {
+	public BitwiseOperator(int precedence, String symbol, LongBinaryOperator longOperation, BinaryOperator<BigInteger> intOperation, BinaryOperator<Boolean> booleanOperation) {
 		super(precedence, symbol, Associativity.LEFT);
+		this.longOperation = longOperation;
 		this.intOperation = intOperation;
 		this.booleanOperation = booleanOperation;
 	}
 	
 	@Override
-	public Object apply(ConsCell left, ConsCell right, UnaryOperator<ConsCell> process) {
-		Object t = processCarIfConsCell(left, process), u = processCarIfConsCell(right, process);
+	public Object apply(ScopedFormula left, ScopedFormula right, Scope scope, String fieldName) {
+		Object t = evaluate(left, scope, fieldName), u = evaluate(right, scope, fieldName);
 		if (t instanceof Character)
 			t = Integer.valueOf((Character) t);
 		if (u instanceof Character)
 			u = Integer.valueOf((Character) u);
+		if (t instanceof Number && u instanceof Number && ScopedFormulaProcessor.isPrimitiveInteger((Number) t) && ScopedFormulaProcessor.isPrimitiveInteger((Number) u)) {
+			long result = longOperation.applyAsLong(((Number) t).longValue(), ((Number) u).longValue());
+			return t instanceof Long || u instanceof Long ? (Object) Long.valueOf(result) : (Object) Integer.valueOf((int) result);
+		}
 		if (t instanceof Number && u instanceof Number && ScopedFormulaProcessor.isMathematicalInteger((Number) t) && ScopedFormulaProcessor.isMathematicalInteger((Number) u))
-			return intOperation.apply(BigInteger.valueOf(((Number) t).longValue()), BigInteger.valueOf(((Number) u).longValue())); //TODO should we convert the value back to autoboxable types?
+			return intOperation.apply(ScopedFormulaProcessor.toBigInteger((Number) t), ScopedFormulaProcessor.toBigInteger((Number) u));
 		if (!(t instanceof Boolean) || !(u instanceof Boolean))
 			throw makeInvalidArgumentCombinationException(t, u);
 		return booleanOperation.apply((Boolean) t, (Boolean) u);
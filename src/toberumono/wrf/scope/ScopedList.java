@@ -1,7 +1,9 @@
 package toberumono.wrf.scope;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -10,17 +12,20 @@ import java.util.NoSuchElementException;
 import toberumono.json.JSONArray;
 import toberumono.json.JSONData;
 import toberumono.json.JSONObject;
-import toberumono.structures.collections.iterators.WrappedIterator;
 import toberumono.structures.sexpressions.ConsCell;
 
 /**
- * An implementation of {@link List} that works with the {@link Scope} tree and automatically handles accessing the {@link ScopedFormulaProcessor}.
+ * An implementation of {@link List} that works with the {@link Scope} tree and automatically handles accessing the {@link ScopedFormulaProcessor}.<br>
+ * Once a {@link ScopedList} has been fully built, it can be {@link #freeze() frozen} so that it can be shared between threads.
  * 
  * @author Toberumono
  */
 public class ScopedList implements Scope, List<Object> {
 	private final List<Object> backing;
-	private Scope parent;
+	private final FormulaDependencies.Stamps stamps; //Frozen lists cannot be modified, so they do not need stamps
+	private final boolean frozen;
+	private volatile boolean observed;
+	private volatile Scope parent;
 	
 	/**
 	 * Creates a new {@link ScopedList} with the given parent {@link Scope}.
@@ -30,15 +35,109 @@ public class ScopedList implements Scope, List<Object> {
 	 */
 	public ScopedList(Scope parent) {
 		backing = new ArrayList<>();
+		stamps = new FormulaDependencies.Stamps();
+		frozen = false;
 		this.parent = parent;
 	}
 	
-	private ScopedList(Scope parent, List<Object> backing) { //Used for subList
+	private ScopedList(Scope parent, List<Object> backing, boolean frozen) { //Used for subList
 		this.backing = backing;
+		stamps = frozen ? null : new FormulaDependencies.Stamps();
+		this.frozen = frozen;
 		this.parent = parent;
 	}
 	
+	private ScopedList(Scope parent, ScopedList source) { //Used for freeze
+		Object[] values = source.backing.toArray();
+		for (int i = 0; i < values.length; i++)
+			values[i] = FrozenMap.freezeValue(values[i], source, this);
+		backing = Collections.unmodifiableList(Arrays.asList(values));
+		stamps = null;
+		frozen = true;
+		this.parent = parent;
+	}
+	
+	/**
+	 * Creates an immutable copy of this {@link ScopedList}. The copy stores its (already compiled) values in an array. Nested {@link ScopedMap
+	 * ScopedMaps} and {@link ScopedList ScopedLists} whose parent is this {@link ScopedList} are frozen as well, and their copies use the copy of
+	 * this {@link ScopedList} as their parent.<br>
+	 * A frozen {@link ScopedList} can be read from any thread without synchronization, and every method that would modify it throws an
+	 * {@link UnsupportedOperationException}.
+	 * 
+	 * @return a frozen copy of this {@link ScopedList} with the same parent {@link Scope} or this {@link ScopedList} if it is already frozen
+	 */
+	public ScopedList freeze() {
+		return frozen ? this : freeze(getParent());
+	}
+	
+	/*
+	 * Used by ScopedMap.freeze and ScopedList.freeze for nested structures
+	 */
+	ScopedList freeze(Scope parent) {
+		return new ScopedList(parent, this);
+	}
+	
+	/**
+	 * @return {@code true} iff this {@link ScopedList} was created by {@link #freeze()}
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Marks the {@link ScopedList} as modified so that cached formula results that read from it are invalidated.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the {@link ScopedList} is frozen
+	 */
+	void modified() {
+		if (frozen)
+			throw new UnsupportedOperationException("A frozen ScopedList cannot be modified.");
+		stamps.modifiedAll();
+	}
+	
+	/*
+	 * The names provided by a ScopedList are its indices, so they only change when its size does
+	 */
+	private void sizeModified(int oldSize) {
+		if (oldSize != backing.size())
+			namesModified();
+	}
+	
+	/*
+	 * Lookups that have not passed through this list cannot be affected by the names that it provides
+	 */
+	void namesModified() {
+		if (observed)
+			ScopeLookupCache.namesModified();
+	}
+	
+	/*
+	 * Used by ScopeLookupCache when a lookup passes through this list
+	 */
+	void observed() {
+		if (!observed) //Avoids a volatile write on every lookup
+			observed = true;
+	}
+	
+	/*
+	 * Used when a cached lookup skips over this list
+	 */
+	void recordRead() {
+		if (!frozen)
+			FormulaDependencies.recordRead(stamps, null);
+	}
+	
+	/*
+	 * Used by the ScopedFormulaAnalyzer, which must be able to inspect formulae without evaluating them.
+	 */
+	List<Object> getRawValues() {
+		return Collections.unmodifiableList(backing);
+	}
+	
 	private Object processOutput(Object e) {
+		if (e instanceof ScopedFormula)
+			return ((ScopedFormula) e).evaluate(this, null);
 		return e instanceof ConsCell ? ScopedFormulaProcessor.process((ConsCell) e, this, null).getCar() : e;
 	}
 	
@@ -46,7 +145,7 @@ public class ScopedList implements Scope, List<Object> {
 		if (e instanceof String) {
 			String str = (String) e;
 			if (str.charAt(0) == '=')
-				return ScopedFormulaProcessor.getLexer().lex(str.substring(1));
+				return ScopedFormulaProcessor.preProcessForStorage(str.substring(1));
 			else if (str.charAt(0) == '\\' && str.length() > 1 && str.charAt(1) == '=')
 				return str.substring(1);
 		}
@@ -55,6 +154,7 @@ public class ScopedList implements Scope, List<Object> {
 	
 	@Override
 	public int size() {
+		recordRead();
 		return backing.size();
 	}
 	
@@ -70,7 +170,7 @@ public class ScopedList implements Scope, List<Object> {
 	
 	@Override
 	public Iterator<Object> iterator() {
-		return new WrappedIterator<>(backing.iterator(), this::processOutput);
+		return new ScopedListIterator();
 	}
 	
 	@Override
@@ -92,12 +192,19 @@ public class ScopedList implements Scope, List<Object> {
 	
 	@Override
 	public boolean add(Object e) {
-		return backing.add(processInput(e));
+		modified();
+		boolean out = backing.add(processInput(e));
+		namesModified();
+		return out;
 	}
 	
 	@Override
 	public boolean remove(Object o) {
-		return backing.remove(processInput(o));
+		modified();
+		int size = backing.size();
+		boolean out = backing.remove(processInput(o));
+		sizeModified(size);
+		return out;
 	}
 	
 	@Override
@@ -137,32 +244,46 @@ public class ScopedList implements Scope, List<Object> {
 		Collection<Object> processed = new ArrayList<>();
 		for (Object o : c)
 			processed.add(processInput(o));
-		return backing.retainAll(processed);
+		modified();
+		int size = backing.size();
+		boolean out = backing.retainAll(processed);
+		sizeModified(size);
+		return out;
 	}
 	
 	@Override
 	public void clear() {
+		modified();
+		int size = backing.size();
 		backing.clear();
+		sizeModified(size);
 	}
 	
 	@Override
 	public Object get(int index) {
+		recordRead();
 		return processOutput(backing.get(index));
 	}
 	
 	@Override
 	public Object set(int index, Object element) {
+		modified(); //Replacing an element does not change the indices, so cached lookups remain valid
 		return processOutput(backing.set(index, processInput(element)));
 	}
 	
 	@Override
 	public void add(int index, Object element) {
+		modified();
 		backing.add(index, processInput(element));
+		namesModified();
 	}
 	
 	@Override
 	public Object remove(int index) {
-		return processOutput(backing.remove(index));
+		modified();
+		Object out = backing.remove(index);
+		namesModified();
+		return processOutput(out);
 	}
 	
 	@Override
@@ -275,7 +396,7 @@ public class ScopedList implements Scope, List<Object> {
 	class ScopedSubList extends ScopedList {
 		
 		public ScopedSubList(List<Object> backing) {
-			super(null, backing);
+			super(null, backing, ScopedList.this.frozen);
 		}
 		
 		@Override
@@ -287,6 +408,18 @@ public class ScopedList implements Scope, List<Object> {
 		public synchronized void setParent(Scope parent) {
 			ScopedList.this.setParent(parent);
 		}
+		
+		@Override
+		void modified() {
+			super.modified();
+			ScopedList.this.modified();
+		}
+		
+		@Override
+		void namesModified() { //A sublist's size only changes if the size of the list that it views changes
+			super.namesModified();
+			ScopedList.this.namesModified();
+		}
 	}
 	
 	@Override
@@ -311,8 +444,12 @@ public class ScopedList implements Scope, List<Object> {
 	 *            the parent {@link Scope}
 	 */
 	public synchronized void setParent(Scope parent) {
-		if (this.parent == null)
+		if (frozen)
+			throw new UnsupportedOperationException("The parent of a frozen ScopedList cannot be changed.");
+		if (this.parent == null) {
 			this.parent = parent;
+			namesModified(); //The names visible from this list and its descendants have changed
+		}
 		else
 			throw new UnsupportedOperationException("The parent of a ScopedList object cannot be changed once set.");
 	}
@@ -3,10 +3,12 @@ package toberumono.wrf.scope;
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import toberumono.json.JSONArray;
@@ -17,6 +19,8 @@ import toberumono.structures.sexpressions.ConsCell;
 
 /**
  * An implementation of {@link Map} that works with the {@link Scope} tree and automatically handles accessing the {@link ScopedFormulaProcessor}.
+ * The result of each formula is cached until one of the {@link ScopedMap} or {@link ScopedList} entries that it read is modified.<br>
+ * Once a tree of {@link ScopedMap ScopedMaps} has been fully built, it can be {@link #freeze() frozen} so that it can be shared between threads.
  * 
  * @author Toberumono
  */
@@ -24,7 +28,13 @@ public class ScopedMap implements Scope, Map<String, Object> {
 	private final Function<Entry<String, Object>, Object> valuesConverter = e -> processOutput(e.getKey(), e.getValue());
 	
 	private final Map<String, Object> backing;
-	private Scope parent;
+	private final FormulaDependencies.Stamps stamps; //Frozen maps cannot be modified, so they do not need stamps
+	private volatile Map<String, FormulaDependencies.Result> results; //Allocated on first use in frozen maps
+	private volatile ScopeLookupCache lookups; //Allocated on first use in frozen maps
+	private final boolean frozen;
+	private volatile boolean observed;
+	private volatile Scope parent;
+	private KeySet keys;
 	private EntrySet entries;
 	private Collection<Object> values;
 	
@@ -37,11 +47,71 @@ public class ScopedMap implements Scope, Map<String, Object> {
 	public ScopedMap(Scope parent) {
 		this.parent = parent;
 		backing = new HashMap<>();
+		stamps = new FormulaDependencies.Stamps();
+		results = new ConcurrentHashMap<>();
+		lookups = new ScopeLookupCache();
+		frozen = false;
+		keys = null;
 		entries = null;
 		values = null;
 	}
 	
+	/**
+	 * Creates a frozen copy of the given {@link ScopedMap}. Subclasses that override {@link #freeze(Scope)} should use this constructor.
+	 * 
+	 * @param parent
+	 *            the parent {@link Scope} of the copy
+	 * @param source
+	 *            the {@link ScopedMap} to copy
+	 * @see #freeze()
+	 */
+	protected ScopedMap(Scope parent, ScopedMap source) {
+		this.parent = parent;
+		backing = new FrozenMap(source, source.backing, this);
+		stamps = null;
+		results = null;
+		lookups = null;
+		frozen = true;
+		keys = null;
+		entries = null;
+		values = null;
+	}
+	
+	/*
+	 * Used for values that are currently stored in the map, which allows formula results to be re-used until an entry that they read is modified.
+	 */
+	private Object processCurrentOutput(String name, Object e) {
+		if (!frozen) //Frozen entries cannot change, so formulae do not need to depend on them
+			FormulaDependencies.recordRead(stamps, name);
+		if (e instanceof ScopedFormula)
+			return FormulaDependencies.evaluate((ScopedFormula) e, getFormulaScope(), name, stamps, getResults());
+		return processOutput(name, e);
+	}
+	
+	/*
+	 * Frozen maps are often never read, so they only allocate their caches when they are first needed
+	 */
+	private Map<String, FormulaDependencies.Result> getResults() {
+		if (results == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (results == null)
+					results = new ConcurrentHashMap<>();
+			}
+		return results;
+	}
+	
+	private ScopeLookupCache getLookups() {
+		if (lookups == null) //First time is so that we can avoid unnecessary synchronization
+			synchronized (this) {
+				if (lookups == null)
+					lookups = new ScopeLookupCache();
+			}
+		return lookups;
+	}
+	
 	private Object processOutput(String name, Object e) {
+		if (e instanceof ScopedFormula)
+			return ((ScopedFormula) e).evaluate(getFormulaScope(), name);
 		return e instanceof ConsCell ? ScopedFormulaProcessor.process((ConsCell) e, getFormulaScope(), name).getCar() : e;
 	}
 	
@@ -49,7 +119,7 @@ public class ScopedMap implements Scope, Map<String, Object> {
 		if (e instanceof String) {
 			String str = (String) e;
 			if (str.charAt(0) == '=')
-				return ScopedFormulaProcessor.preProcess(str.substring(1));
+				return ScopedFormulaProcessor.preProcessForStorage(str.substring(1));
 			else if (str.charAt(0) == '\\' && str.length() > 1 && str.charAt(1) == '=')
 				return str.substring(1);
 		}
@@ -65,8 +135,89 @@ public class ScopedMap implements Scope, Map<String, Object> {
 		return this;
 	}
 	
+	/*
+	 * Used by the ScopedFormulaAnalyzer, which must be able to inspect formulae without evaluating them.
+	 */
+	Map<String, Object> getRawValues() {
+		return Collections.unmodifiableMap(backing);
+	}
+	
+	private void modified(String key) {
+		stamps.modified(key);
+		results.remove(key);
+	}
+	
+	/*
+	 * This is only used when entries are removed, so it always changes the set of names in the map
+	 */
+	private void modifiedAll() {
+		stamps.modifiedAll();
+		results.clear();
+		namesModified();
+	}
+	
+	/*
+	 * Used by ScopeLookupCache when a lookup passes through this map
+	 */
+	void observed() {
+		if (!observed) //Avoids a volatile write on every lookup
+			observed = true;
+	}
+	
+	/*
+	 * Lookups that have not passed through this map cannot be affected by the names that it provides
+	 */
+	private void namesModified() {
+		if (observed)
+			ScopeLookupCache.namesModified();
+	}
+	
+	/*
+	 * Used when a cached lookup skips over this map
+	 */
+	void recordRead(String key) {
+		if (!frozen)
+			FormulaDependencies.recordRead(stamps, key);
+	}
+	
+	/**
+	 * Creates an immutable copy of the tree rooted at this {@link ScopedMap}. The copy stores its keys in a sorted array alongside an array of the
+	 * (already compiled) values, which uses considerably less memory than a {@link HashMap}. Nested {@link ScopedMap ScopedMaps} and
+	 * {@link ScopedList ScopedLists} whose parent is this {@link ScopedMap} are frozen as well, and their copies use the copy of this
+	 * {@link ScopedMap} as their parent.<br>
+	 * A frozen {@link ScopedMap} can be read from any thread without synchronization, and every method that would modify it throws an
+	 * {@link UnsupportedOperationException}.
+	 * 
+	 * @return a frozen copy of this {@link ScopedMap} with the same parent {@link Scope} or this {@link ScopedMap} if it is already frozen
+	 */
+	public ScopedMap freeze() {
+		return frozen ? this : freeze(getParent());
+	}
+	
+	/**
+	 * Creates a frozen copy of this {@link ScopedMap} with the given parent {@link Scope}. Subclasses must override this so that the copy has the
+	 * same type as the original.
+	 * 
+	 * @param parent
+	 *            the parent {@link Scope} of the copy
+	 * @return a frozen copy of this {@link ScopedMap}
+	 * @see #freeze()
+	 */
+	protected ScopedMap freeze(Scope parent) {
+		return new ScopedMap(parent, this);
+	}
+	
+	/**
+	 * @return {@code true} iff this {@link ScopedMap} was created by {@link #freeze()}
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
 	@Override
 	public boolean containsKey(Object key) {
+		if (key instanceof String && !frozen)
+			FormulaDependencies.recordRead(stamps, (String) key);
 		return backing.containsKey(key);
 	}
 	
@@ -74,29 +225,94 @@ public class ScopedMap implements Scope, Map<String, Object> {
 	public Object get(Object key) {
 		if (!(key instanceof String))
 			return null;
-		return processOutput((String) key, backing.get(key));
+		return processCurrentOutput((String) key, backing.get(key));
 	}
 	
 	@Override
 	public Object put(String key, Object value) {
-		return processOutput(key, backing.put(key, processInput(value)));
+		int size = backing.size();
+		Object old = backing.put(key, processInput(value));
+		modified(key);
+		if (size != backing.size())
+			namesModified();
+		return processOutput(key, old);
 	}
 	
 	@Override
 	public Object remove(Object key) {
 		if (!(key instanceof String))
 			return null;
-		return processOutput((String) key, backing.remove(key));
+		int size = backing.size();
+		Object old = backing.remove(key);
+		modified((String) key);
+		if (size != backing.size())
+			namesModified();
+		return processOutput((String) key, old);
 	}
 	
 	@Override
 	public void clear() {
 		backing.clear();
+		modifiedAll();
 	}
 	
 	@Override
 	public Set<String> keySet() {
-		return backing.keySet();
+		return keys == null ? keys = new KeySet(backing.keySet()) : keys;
+	}
+	
+	final class KeySet extends AbstractSet<String> {
+		private final Set<String> back;
+		
+		KeySet(Set<String> back) {
+			this.back = back;
+		}
+		
+		@Override
+		public final int size() {
+			return back.size();
+		}
+		
+		@Override
+		public final void clear() {
+			ScopedMap.this.clear();
+		}
+		
+		@Override
+		public final Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private final Iterator<String> it = back.iterator();
+				
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+				
+				@Override
+				public String next() {
+					return it.next();
+				}
+				
+				@Override
+				public void remove() {
+					it.remove();
+					modifiedAll();
+				}
+			};
+		}
+		
+		@Override
+		public final boolean contains(Object o) {
+			return containsKey(o);
+		}
+		
+		@Override
+		public final boolean remove(Object o) {
+			if (!containsKey(o))
+				return false;
+			ScopedMap.this.remove(o);
+			return true;
+		}
 	}
 	
 	@Override
@@ -118,12 +334,14 @@ public class ScopedMap implements Scope, Map<String, Object> {
 		
 		@Override
 		public Object getValue() {
-			return processOutput(getKey(), back.getValue());
+			return processCurrentOutput(getKey(), back.getValue());
 		}
 		
 		@Override
 		public Object setValue(Object value) {
-			return processOutput(getKey(), back.setValue(processInput(value)));
+			Object old = back.setValue(processInput(value));
+			modified(getKey());
+			return processOutput(getKey(), old);
 		}
 	}
 	
@@ -146,7 +364,25 @@ public class ScopedMap implements Scope, Map<String, Object> {
 		
 		@Override
 		public final Iterator<Entry<String, Object>> iterator() {
-			return new WrappedIterator<>(back.iterator(), ScopedEntry::new);
+			return new Iterator<Entry<String, Object>>() {
+				private final Iterator<Entry<String, Object>> it = back.iterator();
+				
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+				
+				@Override
+				public Entry<String, Object> next() {
+					return new ScopedEntry(it.next());
+				}
+				
+				@Override
+				public void remove() {
+					it.remove();
+					modifiedAll();
+				}
+			};
 		}
 		
 		@Override
@@ -162,7 +398,10 @@ public class ScopedMap implements Scope, Map<String, Object> {
 		public final boolean remove(Object o) {
 			if (!(o instanceof Entry))
 				return false;
-			return back.remove(new ScopedEntry((Entry<String, Object>) o));
+			if (!back.remove(new ScopedEntry((Entry<String, Object>) o)))
+				return false;
+			modifiedAll();
+			return true;
 		}
 	}
 	
@@ -179,6 +418,19 @@ public class ScopedMap implements Scope, Map<String, Object> {
 		return out;
 	}
 	
+	@Override
+	public Object getScopedValueByName(String name) throws InvalidVariableAccessException {
+		Scope owner = getLookups().find(this, name);
+		if (owner == null)
+			throw new InvalidVariableAccessException("Could not access " + name);
+		return owner.getValueByName(name);
+	}
+	
+	@Override
+	public boolean hasScopedValueByName(String name) {
+		return getLookups().find(this, name) != null;
+	}
+	
 	@Override
 	public Scope getParent() {
 		return parent;
@@ -191,8 +443,12 @@ public class ScopedMap implements Scope, Map<String, Object> {
 	 *            the parent {@link Scope}
 	 */
 	public synchronized void setParent(Scope parent) {
-		if (this.parent == null)
+		if (frozen)
+			throw new UnsupportedOperationException("The parent of a frozen ScopedMap cannot be changed.");
+		if (this.parent == null) {
 			this.parent = parent;
+			namesModified(); //The names visible from this map and its descendants have changed
+		}
 		else
 			throw new UnsupportedOperationException("The parent of a ScopedConfiguration object cannot be changed once set.");
 	}
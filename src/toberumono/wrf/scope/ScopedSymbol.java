@@ -0,0 +1,130 @@
+package toberumono.wrf.scope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An interned, pre-processed form of a variable name used in a {@link ScopedFormula}. The camelCase to hyphenated conversion and the splitting of the
+ * name on '.' are performed once when the {@link ScopedSymbol} is created rather than on every access.<br>
+ * {@link ScopedSymbol ScopedSymbols} do not cache lookups because they are shared by every formula that uses the name. Instead, each segment is
+ * looked up with {@link Scope#getScopedValueByName(String)}, which uses the {@link ScopeLookupCache} of the {@link Scope} that it is called on.
+ * 
+ * @author Toberumono
+ */
+final class ScopedSymbol {
+	private static final Map<String, ScopedSymbol> symbols = new ConcurrentHashMap<>();
+	
+	static final byte NAME = 0, PARENT = 1, CURRENT = 2;
+	
+	private final String name;
+	private final String[] path;
+	private final byte[] kinds;
+	
+	private ScopedSymbol(String name) {
+		this.name = name;
+		StringBuilder nme = new StringBuilder(name.length());
+		List<String> segments = new ArrayList<>();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '.') {
+				segments.add(nme.toString());
+				nme.setLength(0);
+			}
+			else if (Character.isUpperCase(c))
+				nme.append('-').append(Character.toLowerCase(c));
+			else
+				nme.append(c);
+		}
+		if (nme.length() > 0 || segments.size() == 0) //This matches the behavior of String.split, which drops trailing empty segments
+			segments.add(nme.toString());
+		while (segments.size() > 1 && segments.get(segments.size() - 1).length() == 0)
+			segments.remove(segments.size() - 1);
+		path = segments.toArray(new String[segments.size()]);
+		kinds = new byte[path.length];
+		for (int i = 0; i < path.length; i++) {
+			switch (path[i]) {
+				case "super":
+				case "parent":
+					kinds[i] = PARENT;
+					break;
+				case "this":
+				case "current":
+					kinds[i] = CURRENT;
+					break;
+				default:
+					kinds[i] = NAME;
+			}
+		}
+	}
+	
+	/**
+	 * @param name
+	 *            the name as it appears in the formula
+	 * @return the {@link ScopedSymbol} for the given name
+	 */
+	static ScopedSymbol intern(String name) {
+		ScopedSymbol out = symbols.get(name);
+		return out != null ? out : symbols.computeIfAbsent(name, ScopedSymbol::new);
+	}
+	
+	/**
+	 * @return the number of segments in the symbol's path
+	 */
+	int size() {
+		return path.length;
+	}
+	
+	/**
+	 * @param index
+	 *            the index of the segment
+	 * @return the normalized segment at the given index
+	 */
+	String getSegment(int index) {
+		return path[index];
+	}
+	
+	/**
+	 * @param index
+	 *            the index of the segment
+	 * @return {@link #NAME}, {@link #PARENT}, or {@link #CURRENT}
+	 */
+	byte getKind(int index) {
+		return kinds[index];
+	}
+	
+	/**
+	 * Retrieves the value referenced by the {@link ScopedSymbol} starting from the given {@link Scope}.
+	 * 
+	 * @param scope
+	 *            the {@link Scope} from which to start
+	 * @return the referenced value
+	 * @throws InvalidVariableAccessException
+	 *             if the value could not be accessed
+	 */
+	Object resolve(Scope scope) throws InvalidVariableAccessException {
+		Object out = scope;
+		for (int i = 0; i < path.length; i++) {
+			if (!(out instanceof Scope))
+				throw new InvalidVariableAccessException(out.getClass().getName() + " is not an instance of Scope.");
+			switch (kinds[i]) {
+				case PARENT:
+					out = ((Scope) out).getParent();
+					if (out == null)
+						throw new InvalidVariableAccessException("The current scope does not have a parent");
+					break;
+				case CURRENT:
+					break; //Don't change the scope in this case
+				default:
+					out = ((Scope) out).getScopedValueByName(path[i]);
+			}
+		}
+		return out;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
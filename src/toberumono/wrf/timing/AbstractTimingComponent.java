@@ -20,7 +20,8 @@ import static toberumono.wrf.SimulationConstants.TIMING_FIELD_NAMES;
  * @author Toberumono
  */
 public abstract class AbstractTimingComponent extends LoggedScopedComponent<Scope> implements TimingComponent {
-	private boolean computed;
+	private final Object computeLock;
+	private volatile boolean computed;
 	
 	/**
 	 * Constructs a new {@link AbstractTimingComponent}.
@@ -34,20 +35,35 @@ public abstract class AbstractTimingComponent extends LoggedScopedComponent<Scop
 	 */
 	public AbstractTimingComponent(ScopedMap parameters, Scope parent, Logger log) {
 		super(parameters, parent, log);
+		computeLock = new Object();
+		computed = false;
 	}
 	
 	@Override
 	public Calendar apply(Calendar base, boolean inPlace) {
 		Calendar out = inPlace ? base : (Calendar) base.clone();
+		ensureComputed();
+		return doApply(out);
+	}
+	
+	@Override
+	public long apply(long base) {
+		ensureComputed();
+		return doApply(base);
+	}
+	
+	/*
+	 * Each component is computed under its own lock so that unrelated components that share a Logger do not contend with each other
+	 */
+	private void ensureComputed() {
 		if (computed)
-			return doApply(out);
-		synchronized (getLogger()) {
+			return;
+		synchronized (computeLock) {
 			if (!computed) {
 				compute();
 				computed = true;
 			}
 		}
-		return doApply(out);
 	}
 	
 	@Override
@@ -64,6 +80,20 @@ public abstract class AbstractTimingComponent extends LoggedScopedComponent<Scop
 	 */
 	protected abstract Calendar doApply(Calendar base);
 	
+	/**
+	 * Implementations of this method must produce the same result as {@link #doApply(Calendar)} for every time that
+	 * {@link EpochCalendar#isSupported(long) is supported}. The default implementation converts {@code base} into a {@link Calendar}, passes it to
+	 * {@link #doApply(Calendar)}, and converts the result back, so implementations should override this with one that only uses
+	 * {@link EpochCalendar} and call it for the times that {@link EpochCalendar} cannot handle.
+	 * 
+	 * @param base
+	 *            the time that the {@link AbstractTimingComponent TimingComponent} is to modify in local epoch milliseconds
+	 * @return the modified time in local epoch milliseconds
+	 */
+	protected long doApply(long base) {
+		return EpochCalendar.toLocalTime(doApply(EpochCalendar.toCalendar(base)));
+	}
+	
 	/**
 	 * Implementations of this method should perform all possible preprocessing steps and store their results.
 	 */
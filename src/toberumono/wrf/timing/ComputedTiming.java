@@ -5,7 +5,9 @@ import java.util.Objects;
 
 import toberumono.wrf.Simulation;
 import toberumono.wrf.WRFRunnerComponentFactory;
+import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.Scope;
+import toberumono.wrf.scope.ScopeUtils;
 import toberumono.wrf.scope.ScopedComponent;
 import toberumono.wrf.scope.ScopedList;
 import toberumono.wrf.scope.ScopedMap;
@@ -24,12 +26,13 @@ import toberumono.wrf.timing.round.Round;
  * @author Toberumono
  */
 public class ComputedTiming extends ScopedComponent<Scope> implements Timing {
-	private volatile Calendar base, start, end;
-	private volatile Offset offset;
-	private volatile Round round;
-	private volatile Duration duration;
-	private volatile Clear clear;
-	private boolean appliedClear;
+	private final Lazy<Calendar> base, start, end;
+	private final Lazy<ScopedMap> scopedBase, scopedStart, scopedEnd;
+	private final Lazy<TimingSnapshot> snapshot;
+	private final Lazy<Offset> offset;
+	private final Lazy<Round> round;
+	private final Lazy<Duration> duration;
+	private final Lazy<Clear> clear;
 	
 	/**
 	 * Constructs a {@link ComputedTiming} instance without an explicitly defined base {@link Calendar}. This is the general use constructor.
@@ -56,119 +59,99 @@ public class ComputedTiming extends ScopedComponent<Scope> implements Timing {
 	 */
 	public ComputedTiming(ScopedMap parameters, Calendar base, Scope parent) {
 		super(parameters, parent);
-		this.base = parent instanceof Timing ? base : Objects.requireNonNull(base, "The base Calendar cannot be null if the parent is not an instance of Timing");
-		start = end = null;
-		offset = null;
-		round = null;
-		duration = null;
-		clear = null;
-		appliedClear = false;
+		Calendar explicit = parent instanceof Timing ? base : Objects.requireNonNull(base, "The base Calendar cannot be null if the parent is not an instance of Timing");
+		this.base = new Lazy<>(() -> getClear().apply(explicit != null ? explicit : ((Timing) getParent()).getBase()));
+		start = new Lazy<>(() -> getOffset().apply(getRound().apply(this.base.get())));
+		end = new Lazy<>(() -> getDuration().apply(start.get()));
+		scopedBase = new Lazy<>(() -> ScopeUtils.makeScopeFromCalendar(this.base.get(), this).freeze());
+		scopedStart = new Lazy<>(() -> ScopeUtils.makeScopeFromCalendar(start.get(), this).freeze());
+		scopedEnd = new Lazy<>(() -> ScopeUtils.makeScopeFromCalendar(end.get(), this).freeze());
+		snapshot = new Lazy<>(() -> TimingSnapshot.of(this.base.get(), start.get(), end.get()));
+		offset = new Lazy<>(() -> getParameters().get("offset") instanceof ScopedList
+				? new ListOffset((ScopedList) getParameters().get("offset"), (getParent() instanceof Timing) ? ((Timing) getParent()).getOffset() : this)
+				: WRFRunnerComponentFactory.generateComponent(Offset.class, (ScopedMap) getParameters().get("offset"),
+						(getParent() instanceof Timing) ? ((Timing) getParent()).getOffset() : this));
+		round = new Lazy<>(() -> getParameters().get("round") instanceof ScopedList
+				? new ListRound((ScopedList) getParameters().get("round"), (getParent() instanceof Timing) ? ((Timing) getParent()).getRound() : this)
+				: WRFRunnerComponentFactory.generateComponent(Round.class, (ScopedMap) getParameters().get("round"),
+						(getParent() instanceof Timing) ? ((Timing) getParent()).getRound() : this));
+		duration = new Lazy<>(() -> getParameters().get("duration") instanceof ScopedList
+				? new ListDuration((ScopedList) getParameters().get("duration"), (getParent() instanceof Timing) ? ((Timing) getParent()).getDuration() : this)
+				: WRFRunnerComponentFactory.generateComponent(Duration.class, (ScopedMap) getParameters().get("duration"),
+						(getParent() instanceof Timing) ? ((Timing) getParent()).getDuration() : this));
+		clear = new Lazy<>(() -> getParameters().get("clear") instanceof ScopedList
+				? new ListClear((ScopedList) getParameters().get("clear"), (getParent() instanceof Timing) ? ((Timing) getParent()).getClear() : this)
+				: WRFRunnerComponentFactory.generateComponent(Clear.class, (ScopedMap) getParameters().get("clear"),
+						(getParent() instanceof Timing) ? ((Timing) getParent()).getClear() : this));
 	}
 	
 	@Override
 	public Calendar getBase() {
-		if (base == null) {
-			synchronized (this) {
-				if (base == null) { //Have to re-check for synchronization
-					base = getClear().apply((getParent() instanceof Timing) ? ((Timing) getParent()).getBase() : null);
-					appliedClear = true;
-				}
-			}
-		}
-		if (!appliedClear) {
-			synchronized (this) {
-				if (!appliedClear) { //Have to re-check for synchronization
-					base = getClear().apply(base);
-					appliedClear = true;
-				}
-			}
-		}
-		return base;
+		return (Calendar) base.get().clone();
 	}
 	
 	@Override
 	public Calendar getStart() {
-		if (start != null)
-			return start;
-		synchronized (this) {
-			if (start == null)
-				start = getOffset().apply(getRound().apply(getBase()));
-		}
-		return start;
+		return (Calendar) start.get().clone();
 	}
 	
 	@Override
 	public Calendar getEnd() {
-		if (end != null)
-			return end;
-		synchronized (this) {
-			if (end == null)
-				end = getDuration().apply(getStart());
-		}
-		return end;
+		return (Calendar) end.get().clone();
+	}
+	
+	/**
+	 * @return an immutable {@link TimingSnapshot} of the base, start, and end times; it is only computed once
+	 */
+	@Override
+	public TimingSnapshot getSnapshot() {
+		return snapshot.get();
+	}
+	
+	/**
+	 * @return a frozen {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getBase()}; it is only computed once
+	 */
+	@Override
+	@NamedScopeValue("base")
+	public ScopedMap getScopedBase() {
+		return scopedBase.get();
+	}
+	
+	/**
+	 * @return a frozen {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getStart()}; it is only computed once
+	 */
+	@Override
+	@NamedScopeValue("start")
+	public ScopedMap getScopedStart() {
+		return scopedStart.get();
+	}
+	
+	/**
+	 * @return a frozen {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getEnd()}; it is only computed once
+	 */
+	@Override
+	@NamedScopeValue("end")
+	public ScopedMap getScopedEnd() {
+		return scopedEnd.get();
 	}
 	
 	@Override
 	public Offset getOffset() {
-		if (offset != null)
-			return offset;
-		synchronized (this) {
-			if (offset == null) {
-				if (getParameters().get("offset") instanceof ScopedList)
-					offset = new ListOffset((ScopedList) getParameters().get("offset"), (getParent() instanceof Timing) ? ((Timing) getParent()).getOffset() : this);
-				else
-					offset = WRFRunnerComponentFactory.generateComponent(Offset.class, (ScopedMap) getParameters().get("offset"),
-							(getParent() instanceof Timing) ? ((Timing) getParent()).getOffset() : this);
-			}
-		}
-		return offset;
+		return offset.get();
 	}
 	
 	@Override
 	public Round getRound() {
-		if (round != null)
-			return round;
-		synchronized (this) {
-			if (round == null) {
-				if (getParameters().get("round") instanceof ScopedList)
-					round = new ListRound((ScopedList) getParameters().get("round"), (getParent() instanceof Timing) ? ((Timing) getParent()).getRound() : this);
-				else
-					round = WRFRunnerComponentFactory.generateComponent(Round.class, (ScopedMap) getParameters().get("round"),
-							(getParent() instanceof Timing) ? ((Timing) getParent()).getRound() : this);
-			}
-		}
-		return round;
+		return round.get();
 	}
 	
 	@Override
 	public Duration getDuration() {
-		if (duration != null)
-			return duration;
-		synchronized (this) {
-			if (duration == null) {
-				if (getParameters().get("duration") instanceof ScopedList)
-					duration = new ListDuration((ScopedList) getParameters().get("duration"), (getParent() instanceof Timing) ? ((Timing) getParent()).getDuration() : this);
-				else
-					duration = WRFRunnerComponentFactory.generateComponent(Duration.class, (ScopedMap) getParameters().get("duration"),
-							(getParent() instanceof Timing) ? ((Timing) getParent()).getDuration() : this);
-			}
-		}
-		return duration;
+		return duration.get();
 	}
 	
 	@Override
 	public Clear getClear() {
-		if (clear != null)
-			return clear;
-		synchronized (this) {
-			if (clear == null) {
-				if (getParameters().get("clear") instanceof ScopedList)
-					clear = new ListClear((ScopedList) getParameters().get("clear"), (getParent() instanceof Timing) ? ((Timing) getParent()).getClear() : this);
-				else
-					clear = WRFRunnerComponentFactory.generateComponent(Clear.class, (ScopedMap) getParameters().get("clear"),
-							(getParent() instanceof Timing) ? ((Timing) getParent()).getClear() : this);
-			}
-		}
-		return clear;
+		return clear.get();
 	}
 }
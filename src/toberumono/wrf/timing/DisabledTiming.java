@@ -4,6 +4,7 @@ import java.util.Calendar;
 
 import toberumono.wrf.WRFRunnerComponentFactory;
 import toberumono.wrf.scope.AbstractScope;
+import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
 import toberumono.wrf.timing.clear.Clear;
@@ -48,6 +49,29 @@ public class DisabledTiming extends AbstractScope<Scope> implements Timing {
 		return null;
 	}
 	
+	@Override
+	public TimingSnapshot getSnapshot() {
+		return null;
+	}
+	
+	@Override
+	@NamedScopeValue("base")
+	public ScopedMap getScopedBase() {
+		return null;
+	}
+	
+	@Override
+	@NamedScopeValue("start")
+	public ScopedMap getScopedStart() {
+		return null;
+	}
+	
+	@Override
+	@NamedScopeValue("end")
+	public ScopedMap getScopedEnd() {
+		return null;
+	}
+	
 	@Override
 	public Offset getOffset() {
 		return null;
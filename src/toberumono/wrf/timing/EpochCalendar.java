@@ -0,0 +1,322 @@
+package toberumono.wrf.timing;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import toberumono.wrf.SimulationConstants;
+
+/**
+ * An allocation-free alternative to {@link Calendar} for use by {@link TimingComponent TimingComponents}. Instants are represented as <i>local</i>
+ * epoch milliseconds, that is, the number of milliseconds between 1970-01-01T00:00:00.000 and the instant's wall-clock time in a fixed-offset time
+ * zone. Because fixed-offset zones never change their offset, every {@link Calendar} field operation can be performed with plain integer
+ * arithmetic on these values.<br>
+ * The methods in this class reproduce the lenient behavior of {@link GregorianCalendar} exactly, but only for instants between the start of
+ * {@link #MIN_YEAR} and the end of {@link #MAX_YEAR}, which avoids the Julian-Gregorian cutover and the change of era. Every method returns
+ * {@link #UNSUPPORTED} if it would leave that range, in which case the caller must fall back to a {@link Calendar}.<br>
+ * Fields are identified by their indices in {@link SimulationConstants#TIMING_FIELD_NAMES}.
+ * 
+ * @author Toberumono
+ */
+public final class EpochCalendar {
+	/**
+	 * The first year that can be represented
+	 */
+	public static final int MIN_YEAR = 1583;
+	/**
+	 * The last year that can be represented
+	 */
+	public static final int MAX_YEAR = 999999;
+	/**
+	 * The value returned by operations whose results cannot be represented
+	 */
+	public static final long UNSUPPORTED = Long.MIN_VALUE;
+	
+	private static final int MILLISECOND = 0, SECOND = 1, MINUTE = 2, HOUR = 3, DAY = 4, MONTH = 5, YEAR = 6;
+	private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+	private static final long[] MS_PER_UNIT = {1L, 1000L, 60L * 1000, 60L * 60 * 1000, MS_PER_DAY};
+	private static final int[] MINIMA = {0, 0, 0, 0, 1, 0, 1};
+	private static final int[] MAXIMA = {999, 59, 59, 23, 31, 11, Integer.MAX_VALUE}; //The day and year maxima are computed as needed
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	private static final long MIN_TIME = daysFromCivil(MIN_YEAR, 1, 1) * MS_PER_DAY, MAX_TIME = daysFromCivil(MAX_YEAR + 1, 1, 1) * MS_PER_DAY - 1;
+	
+	private EpochCalendar() {/* This is a static class */}
+	
+	/**
+	 * @param time
+	 *            a time in local epoch milliseconds
+	 * @return {@code true} iff {@code time} is between the start of {@link #MIN_YEAR} and the end of {@link #MAX_YEAR}
+	 */
+	public static boolean isSupported(long time) {
+		return MIN_TIME <= time && time <= MAX_TIME;
+	}
+	
+	/**
+	 * Determines whether the given {@link Calendar} can be converted into local epoch milliseconds without changing the results of any
+	 * {@link TimingComponent}.
+	 * 
+	 * @param calendar
+	 *            the {@link Calendar}
+	 * @return {@code true} iff {@code calendar} is a lenient {@link GregorianCalendar} with the default cutover in a fixed-offset time zone and its
+	 *         time is {@link #isSupported(long) supported}
+	 */
+	public static boolean isSupported(Calendar calendar) {
+		if (!(calendar instanceof GregorianCalendar) || !calendar.isLenient() || ((GregorianCalendar) calendar).getGregorianChange().getTime() > MIN_TIME)
+			return false;
+		TimeZone zone = calendar.getTimeZone();
+		return zone.toZoneId().getRules().isFixedOffset() && isSupported(calendar.getTimeInMillis() + zone.getRawOffset());
+	}
+	
+	/**
+	 * @param calendar
+	 *            a {@link Calendar} for which {@link #isSupported(Calendar)} returns {@code true}
+	 * @return the {@link Calendar Calendar's} time in local epoch milliseconds
+	 */
+	public static long toLocalTime(Calendar calendar) {
+		return calendar.getTimeInMillis() + calendar.getTimeZone().getRawOffset();
+	}
+	
+	/**
+	 * Sets the given {@link Calendar} to the given time.
+	 * 
+	 * @param time
+	 *            a time in local epoch milliseconds
+	 * @param calendar
+	 *            a {@link Calendar} in the fixed-offset time zone in which {@code time} was computed
+	 * @return {@code calendar}
+	 */
+	public static Calendar setLocalTime(long time, Calendar calendar) {
+		calendar.setTimeInMillis(time - calendar.getTimeZone().getRawOffset());
+		return calendar;
+	}
+	
+	/**
+	 * @param time
+	 *            a time in local epoch milliseconds
+	 * @return a new {@link GregorianCalendar} in UTC set to the given time, which has the same fields as {@code time}
+	 */
+	public static Calendar toCalendar(long time) {
+		Calendar out = new GregorianCalendar(UTC);
+		out.setTimeInMillis(time);
+		return out;
+	}
+	
+	/**
+	 * Equivalent to {@link Calendar#get(int)}.
+	 * 
+	 * @param time
+	 *            a {@link #isSupported(long) supported} time in local epoch milliseconds
+	 * @param field
+	 *            the index of the field
+	 * @return the value of the field
+	 */
+	public static int get(long time, int field) {
+		if (field <= HOUR)
+			return (int) (Math.floorMod(time, MS_PER_DAY) / MS_PER_UNIT[field] % (field == HOUR ? 24 : field == MILLISECOND ? 1000 : 60));
+		long civil = civilFromDays(Math.floorDiv(time, MS_PER_DAY));
+		return field == DAY ? dayOf(civil) : field == MONTH ? monthOf(civil) : yearOf(civil);
+	}
+	
+	/**
+	 * Equivalent to {@link Calendar#getActualMinimum(int)}.
+	 * 
+	 * @param field
+	 *            the index of the field
+	 * @return the smallest value that the field can have
+	 */
+	public static int getActualMinimum(int field) {
+		return MINIMA[field];
+	}
+	
+	/**
+	 * Equivalent to {@link Calendar#getActualMaximum(int)} for every field other than years.
+	 * 
+	 * @param time
+	 *            a {@link #isSupported(long) supported} time in local epoch milliseconds
+	 * @param field
+	 *            the index of the field; this cannot be the index of years
+	 * @return the largest value that the field can have at the given time
+	 */
+	public static int getActualMaximum(long time, int field) {
+		if (field == YEAR)
+			throw new IllegalArgumentException("The actual maximum of the years field is not supported.");
+		if (field != DAY)
+			return MAXIMA[field];
+		long civil = civilFromDays(Math.floorDiv(time, MS_PER_DAY));
+		return monthLength(yearOf(civil), monthOf(civil));
+	}
+	
+	/**
+	 * Equivalent to {@link Calendar#add(int, int)}.
+	 * 
+	 * @param time
+	 *            a {@link #isSupported(long) supported} time in local epoch milliseconds
+	 * @param field
+	 *            the index of the field
+	 * @param amount
+	 *            the amount to add
+	 * @return the resulting time or {@link #UNSUPPORTED}
+	 */
+	public static long add(long time, int field, int amount) {
+		if (amount == 0)
+			return time;
+		if (field <= DAY)
+			return supported(time + amount * MS_PER_UNIT[field]);
+		long days = Math.floorDiv(time, MS_PER_DAY), civil = civilFromDays(days);
+		int year = yearOf(civil), month = monthOf(civil), day = dayOf(civil);
+		if (field == MONTH) { //This mirrors GregorianCalendar.add, including its int arithmetic
+			month += amount;
+			year += month >= 0 ? month / 12 : (month + 1) / 12 - 1;
+			month %= 12;
+			if (month < 0)
+				month += 12;
+		}
+		else
+			year += amount;
+		if (year < MIN_YEAR || year > MAX_YEAR)
+			return UNSUPPORTED;
+		return supported(daysFromCivil(year, month + 1, Math.min(day, monthLength(year, month))) * MS_PER_DAY + Math.floorMod(time, MS_PER_DAY));
+	}
+	
+	/**
+	 * Equivalent to {@link Calendar#set(int, int)} followed by any method that causes the {@link Calendar Calendar's} time to be recomputed.
+	 * 
+	 * @param time
+	 *            a {@link #isSupported(long) supported} time in local epoch milliseconds
+	 * @param field
+	 *            the index of the field
+	 * @param value
+	 *            the new value of the field; this can be outside of the field's normal range
+	 * @return the resulting time or {@link #UNSUPPORTED}
+	 */
+	public static long set(long time, int field, int value) {
+		return truncate(time, field, value, 0);
+	}
+	
+	/**
+	 * Sets the given field to the given value and every field below it to its {@link #getActualMinimum(int) minimum}. This is equivalent to
+	 * performing each of the calls to {@link Calendar#set(int, int)} and then recomputing the {@link Calendar Calendar's} time once.
+	 * 
+	 * @param time
+	 *            a {@link #isSupported(long) supported} time in local epoch milliseconds
+	 * @param field
+	 *            the index of the field
+	 * @param value
+	 *            the new value of the field; this can be outside of the field's normal range
+	 * @return the resulting time or {@link #UNSUPPORTED}
+	 */
+	public static long truncate(long time, int field, int value) {
+		return truncate(time, field, value, field);
+	}
+	
+	private static long truncate(long time, int field, int value, int count) {
+		long days = Math.floorDiv(time, MS_PER_DAY), timeOfDay = Math.floorMod(time, MS_PER_DAY), civil = civilFromDays(days);
+		long ms = timeOfDay % 1000, second = timeOfDay / 1000 % 60, minute = timeOfDay / 60000 % 60, hour = timeOfDay / 3600000;
+		long day = dayOf(civil), month = monthOf(civil), year = yearOf(civil);
+		for (int i = 0; i < count; i++) {
+			switch (i) {
+				case MILLISECOND: ms = MINIMA[i]; break;
+				case SECOND: second = MINIMA[i]; break;
+				case MINUTE: minute = MINIMA[i]; break;
+				case HOUR: hour = MINIMA[i]; break;
+				case DAY: day = MINIMA[i]; break;
+				default: month = MINIMA[i];
+			}
+		}
+		switch (field) {
+			case MILLISECOND: ms = value; break;
+			case SECOND: second = value; break;
+			case MINUTE: minute = value; break;
+			case HOUR: hour = value; break;
+			case DAY: day = value; break;
+			case MONTH: month = value; break;
+			default: year = value;
+		}
+		return combine(year, month, day, hour, minute, second, ms);
+	}
+	
+	/**
+	 * Replaces the lowest {@code count} fields with the given values. This is equivalent to performing each of the calls to
+	 * {@link Calendar#set(int, int)} and then recomputing the {@link Calendar Calendar's} time once.
+	 * 
+	 * @param time
+	 *            a {@link #isSupported(long) supported} time in local epoch milliseconds
+	 * @param values
+	 *            the new values of the fields indexed by field; these can be outside of the fields' normal ranges
+	 * @param count
+	 *            the number of fields to replace
+	 * @return the resulting time or {@link #UNSUPPORTED}
+	 */
+	public static long setLowest(long time, int[] values, int count) {
+		long days = Math.floorDiv(time, MS_PER_DAY), timeOfDay = Math.floorMod(time, MS_PER_DAY), civil = civilFromDays(days);
+		return combine(count > YEAR ? values[YEAR] : yearOf(civil), count > MONTH ? values[MONTH] : monthOf(civil), count > DAY ? values[DAY] : dayOf(civil),
+				count > HOUR ? values[HOUR] : timeOfDay / 3600000, count > MINUTE ? values[MINUTE] : timeOfDay / 60000 % 60,
+				count > SECOND ? values[SECOND] : timeOfDay / 1000 % 60, count > MILLISECOND ? values[MILLISECOND] : timeOfDay % 1000);
+	}
+	
+	/*
+	 * Mirrors GregorianCalendar.computeTime for fixed-offset time zones. The year must be checked before the month is normalized because
+	 * GregorianCalendar chooses between the Julian and Gregorian calendars based on the year field.
+	 */
+	private static long combine(long year, long month, long day, long hour, long minute, long second, long ms) {
+		if (year < MIN_YEAR || year > MAX_YEAR)
+			return UNSUPPORTED;
+		year += Math.floorDiv(month, 12);
+		month = Math.floorMod(month, 12);
+		if (year < MIN_YEAR || year > MAX_YEAR)
+			return UNSUPPORTED;
+		long timeOfDay = ((hour * 60 + minute) * 60 + second) * 1000 + ms;
+		return supported((daysFromCivil(year, month + 1, 1) + day - 1) * MS_PER_DAY + timeOfDay);
+	}
+	
+	private static long supported(long time) {
+		return isSupported(time) ? time : UNSUPPORTED;
+	}
+	
+	private static int monthLength(long year, long month) {
+		switch ((int) month) {
+			case 1:
+				return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+			case 3:
+			case 5:
+			case 8:
+			case 10:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+	
+	/*
+	 * The civil date algorithms are from Howard Hinnant's "chrono-Compatible Low-Level Date Algorithms". Months are 1-based here.
+	 */
+	private static long daysFromCivil(long year, long month, long day) {
+		year -= month <= 2 ? 1 : 0;
+		long era = Math.floorDiv(year, 400), yoe = year - era * 400;
+		long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		return era * 146097 + yoe * 365 + yoe / 4 - yoe / 100 + doy - 719468;
+	}
+	
+	/*
+	 * Returns the year, 0-based month, and day packed into a long so that no array needs to be allocated
+	 */
+	private static long civilFromDays(long days) {
+		long z = days + 719468, era = Math.floorDiv(z, 146097), doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365, doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153, day = doy - (153 * mp + 2) / 5 + 1, month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		return (year << 16) | ((month - 1) << 8) | day;
+	}
+	
+	private static int yearOf(long civil) {
+		return (int) (civil >> 16);
+	}
+	
+	private static int monthOf(long civil) {
+		return (int) ((civil >> 8) & 0xFF);
+	}
+	
+	private static int dayOf(long civil) {
+		return (int) (civil & 0xFF);
+	}
+}
@@ -0,0 +1,39 @@
+package toberumono.wrf.timing;
+
+import java.util.function.Supplier;
+
+/**
+ * A lazily computed value. The value is computed at most once, under a lock that belongs to the {@link Lazy} instance, and is published through a
+ * {@code volatile} field so that every subsequent call to {@link #get()} is lock-free.
+ * 
+ * @author Toberumono
+ * @param <T>
+ *            the type of the value
+ */
+final class Lazy<T> implements Supplier<T> {
+	private final Supplier<? extends T> computer;
+	private volatile T value;
+	
+	/**
+	 * Constructs a new {@link Lazy} value.
+	 * 
+	 * @param computer
+	 *            a {@link Supplier} that computes the value; it must not return {@code null}
+	 */
+	Lazy(Supplier<? extends T> computer) {
+		this.computer = computer;
+		value = null;
+	}
+	
+	@Override
+	public T get() {
+		T out = value;
+		if (out != null)
+			return out;
+		synchronized (this) {
+			if ((out = value) == null) //Have to re-check for synchronization
+				value = out = computer.get();
+		}
+		return out;
+	}
+}
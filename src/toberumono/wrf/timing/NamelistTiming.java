@@ -8,7 +8,10 @@ import toberumono.namelist.parser.Namelist;
 import toberumono.namelist.parser.NamelistSection;
 import toberumono.wrf.WRFRunnerComponentFactory;
 import toberumono.wrf.scope.AbstractScope;
+import toberumono.wrf.scope.NamedScopeValue;
 import toberumono.wrf.scope.Scope;
+import toberumono.wrf.scope.ScopeUtils;
+import toberumono.wrf.scope.ScopedMap;
 import toberumono.wrf.timing.clear.Clear;
 import toberumono.wrf.timing.duration.Duration;
 import toberumono.wrf.timing.duration.NamelistDuration;
@@ -27,6 +30,8 @@ public class NamelistTiming extends AbstractScope<Scope> implements Timing {
 	
 	private final Calendar base;
 	private final Calendar start, end;
+	private final ScopedMap scopedBase, scopedStart, scopedEnd;
+	private final TimingSnapshot snapshot;
 	private final Offset offset;
 	private final Round round;
 	private final Duration duration;
@@ -43,13 +48,17 @@ public class NamelistTiming extends AbstractScope<Scope> implements Timing {
 	public NamelistTiming(NamelistSection timeControl, Scope parent) { //No need for lazy computation - everything is either Disabled or independent
 		super(parent);
 		this.base = Calendar.getInstance();
-		timecontrolParser(getBase(), timeControl, "start");
+		timecontrolParser(base, timeControl, "start");
 		offset = WRFRunnerComponentFactory.getDisabledComponentInstance(Offset.class, null, this);
 		round = WRFRunnerComponentFactory.getDisabledComponentInstance(Round.class, null, this);
 		duration = new NamelistDuration(timeControl, this);
 		clear = WRFRunnerComponentFactory.getDisabledComponentInstance(Clear.class, null, this);
-		start = getOffset().apply(getRound().apply(getBase()));
-		end = getDuration().apply(getStart());
+		start = getOffset().apply(getRound().apply(base));
+		end = getDuration().apply(start);
+		scopedBase = ScopeUtils.makeScopeFromCalendar(base, this).freeze();
+		scopedStart = ScopeUtils.makeScopeFromCalendar(start, this).freeze();
+		scopedEnd = ScopeUtils.makeScopeFromCalendar(end, this).freeze();
+		snapshot = TimingSnapshot.of(base, start, end);
 	}
 	
 	private void timecontrolParser(Calendar cal, NamelistSection tc, String prefix) {
@@ -64,17 +73,49 @@ public class NamelistTiming extends AbstractScope<Scope> implements Timing {
 	
 	@Override
 	public Calendar getBase() {
-		return base;
+		return (Calendar) base.clone();
 	}
 	
 	@Override
 	public Calendar getStart() {
-		return start;
+		return (Calendar) start.clone();
 	}
 	
 	@Override
 	public Calendar getEnd() {
-		return end;
+		return (Calendar) end.clone();
+	}
+	
+	@Override
+	public TimingSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * @return a frozen {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getBase()}
+	 */
+	@Override
+	@NamedScopeValue("base")
+	public ScopedMap getScopedBase() {
+		return scopedBase;
+	}
+	
+	/**
+	 * @return a frozen {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getStart()}
+	 */
+	@Override
+	@NamedScopeValue("start")
+	public ScopedMap getScopedStart() {
+		return scopedStart;
+	}
+	
+	/**
+	 * @return a frozen {@link ScopedMap} generated from the {@link Calendar} returned by {@link #getEnd()}
+	 */
+	@Override
+	@NamedScopeValue("end")
+	public ScopedMap getScopedEnd() {
+		return scopedEnd;
 	}
 	
 	@Override
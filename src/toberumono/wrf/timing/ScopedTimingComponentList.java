@@ -83,6 +83,14 @@ public class ScopedTimingComponentList<E extends TimingComponent> implements Tim
 		return out;
 	}
 	
+	@Override
+	public long apply(long base) {
+		long out = base;
+		for (TimingComponent component : this)
+			out = component.apply(out);
+		return out;
+	}
+	
 	/**
 	 * @return the {@link ScopedTimingComponentList ScopedComponentList's} backing {@link List}
 	 */
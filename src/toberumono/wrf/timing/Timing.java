@@ -13,7 +13,10 @@ import toberumono.wrf.timing.offset.Offset;
 import toberumono.wrf.timing.round.Round;
 
 /**
- * This interface defines the accessor methods used to interact with {@link Timing} Objects.
+ * This interface defines the accessor methods used to interact with {@link Timing} Objects.<br>
+ * The {@link Calendar} accessors return copies so that callers can modify them. Implementations whose {@link Calendar Calendars} do not change once
+ * computed should override the scoped accessors to return a single, {@link ScopedMap#freeze() frozen} {@link ScopedMap} each (the overrides must be
+ * annotated with {@link NamedScopeValue} as well) and {@link #getSnapshot()} to return a single {@link TimingSnapshot}.
  * 
  * @author Toberumono
  */
@@ -61,6 +64,13 @@ public interface Timing extends Scope {
 		return ScopeUtils.makeScopeFromCalendar(getEnd(), this);
 	}
 	
+	/**
+	 * @return an immutable {@link TimingSnapshot} of the values returned by {@link #getBase()}, {@link #getStart()}, and {@link #getEnd()}
+	 */
+	public default TimingSnapshot getSnapshot() {
+		return TimingSnapshot.of(getBase(), getStart(), getEnd());
+	}
+	
 	/**
 	 * @return the {@link Offset} added to the rounded {@link #getBase() base} to derive {@link #getStart() start}
 	 */
@@ -42,4 +42,19 @@ public interface TimingComponent extends Function<Calendar, Calendar>, Scope {
 	 */
 	@Override
 	public Calendar apply(Calendar base);
+	
+	/**
+	 * Performs the steps necessary to apply the modifications specified by the {@link TimingComponent} to the given time, which is expressed in
+	 * local epoch milliseconds as described in {@link EpochCalendar}.<br>
+	 * For every time that {@link EpochCalendar#isSupported(long) is supported}, the result must be identical to that of applying the
+	 * {@link TimingComponent} to a lenient {@link java.util.GregorianCalendar GregorianCalendar} in a fixed-offset time zone. The default
+	 * implementation simply converts {@code base} into a {@link Calendar} and back.
+	 * 
+	 * @param base
+	 *            the time to modify with the {@link TimingComponent} in local epoch milliseconds
+	 * @return the modified time in local epoch milliseconds
+	 */
+	public default long apply(long base) {
+		return EpochCalendar.toLocalTime(apply(EpochCalendar.toCalendar(base), true));
+	}
 }
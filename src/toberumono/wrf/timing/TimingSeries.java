@@ -0,0 +1,308 @@
+package toberumono.wrf.timing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import toberumono.wrf.modules.GRIBModule;
+import toberumono.wrf.timing.clear.Clear;
+import toberumono.wrf.timing.duration.Duration;
+import toberumono.wrf.timing.offset.Offset;
+import toberumono.wrf.timing.round.Round;
+
+import static toberumono.wrf.SimulationConstants.TIMING_FIELD_IDS;
+
+/**
+ * Computes the start and end times that a {@link ComputedTiming} produces for every base time in a range without constructing a new {@link Timing}
+ * for each one. The {@link Clear}, {@link Round}, {@link Offset}, and {@link Duration} components of the {@link Timing} (and of each of its
+ * {@link Timing} ancestors) are parsed once and then applied to every base time in parallel.<br>
+ * Optionally, a second {@link Timing} whose parent chain includes the first (e.g. the incremented timing of a {@link GRIBModule}) can be evaluated
+ * for the same base times. If a timestep is also given, the times of the GRIB files that a {@link GRIBModule} would download for each base time are
+ * computed as well: starting from the incremented start time, each field of the timestep is added in turn until an increment is not before the end
+ * time, which is the incremented end time or the end time of the first {@link Timing}. As in {@link GRIBModule#execute()}, the last increment is the
+ * first one that is not before the end time.<br>
+ * All times are in epoch milliseconds.
+ * 
+ * @author Toberumono
+ */
+public final class TimingSeries {
+	private final long[] bases, starts, ends, incrementStarts, incrementEnds;
+	private final long[][] increments;
+	private final int[] timestep;
+	private final boolean useIncrementDuration;
+	
+	private TimingSeries(int size, boolean incremented, int[] timestep, boolean useIncrementDuration) {
+		bases = new long[size];
+		starts = new long[size];
+		ends = new long[size];
+		incrementStarts = incremented ? new long[size] : null;
+		incrementEnds = incremented ? new long[size] : null;
+		increments = timestep != null ? new long[size][] : null;
+		this.timestep = timestep;
+		this.useIncrementDuration = useIncrementDuration;
+	}
+	
+	/**
+	 * Evaluates the given {@link Timing} for every base time in the given range on the {@link ForkJoinPool#commonPool() common pool}.
+	 * 
+	 * @param timing
+	 *            the {@link Timing} to evaluate; it and every {@link Timing} in its parent chain must be a {@link ComputedTiming}
+	 * @param incremented
+	 *            a {@link Timing} that has {@code timing} in its parent chain or {@code null}
+	 * @param zone
+	 *            the {@link TimeZone} in which the base times are to be interpreted
+	 * @param first
+	 *            the first base time
+	 * @param last
+	 *            the last base time (inclusive)
+	 * @param step
+	 *            the number of milliseconds between base times
+	 * @return the resulting {@link TimingSeries}
+	 * @see #evaluate(Timing, Timing, int[], boolean, TimeZone, long, long, long, ForkJoinPool)
+	 */
+	public static TimingSeries evaluate(Timing timing, Timing incremented, TimeZone zone, long first, long last, long step) {
+		return evaluate(timing, incremented, null, false, zone, first, last, step, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Evaluates the given {@link Timing} for every base time in the given range without computing increments.
+	 * 
+	 * @param timing
+	 *            the {@link Timing} to evaluate; it and every {@link Timing} in its parent chain must be a {@link ComputedTiming}
+	 * @param incremented
+	 *            a {@link Timing} that has {@code timing} in its parent chain or {@code null}
+	 * @param zone
+	 *            the {@link TimeZone} in which the base times are to be interpreted
+	 * @param first
+	 *            the first base time
+	 * @param last
+	 *            the last base time (inclusive)
+	 * @param step
+	 *            the number of milliseconds between base times
+	 * @param pool
+	 *            the {@link ForkJoinPool} on which the base times are to be evaluated
+	 * @return the resulting {@link TimingSeries}
+	 * @see #evaluate(Timing, Timing, int[], boolean, TimeZone, long, long, long, ForkJoinPool)
+	 */
+	public static TimingSeries evaluate(Timing timing, Timing incremented, TimeZone zone, long first, long last, long step, ForkJoinPool pool) {
+		return evaluate(timing, incremented, null, false, zone, first, last, step, pool);
+	}
+	
+	/**
+	 * Evaluates the given {@link Timing} for every base time in the given range. If {@code zone} has a fixed offset, the components are applied via
+	 * {@link TimingComponent#apply(long)}; otherwise, they are applied to {@link Calendar Calendars}.
+	 * 
+	 * @param timing
+	 *            the {@link Timing} to evaluate; it and every {@link Timing} in its parent chain must be a {@link ComputedTiming}
+	 * @param incremented
+	 *            a {@link Timing} that has {@code timing} in its parent chain or {@code null}
+	 * @param timestep
+	 *            the amount by which each field (in the order of {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES}) is incremented between
+	 *            GRIB files or {@code null} if increments should not be computed; this requires {@code incremented}
+	 * @param useIncrementDuration
+	 *            whether the increments end at the end time of {@code incremented} rather than the end time of {@code timing}
+	 * @param zone
+	 *            the {@link TimeZone} in which the base times are to be interpreted
+	 * @param first
+	 *            the first base time
+	 * @param last
+	 *            the last base time (inclusive)
+	 * @param step
+	 *            the number of milliseconds between base times
+	 * @param pool
+	 *            the {@link ForkJoinPool} on which the base times are to be evaluated
+	 * @return the resulting {@link TimingSeries}
+	 * @throws IllegalArgumentException
+	 *             if {@code step} is not positive, {@code last} is before {@code first}, the range contains too many base times, either
+	 *             {@link Timing} does not have the required structure, or {@code timestep} is invalid or does not move an increment forward
+	 */
+	public static TimingSeries evaluate(Timing timing, Timing incremented, int[] timestep, boolean useIncrementDuration, TimeZone zone, long first, long last,
+			long step, ForkJoinPool pool) {
+		if (step <= 0)
+			throw new IllegalArgumentException("The step between base times must be greater than 0.");
+		if (last < first)
+			throw new IllegalArgumentException("The last base time cannot be before the first base time.");
+		long size = (last - first) / step + 1;
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("The range contains too many base times.");
+		List<Timing> chain = chain(timing), incrementChain = incremented != null ? chain(incremented) : null;
+		if (incrementChain != null && (incrementChain.size() <= chain.size() || incrementChain.get(chain.size() - 1) != timing))
+			throw new IllegalArgumentException("The incremented Timing must have the evaluated Timing in its parent chain.");
+		if (timestep != null && incrementChain == null)
+			throw new IllegalArgumentException("Increments can only be computed for an incremented Timing.");
+		if (timestep != null && timestep.length != TIMING_FIELD_IDS.size())
+			throw new IllegalArgumentException("The timestep must have a value for each timing field.");
+		TimingSeries out = new TimingSeries((int) size, incrementChain != null, timestep != null ? timestep.clone() : null, useIncrementDuration);
+		boolean fixed = zone.toZoneId().getRules().isFixedOffset();
+		out.evaluateAt(0, first, chain, incrementChain, zone, fixed); //This forces every component to be parsed before the parallel section starts
+		if (size > 1)
+			pool.submit(() -> IntStream.range(1, (int) size).parallel().forEach(i -> out.evaluateAt(i, first + i * step, chain, incrementChain, zone, fixed))).join();
+		return out;
+	}
+	
+	/*
+	 * Returns the Timings from the root of the parent chain down to the given Timing
+	 */
+	private static List<Timing> chain(Timing timing) {
+		List<Timing> out = new ArrayList<>();
+		for (Timing t = timing; t != null; t = t.getParent() instanceof Timing ? (Timing) t.getParent() : null) {
+			if (!(t instanceof ComputedTiming))
+				throw new IllegalArgumentException("Every Timing in the parent chain must be an instance of ComputedTiming.");
+			out.add(t);
+		}
+		Collections.reverse(out);
+		return out;
+	}
+	
+	private void evaluateAt(int index, long base, List<Timing> chain, List<Timing> incrementChain, TimeZone zone, boolean fixed) {
+		bases[index] = base;
+		if (fixed) {
+			int offset = zone.getRawOffset();
+			long b = base + offset;
+			for (Timing t : chain)
+				b = t.getClear().apply(b);
+			Timing last = chain.get(chain.size() - 1);
+			long start = last.getOffset().apply(last.getRound().apply(b));
+			starts[index] = start - offset;
+			ends[index] = last.getDuration().apply(start) - offset;
+			if (incrementChain != null) {
+				for (Timing t : incrementChain.subList(chain.size(), incrementChain.size()))
+					b = t.getClear().apply(b);
+				last = incrementChain.get(incrementChain.size() - 1);
+				start = last.getOffset().apply(last.getRound().apply(b));
+				incrementStarts[index] = start - offset;
+				incrementEnds[index] = last.getDuration().apply(start) - offset;
+				if (increments != null)
+					increments[index] = computeIncrements(start, (useIncrementDuration ? incrementEnds[index] : ends[index]) + offset, offset, zone);
+			}
+		}
+		else {
+			Calendar b = Calendar.getInstance(zone);
+			b.setTimeInMillis(base);
+			for (Timing t : chain)
+				b = t.getClear().apply(b);
+			Timing last = chain.get(chain.size() - 1);
+			Calendar start = last.getOffset().apply(last.getRound().apply(b));
+			starts[index] = start.getTimeInMillis();
+			ends[index] = last.getDuration().apply(start).getTimeInMillis();
+			if (incrementChain != null) {
+				for (Timing t : incrementChain.subList(chain.size(), incrementChain.size()))
+					b = t.getClear().apply(b);
+				last = incrementChain.get(incrementChain.size() - 1);
+				start = last.getOffset().apply(last.getRound().apply(b));
+				incrementStarts[index] = start.getTimeInMillis();
+				incrementEnds[index] = last.getDuration().apply(start).getTimeInMillis();
+				if (increments != null)
+					increments[index] = computeIncrements(start, useIncrementDuration ? incrementEnds[index] : ends[index]);
+			}
+		}
+	}
+	
+	/*
+	 * Computes the increments from a start and end time in local epoch milliseconds, falling back to Calendars if EpochCalendar cannot represent one
+	 * of the increments
+	 */
+	private long[] computeIncrements(long start, long end, int offset, TimeZone zone) {
+		if (start > end)
+			return new long[0];
+		long[] out = new long[8];
+		int count = 0;
+		for (long increment = start;; ) {
+			if (count == out.length)
+				out = Arrays.copyOf(out, count * 2);
+			out[count++] = increment - offset;
+			if (increment >= end)
+				return Arrays.copyOf(out, count);
+			long next = increment;
+			for (int i = 0; i < timestep.length && next != EpochCalendar.UNSUPPORTED; i++)
+				next = EpochCalendar.add(next, i, timestep[i]);
+			if (next == EpochCalendar.UNSUPPORTED) {
+				Calendar calendar = Calendar.getInstance(zone);
+				calendar.setTimeInMillis(start - offset);
+				return computeIncrements(calendar, end - offset);
+			}
+			if (next <= increment)
+				throw new IllegalArgumentException("The timestep must move every increment forward.");
+			increment = next;
+		}
+	}
+	
+	/*
+	 * Computes the increments by repeatedly adding the timestep to a Calendar in the same way as GRIBModule.execute
+	 */
+	private long[] computeIncrements(Calendar start, long end) {
+		Calendar increment = (Calendar) start.clone();
+		if (increment.getTimeInMillis() > end)
+			return new long[0];
+		long[] out = new long[8];
+		int count = 0;
+		for (long time = increment.getTimeInMillis();; ) {
+			if (count == out.length)
+				out = Arrays.copyOf(out, count * 2);
+			out[count++] = time;
+			if (time >= end)
+				return Arrays.copyOf(out, count);
+			for (int i = 0; i < timestep.length; i++)
+				increment.add(TIMING_FIELD_IDS.get(i), timestep[i]);
+			if (increment.getTimeInMillis() <= time)
+				throw new IllegalArgumentException("The timestep must move every increment forward.");
+			time = increment.getTimeInMillis();
+		}
+	}
+	
+	/**
+	 * @return the number of base times in the {@link TimingSeries}
+	 */
+	public int size() {
+		return bases.length;
+	}
+	
+	/**
+	 * @return the base times
+	 */
+	public long[] getBases() {
+		return bases.clone();
+	}
+	
+	/**
+	 * @return the start time produced for each base time
+	 */
+	public long[] getStarts() {
+		return starts.clone();
+	}
+	
+	/**
+	 * @return the end time produced for each base time
+	 */
+	public long[] getEnds() {
+		return ends.clone();
+	}
+	
+	/**
+	 * @return the start time of the incremented {@link Timing} for each base time or {@code null} if no incremented {@link Timing} was given
+	 */
+	public long[] getIncrementStarts() {
+		return incrementStarts != null ? incrementStarts.clone() : null;
+	}
+	
+	/**
+	 * @return the end time of the incremented {@link Timing} for each base time or {@code null} if no incremented {@link Timing} was given
+	 */
+	public long[] getIncrementEnds() {
+		return incrementEnds != null ? incrementEnds.clone() : null;
+	}
+	
+	/**
+	 * @param index
+	 *            the index of the base time
+	 * @return the times of the GRIB files needed for the base time at the given index or {@code null} if no timestep was given
+	 */
+	public long[] getIncrements(int index) {
+		return increments != null ? increments[index].clone() : null;
+	}
+}
@@ -0,0 +1,149 @@
+package toberumono.wrf.timing;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Objects;
+import java.util.TimeZone;
+
+/**
+ * An immutable record of the base, start, and end times computed by a {@link Timing} along with the time zone in which they were computed.<br>
+ * Because none of its state can change, a single {@link TimingSnapshot} can be shared between any number of threads without copying. The
+ * {@link Calendar}-based accessors return a new {@link Calendar} on every call.
+ * 
+ * @author Toberumono
+ * @see Timing#getSnapshot()
+ */
+public final class TimingSnapshot {
+	private final Instant base, start, end;
+	private final ZoneId zone;
+	
+	/**
+	 * Constructs a new {@link TimingSnapshot}.
+	 * 
+	 * @param base
+	 *            the base time
+	 * @param start
+	 *            the start time
+	 * @param end
+	 *            the end time
+	 * @param zone
+	 *            the time zone in which the times were computed
+	 */
+	public TimingSnapshot(Instant base, Instant start, Instant end, ZoneId zone) {
+		this.base = Objects.requireNonNull(base, "The base time cannot be null");
+		this.start = Objects.requireNonNull(start, "The start time cannot be null");
+		this.end = Objects.requireNonNull(end, "The end time cannot be null");
+		this.zone = Objects.requireNonNull(zone, "The time zone cannot be null");
+	}
+	
+	/**
+	 * Creates a {@link TimingSnapshot} from the values of the given {@link Calendar Calendars}. The time zone is taken from {@code start}.
+	 * 
+	 * @param base
+	 *            the base {@link Calendar}
+	 * @param start
+	 *            the start {@link Calendar}
+	 * @param end
+	 *            the end {@link Calendar}
+	 * @return a {@link TimingSnapshot} with the times of the given {@link Calendar Calendars}
+	 */
+	public static TimingSnapshot of(Calendar base, Calendar start, Calendar end) {
+		return new TimingSnapshot(base.toInstant(), start.toInstant(), end.toInstant(), start.getTimeZone().toZoneId());
+	}
+	
+	/**
+	 * @return the time from which {@link #getStart() start} and {@link #getEnd() end} are derived
+	 */
+	public Instant getBase() {
+		return base;
+	}
+	
+	/**
+	 * @return the start time
+	 */
+	public Instant getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return the end time
+	 */
+	public Instant getEnd() {
+		return end;
+	}
+	
+	/**
+	 * @return the time zone in which the times were computed
+	 */
+	public ZoneId getZone() {
+		return zone;
+	}
+	
+	/**
+	 * @return the {@link #getBase() base} time in the {@link TimingSnapshot TimingSnapshot's} time zone
+	 */
+	public ZonedDateTime getZonedBase() {
+		return base.atZone(zone);
+	}
+	
+	/**
+	 * @return the {@link #getStart() start} time in the {@link TimingSnapshot TimingSnapshot's} time zone
+	 */
+	public ZonedDateTime getZonedStart() {
+		return start.atZone(zone);
+	}
+	
+	/**
+	 * @return the {@link #getEnd() end} time in the {@link TimingSnapshot TimingSnapshot's} time zone
+	 */
+	public ZonedDateTime getZonedEnd() {
+		return end.atZone(zone);
+	}
+	
+	/**
+	 * @return a new {@link Calendar} set to the {@link #getBase() base} time in the {@link TimingSnapshot TimingSnapshot's} time zone
+	 */
+	public Calendar getBaseCalendar() {
+		return toCalendar(base);
+	}
+	
+	/**
+	 * @return a new {@link Calendar} set to the {@link #getStart() start} time in the {@link TimingSnapshot TimingSnapshot's} time zone
+	 */
+	public Calendar getStartCalendar() {
+		return toCalendar(start);
+	}
+	
+	/**
+	 * @return a new {@link Calendar} set to the {@link #getEnd() end} time in the {@link TimingSnapshot TimingSnapshot's} time zone
+	 */
+	public Calendar getEndCalendar() {
+		return toCalendar(end);
+	}
+	
+	private Calendar toCalendar(Instant time) {
+		Calendar out = Calendar.getInstance(TimeZone.getTimeZone(zone));
+		out.setTimeInMillis(time.toEpochMilli());
+		return out;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof TimingSnapshot))
+			return false;
+		TimingSnapshot other = (TimingSnapshot) o;
+		return base.equals(other.base) && start.equals(other.start) && end.equals(other.end) && zone.equals(other.zone);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(base, start, end, zone);
+	}
+	
+	@Override
+	public String toString() {
+		return "[base: " + getZonedBase() + ", start: " + getZonedStart() + ", end: " + getZonedEnd() + "]";
+	}
+}
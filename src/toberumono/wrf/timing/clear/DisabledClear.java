@@ -29,6 +29,11 @@ public class DisabledClear extends AbstractClear {
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		return base;
+	}
+	
 	@Override
 	protected void compute() {/* Nothing to do here */}
 }
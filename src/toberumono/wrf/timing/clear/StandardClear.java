@@ -6,6 +6,7 @@ import java.util.logging.Logger;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -16,6 +17,7 @@ import static toberumono.wrf.SimulationConstants.*;
  */
 public class StandardClear extends AbstractClear {
 	private final int[] values;
+	private int[] cleared;
 	private int keep;
 	
 	/**
@@ -39,6 +41,12 @@ public class StandardClear extends AbstractClear {
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		long out = EpochCalendar.isSupported(base) ? EpochCalendar.setLowest(base, cleared, keep) : EpochCalendar.UNSUPPORTED;
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
 	@Override
 	protected void compute() {
 		for (int i = 0; i < TIMING_FIELD_NAMES.size(); i++)
@@ -48,5 +56,8 @@ public class StandardClear extends AbstractClear {
 		keep = TIMING_FIELD_NAMES.indexOf(name);
 		if (keep < 0)
 			throw new IllegalArgumentException(name + " is not a valid timing field name");
+		cleared = new int[values.length];
+		for (int i = 0; i < cleared.length; i++)
+			cleared[i] = values[i] == -1 ? EpochCalendar.getActualMinimum(i) : values[i];
 	}
 }
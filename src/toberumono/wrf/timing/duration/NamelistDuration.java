@@ -5,6 +5,7 @@ import java.util.Calendar;
 import toberumono.namelist.parser.Namelist;
 import toberumono.namelist.parser.NamelistSection;
 import toberumono.wrf.scope.Scope;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -37,6 +38,14 @@ public class NamelistDuration extends AbstractDuration {
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		long out = EpochCalendar.isSupported(base) ? base : EpochCalendar.UNSUPPORTED;
+		for (int i = 0; i < duration.length && out != EpochCalendar.UNSUPPORTED; i++)
+			out = EpochCalendar.add(out, i, duration[i]);
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
 	@Override
 	protected void compute() {
 		duration = new int[TIMING_FIELD_NAMES.size()];
@@ -6,6 +6,7 @@ import java.util.logging.Logger;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedFormulaProcessor;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -36,6 +37,14 @@ public class StandardDuration extends AbstractDuration {
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		long out = EpochCalendar.isSupported(base) ? base : EpochCalendar.UNSUPPORTED;
+		for (int i = 0; i < duration.length && out != EpochCalendar.UNSUPPORTED; i++)
+			out = EpochCalendar.add(out, i, duration[i]);
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
 	@Override
 	protected void compute() {
 		duration = new int[TIMING_FIELD_NAMES.size()];
@@ -31,6 +31,11 @@ public class DisabledOffset extends AbstractOffset {
 	protected Calendar doApply(Calendar base) {
 		return base;
 	}
+	
+	@Override
+	protected long doApply(long base) {
+		return base;
+	}
 
 	@Override
 	public boolean doesWrap() {
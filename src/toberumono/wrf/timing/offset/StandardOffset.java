@@ -6,6 +6,7 @@ import java.util.logging.Logger;
 
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -51,6 +52,15 @@ public class StandardOffset extends AbstractOffset {
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		boolean wrap = doesWrap();
+		long out = EpochCalendar.isSupported(base) ? base : EpochCalendar.UNSUPPORTED;
+		for (int i = 0; i < offsets.length && out != EpochCalendar.UNSUPPORTED; i++)
+			out = wrap ? EpochCalendar.add(out, i, offsets[i]) : EpochCalendar.set(out, i, EpochCalendar.get(out, i) + offsets[i]);
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
 	@Override
 	public boolean doesWrap() {
 		if (wrap == null)
@@ -1,28 +1,34 @@
 package toberumono.wrf.timing.round;
 
 import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.function.Function;
 import java.util.logging.Logger;
 
 import toberumono.utils.general.Numbers;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 
 /**
- * Implementation of {@link Round} that places values into buckets to round them.
+ * Implementation of {@link Round} that places values into buckets to round them.<br>
+ * The rounding parameters are compiled into a table indexed by timing field, which is applied from the largest field to the smallest.
  * 
  * @author Toberumono
  */
 public class BucketRound extends AbstractRound {
-	private Map<Integer, Function<Integer, Integer>> roundingActions;
+	private static final byte NONE = 0, STEP = 1, BUCKETS = 2;
+	private static final int[] CALENDAR_FIELDS = TIMING_FIELD_IDS.stream().mapToInt(Integer::intValue).toArray();
+	
+	private byte[] kinds;
+	private int[] steps, offsets;
+	private int[][] buckets;
+	private RoundingMode[] modes;
 	
 	/**
 	 * Initializes a new instance of {@link BucketRound} described by the given {@code parameters} with a {@link Logger} derived from
@@ -37,9 +43,15 @@ public class BucketRound extends AbstractRound {
 		super(parameters, parent);
 	}
 	
-	private final Map<Integer, Function<Integer, Integer>> parseRoundingParameters(Map<?, ?> parameters) {
+	private final void parseRoundingParameters(Map<?, ?> parameters) {
+		kinds = new byte[TIMING_FIELD_NAMES.size()];
+		steps = new int[kinds.length];
+		offsets = new int[kinds.length];
+		buckets = new int[kinds.length][];
+		modes = new RoundingMode[kinds.length];
+		if (parameters == null)
+			return;
 		Collection<String> keep = parseEnabled();
-		Map<Integer, Function<Integer, Integer>> roundingFunctions = new HashMap<>(); //We use a map because the key is the TIMING_FIELD_ID
 		Map<?, ?> arguments = parameters.containsKey("arguments") ? (Map<?, ?>) parameters.get("arguments") : parameters; //Having the arguments sub-object was pointless
 		String name;
 		Object value;
@@ -56,41 +68,58 @@ public class BucketRound extends AbstractRound {
 				
 				field = name + "-offset";
 				final int offset = evaluateToNumber(arguments.containsKey(field) ? arguments.get(field) : 0, field).intValue();
-				roundingFunctions.put(TIMING_FIELD_IDS.get(i), stepOffsetProcessor(rm, step, offset));
+				setStepOffset(i, rm, step, offset);
 			}
 			else if (value instanceof List) { //Explicit buckets
-				roundingFunctions.put(TIMING_FIELD_IDS.get(i), explicitBucketsProcessor(rm, name, (List<?>) value));
+				setExplicitBuckets(i, rm, name, (List<?>) value);
 			}
 			else if (value instanceof Map) {
 				Map<?, ?> temp = (Map<?, ?>) value;
 				final RoundingMode orm = roundingModeFromField(temp.get("rounding-mode"), rm);
 				if (temp.containsKey("buckets"))
-					roundingFunctions.put(TIMING_FIELD_IDS.get(i), explicitBucketsProcessor(orm, name + ".buckets", evaluateToType(temp.get("buckets"), name + ".buckets", List.class)));
+					setExplicitBuckets(i, orm, name + ".buckets", evaluateToType(temp.get("buckets"), name + ".buckets", List.class));
 				else
-					roundingFunctions.put(TIMING_FIELD_IDS.get(i), stepOffsetProcessor(orm, evaluateToNumber(temp.get("step"), name + ".step").intValue(),
-							evaluateToNumber(temp.containsKey("offset") ? arguments.get("offset") : 0, name + ".offset").intValue()));
+					setStepOffset(i, orm, evaluateToNumber(temp.get("step"), name + ".step").intValue(),
+							evaluateToNumber(temp.containsKey("offset") ? arguments.get("offset") : 0, name + ".offset").intValue());
 			}
 			else if (value instanceof Number) { //Step-offset without the -step tag
 				String field = name + "-offset";
-				roundingFunctions.put(TIMING_FIELD_IDS.get(i),
-						stepOffsetProcessor(rm, ((Number) value).intValue(), evaluateToNumber(arguments.containsKey(field) ? arguments.get(field) : 0, field).intValue()));
+				setStepOffset(i, rm, ((Number) value).intValue(), evaluateToNumber(arguments.containsKey(field) ? arguments.get(field) : 0, field).intValue());
 			}
 			else if (value != null) {
 				throw new IllegalArgumentException("The value of " + name + " in BucketRound must be either undefined, null, or an instance of List, Map, or Number.");
 			}
 		}
-		return roundingFunctions;
 	}
 	
-	private Function<Integer, Integer> stepOffsetProcessor(RoundingMode rm, int step, int offset) {
-		return inp -> Numbers.bucketRounding(inp, rm, step, offset);
+	private void setStepOffset(int field, RoundingMode rm, int step, int offset) {
+		kinds[field] = STEP;
+		modes[field] = rm;
+		steps[field] = step;
+		offsets[field] = offset;
 	}
 	
-	private Function<Integer, Integer> explicitBucketsProcessor(RoundingMode rm, String name, List<?> buckets) {
+	private void setExplicitBuckets(int field, RoundingMode rm, String name, List<?> buckets) {
 		final int[] bucketsArr = new int[buckets.size()];
 		for (int b = 0; b < bucketsArr.length; b++)
 			bucketsArr[b] = evaluateToNumber(buckets.get(b), name + "[" + b + "]").intValue();
-		return inp -> Numbers.bucketRounding(inp, rm, bucketsArr);
+		Arrays.sort(bucketsArr); //Sorting the buckets once here means that they do not need to be sorted when rounding
+		kinds[field] = BUCKETS;
+		modes[field] = rm;
+		this.buckets[field] = bucketsArr;
+	}
+	
+	/**
+	 * Rounds the value of the given field. The {@link BucketRound} must have been computed.
+	 * 
+	 * @param field
+	 *            the index of the field in {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES}
+	 * @param value
+	 *            the value of the field
+	 * @return the rounded value
+	 */
+	private int round(int field, int value) {
+		return kinds[field] == STEP ? Numbers.bucketRounding(value, modes[field], steps[field], offsets[field]) : Numbers.bucketRounding(value, modes[field], buckets[field]);
 	}
 	
 	private RoundingMode roundingModeFromField(Object value, RoundingMode defaultRM) {
@@ -107,16 +136,38 @@ public class BucketRound extends AbstractRound {
 	
 	@Override
 	protected Calendar doApply(Calendar base) {
-		for (Entry<Integer, Function<Integer, Integer>> e : roundingActions.entrySet())
-			base.set(e.getKey(), e.getValue().apply(base.get(e.getKey())));
+		for (int i = kinds.length - 1; i >= 0; i--)
+			if (kinds[i] != NONE)
+				base.set(CALENDAR_FIELDS[i], round(i, base.get(CALENDAR_FIELDS[i])));
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		long out = roundSupported(base);
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
+	/**
+	 * Applies the rounding table to a time via {@link EpochCalendar}. The {@link BucketRound} must have been computed.
+	 * 
+	 * @param base
+	 *            the time to round in local epoch milliseconds
+	 * @return the rounded time or {@link EpochCalendar#UNSUPPORTED} if {@link EpochCalendar} cannot round {@code base}
+	 */
+	private long roundSupported(long base) {
+		long out = EpochCalendar.isSupported(base) ? base : EpochCalendar.UNSUPPORTED;
+		for (int i = kinds.length - 1; i >= 0 && out != EpochCalendar.UNSUPPORTED; i--)
+			if (kinds[i] != NONE)
+				out = EpochCalendar.set(out, i, round(i, EpochCalendar.get(out, i)));
+		return out;
+	}
+	
 	@Override
 	protected void compute() {
 		if (getParameters() == null)
-			roundingActions = getParent() instanceof BucketRound ? parseRoundingParameters(((BucketRound) getParent()).getParameters()) : new HashMap<>();
+			parseRoundingParameters(getParent() instanceof BucketRound ? ((BucketRound) getParent()).getParameters() : null);
 		else
-			roundingActions = parseRoundingParameters(getParameters());
+			parseRoundingParameters(getParameters());
 	}
 }
@@ -28,6 +28,11 @@ public class DisabledRound extends AbstractRound {
 	protected Calendar doApply(Calendar base) {
 		return base;
 	}
+	
+	@Override
+	protected long doApply(long base) {
+		return base;
+	}
 
 	@Override
 	protected void compute() {/* Nothing to do here */}
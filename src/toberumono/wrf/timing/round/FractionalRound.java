@@ -8,6 +8,7 @@ import toberumono.utils.general.Numbers;
 import toberumono.wrf.scope.Scope;
 import toberumono.wrf.scope.ScopedFormulaProcessor;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 
@@ -53,6 +54,24 @@ public class FractionalRound extends AbstractRound {
 		return base;
 	}
 	
+	@Override
+	protected long doApply(long base) {
+		int rp = roundingPoint;
+		long out = EpochCalendar.isSupported(base) ? base : EpochCalendar.UNSUPPORTED;
+		if (out != EpochCalendar.UNSUPPORTED && !diff.equals("none"))
+			out = EpochCalendar.add(out, rp, diff.equals("next") ? 1 : -1);
+		if (out == EpochCalendar.UNSUPPORTED || (fraction < 1.0 && rp == 0)) //The second case is an error, which the Calendar form reports
+			return super.doApply(base);
+		if (fraction < 1.0) {
+			--rp;
+			int offset = 1 - EpochCalendar.getActualMinimum(rp);
+			out = EpochCalendar.truncate(out, rp, (int) Numbers.semifloor(EpochCalendar.getActualMaximum(out, rp) + offset, fraction, EpochCalendar.get(out, rp)));
+		}
+		else
+			out = EpochCalendar.truncate(out, rp, EpochCalendar.get(out, rp));
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
 	@Override
 	protected void compute() {
 		String diff = getParameters().get("diff") instanceof String ? ((String) getParameters().get("diff")).toLowerCase() : "none";
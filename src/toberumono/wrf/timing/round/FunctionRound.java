@@ -1,24 +1,35 @@
 package toberumono.wrf.timing.round;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.logging.Logger;
 
-import toberumono.structures.sexpressions.ConsCell;
+import toberumono.wrf.scope.IndexedScope;
+import toberumono.wrf.scope.InvalidVariableAccessException;
 import toberumono.wrf.scope.Scope;
+import toberumono.wrf.scope.ScopedFormula;
 import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.EpochCalendar;
 
 import static toberumono.wrf.SimulationConstants.*;
 import static toberumono.wrf.scope.ScopedFormulaProcessor.*;
 
 /**
  * An implementation of {@link Round} that allows the user to define functions that convert the unrounded timing values to their final "rounded"
- * values.
+ * values.<br>
+ * Fields whose function is just the name of the field are left unchanged. The remaining functions are bound to the indices of the timing fields
+ * when the {@link FunctionRound} is computed, and are evaluated in an {@link IndexedScope} that is backed by an array of the field values and is
+ * reused by each thread.
  * 
  * @author Toberumono
  */
 public class FunctionRound extends AbstractRound {
-	private ConsCell[] functions;
+	private static final int[] CALENDAR_FIELDS = TIMING_FIELD_IDS.stream().mapToInt(Integer::intValue).toArray();
+	
+	private int[] fields;
+	private ScopedFormula[] functions;
+	private ThreadLocal<FieldScope> scopes;
 	
 	/**
 	 * Initializes a new instance of {@link FunctionRound} described by the given {@code parameters} with a {@link Logger} derived from
@@ -31,25 +42,126 @@ public class FunctionRound extends AbstractRound {
 	 */
 	public FunctionRound(ScopedMap parameters, Scope parent) {
 		super(parameters, parent);
+		fields = null;
 		functions = null;
+		scopes = null;
 	}
 	
 	@Override
 	protected Calendar doApply(Calendar base) {
-		ScopedMap manufacturedScope = new ScopedMap(this);
-		for (int i = 0; i < functions.length; i++)
-			manufacturedScope.put(TIMING_FIELD_NAMES.get(i), base.get(TIMING_FIELD_IDS.get(i)));
-		for (int i = 0; i < functions.length; i++)
-			base.set(TIMING_FIELD_IDS.get(i), evaluateToNumber(process(functions[i], manufacturedScope, TIMING_FIELD_NAMES.get(i)).getCar(), TIMING_FIELD_NAMES.get(i)).intValue());
-		return base;
+		if (fields.length == 0) { //Setting any field makes the Calendar re-resolve its local time, which can move times in a DST overlap
+			base.set(CALENDAR_FIELDS[0], base.get(CALENDAR_FIELDS[0]));
+			return base;
+		}
+		FieldScope scope = acquireScope();
+		try {
+			for (int i = 0; i < CALENDAR_FIELDS.length; i++)
+				scope.values[i] = base.get(CALENDAR_FIELDS[i]);
+			for (int i = 0; i < fields.length; i++)
+				base.set(CALENDAR_FIELDS[fields[i]], evaluate(i, scope));
+			return base;
+		}
+		finally {
+			scope.inUse = false;
+		}
+	}
+	
+	@Override
+	protected long doApply(long base) {
+		if (fields.length == 0)
+			return base;
+		if (!EpochCalendar.isSupported(base))
+			return super.doApply(base);
+		long out;
+		FieldScope scope = acquireScope();
+		try {
+			for (int i = 0; i < scope.values.length; i++)
+				scope.values[i] = scope.rounded[i] = EpochCalendar.get(base, i);
+			for (int i = 0; i < fields.length; i++)
+				scope.rounded[fields[i]] = evaluate(i, scope);
+			out = EpochCalendar.setLowest(base, scope.rounded, scope.rounded.length);
+		}
+		finally {
+			scope.inUse = false;
+		}
+		return out != EpochCalendar.UNSUPPORTED ? out : super.doApply(base);
+	}
+	
+	/*
+	 * A function can refer to values that are computed by applying this FunctionRound again (e.g. via a parent Timing), so a thread's FieldScope
+	 * is only reused when it is not already in use further up the stack.
+	 */
+	private FieldScope acquireScope() {
+		FieldScope scope = scopes.get();
+		if (scope.inUse)
+			scope = new FieldScope(this);
+		scope.inUse = true;
+		return scope;
+	}
+	
+	private int evaluate(int function, FieldScope scope) {
+		String name = TIMING_FIELD_NAMES.get(fields[function]);
+		return evaluateToNumber(functions[function].evaluate(scope, name), name).intValue();
 	}
 	
 	@Override
 	protected void compute() {
 		Collection<String> enabled = parseEnabled();
-		functions = new ConsCell[TIMING_FIELD_NAMES.size()];
-		for (int i = 0; i < functions.length; i++)
-			functions[i] = preProcess(enabled.contains(TIMING_FIELD_NAMES.get(i)) && getParameters().containsKey(TIMING_FIELD_NAMES.get(i)) ? getParameters().get(TIMING_FIELD_NAMES.get(i)).toString()
-					: TIMING_FIELD_NAMES.get(i));
+		int[] fields = new int[TIMING_FIELD_NAMES.size()];
+		ScopedFormula[] functions = new ScopedFormula[fields.length];
+		int count = 0;
+		for (int i = 0; i < fields.length; i++) {
+			String name = TIMING_FIELD_NAMES.get(i);
+			if (!enabled.contains(name) || !getParameters().containsKey(name))
+				continue;
+			String function = getParameters().get(name).toString();
+			if (function.trim().equals(name)) //The function returns the field's current value
+				continue;
+			fields[count] = i;
+			functions[count++] = preProcess(function).bind(TIMING_FIELD_NAMES);
+		}
+		this.fields = Arrays.copyOf(fields, count);
+		this.functions = Arrays.copyOf(functions, count);
+		scopes = ThreadLocal.withInitial(() -> new FieldScope(this));
+	}
+	
+	/**
+	 * The {@link Scope} in which the functions are evaluated. It exposes the values of the timing fields by their indices and names in
+	 * {@link toberumono.wrf.SimulationConstants#TIMING_FIELD_NAMES}.
+	 */
+	private static final class FieldScope implements IndexedScope {
+		private final Scope parent;
+		private final int[] values, rounded;
+		private boolean inUse;
+		
+		FieldScope(Scope parent) {
+			this.parent = parent;
+			values = new int[TIMING_FIELD_NAMES.size()];
+			rounded = new int[values.length];
+			inUse = false;
+		}
+		
+		@Override
+		public Scope getParent() {
+			return parent;
+		}
+		
+		@Override
+		public int getValueByIndex(int index) {
+			return values[index];
+		}
+		
+		@Override
+		public Object getValueByName(String name) throws InvalidVariableAccessException {
+			int index = TIMING_FIELD_NAMES.indexOf(name);
+			if (index < 0)
+				throw new InvalidVariableAccessException("Could not access " + name);
+			return values[index];
+		}
+		
+		@Override
+		public boolean hasValueByName(String name) {
+			return TIMING_FIELD_NAMES.contains(name);
+		}
 	}
 }
@@ -0,0 +1,116 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link DownloadJournal} merges completed ranges, reports the missing ranges, survives being reloaded from disk, and only matches a
+ * remote file with the same URL, length, and validators.
+ * 
+ * @author Toberumono
+ */
+public class DownloadJournalTest {
+	private static final String URL = "http://127.0.0.1/file.grib2";
+	private Path directory;
+	
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("DownloadJournalTest");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.deleteIfExists(path);
+		}
+	}
+	
+	@Test
+	public void testRangesAreMerged() throws IOException {
+		DownloadJournal journal = new DownloadJournal(directory.resolve("file.journal"), URL, 100, "\"v1\"", null);
+		assertEquals("0-100", describe(journal.missing()));
+		journal.complete(0, 10);
+		journal.complete(20, 30);
+		assertEquals("10-20, 30-100", describe(journal.missing()));
+		journal.complete(10, 20); //Adjacent on both sides
+		assertEquals("30-100", describe(journal.missing()));
+		journal.complete(50, 60);
+		journal.complete(55, 70); //Overlapping
+		journal.complete(80, 85);
+		assertEquals("30-50, 70-80, 85-100", describe(journal.missing()));
+		journal.complete(40, 90); //Covers several ranges
+		assertEquals("30-40, 90-100", describe(journal.missing()));
+		journal.complete(95, 95); //Empty
+		assertEquals("30-40, 90-100", describe(journal.missing()));
+		journal.complete(90, 100);
+		journal.complete(30, 40);
+		assertEquals("", describe(journal.missing()));
+	}
+	
+	@Test
+	public void testReload() throws IOException {
+		Path path = directory.resolve("file.journal");
+		DownloadJournal journal = new DownloadJournal(path, URL, 100, "\"v1\"", "Mon, 01 Jan 2018 00:00:00 GMT");
+		assertNull("nothing should be written before progress is recorded", DownloadJournal.load(path));
+		journal.complete(10, 20);
+		journal.complete(60, 75);
+		DownloadJournal loaded = DownloadJournal.load(path);
+		assertEquals(describe(journal.missing()), describe(loaded.missing()));
+		assertTrue(loaded.matches(URL, 100, "\"v1\"", "Mon, 01 Jan 2018 00:00:00 GMT"));
+		journal.delete();
+		assertNull(DownloadJournal.load(path));
+	}
+	
+	@Test
+	public void testUnreadableJournalIsIgnored() throws IOException {
+		Path path = directory.resolve("file.journal");
+		Files.write(path, "url=http://127.0.0.1/file.grib2\nlength=100\ncompleted=20-10\n".getBytes());
+		assertNull("a journal with an invalid range should be treated as missing", DownloadJournal.load(path));
+		Files.write(path, "completed=0-10\n".getBytes());
+		assertNull("a journal without a length should be treated as missing", DownloadJournal.load(path));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testRangePastTheEnd() throws IOException {
+		new DownloadJournal(directory.resolve("file.journal"), URL, 100, "\"v1\"", null).complete(90, 101);
+	}
+	
+	@Test
+	public void testMatches() {
+		String lastModified = "Mon, 01 Jan 2018 00:00:00 GMT";
+		DownloadJournal etag = new DownloadJournal(directory.resolve("etag.journal"), URL, 100, "\"v1\"", lastModified);
+		assertTrue(etag.matches(URL, 100, "\"v1\"", lastModified));
+		assertTrue("the ETag takes precedence over Last-Modified", etag.matches(URL, 100, "\"v1\"", null));
+		assertFalse(etag.matches(URL, 100, "\"v2\"", lastModified));
+		assertFalse("a file that no longer has an ETag cannot be matched by Last-Modified", etag.matches(URL, 100, null, lastModified));
+		assertFalse(etag.matches(URL, 101, "\"v1\"", lastModified));
+		assertFalse(etag.matches(URL + "?other", 100, "\"v1\"", lastModified));
+		
+		DownloadJournal modified = new DownloadJournal(directory.resolve("modified.journal"), URL, 100, null, lastModified);
+		assertTrue(modified.matches(URL, 100, null, lastModified));
+		assertFalse(modified.matches(URL, 100, null, "Tue, 02 Jan 2018 00:00:00 GMT"));
+		assertFalse("a file that gained an ETag cannot be matched by Last-Modified", modified.matches(URL, 100, "\"v1\"", lastModified));
+		
+		DownloadJournal none = new DownloadJournal(directory.resolve("none.journal"), URL, 100, null, null);
+		assertFalse("a journal without validators is never resumed", none.matches(URL, 100, null, null));
+	}
+	
+	private static String describe(List<long[]> ranges) {
+		return ranges.stream().map(range -> range[0] + "-" + range[1]).collect(Collectors.joining(", "));
+	}
+}
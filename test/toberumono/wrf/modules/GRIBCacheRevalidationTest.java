@@ -0,0 +1,136 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how a {@link GRIBDownloader} with a {@link GRIBCache} revalidates cached files against a {@link StubHTTPServer}: a {@code 304 Not Modified}
+ * response must be served from the cache, a changed file must be downloaded again, and a cached copy that is evicted after it has been revalidated
+ * must be downloaded again.
+ * 
+ * @author Toberumono
+ */
+public class GRIBCacheRevalidationTest {
+	private static final int FILE_SIZE = 2 << 20, MAX_SEGMENTS = 4, MIN_SEGMENT_SIZE = 1 << 18;
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	private static final Logger log = Logger.getLogger(GRIBCacheRevalidationTest.class.getName());
+	private byte[] content;
+	private Path directory;
+	private GRIBCache cache;
+	
+	@Before
+	public void setUp() throws IOException {
+		content = new byte[FILE_SIZE];
+		new Random(42).nextBytes(content);
+		directory = Files.createTempDirectory("GRIBCacheRevalidationTest");
+		cache = new GRIBCache(directory.resolve("cache"), 1L << 30, 3600000, log);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.deleteIfExists(path);
+		}
+	}
+	
+	@Test
+	public void testNotModifiedIsACacheHit() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, "\"v1\"", LAST_MODIFIED);
+			download(server, "first.grib2");
+			server.clearRequests();
+			Path dest = download(server, "second.grib2");
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertEquals("only the conditional GET request should be sent", 1, server.getRequestCount());
+			assertEquals("the conditional GET request should be answered with 304", 1, server.countStatus(304));
+		}
+	}
+	
+	@Test
+	public void testNotModifiedWithoutAnETagIsACacheHit() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, null, LAST_MODIFIED);
+			download(server, "first.grib2");
+			server.clearRequests();
+			Path dest = download(server, "second.grib2");
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertEquals("only the conditional GET request should be sent", 1, server.getRequestCount());
+			assertEquals("the conditional GET request should be answered with 304", 1, server.countStatus(304));
+		}
+	}
+	
+	@Test
+	public void testModifiedFileIsDownloadedAgain() throws Exception {
+		byte[] changed = content.clone();
+		changed[0] ^= 1;
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, "\"v1\"", LAST_MODIFIED);
+			download(server, "first.grib2");
+			server.setContent(changed, "\"v2\"", LAST_MODIFIED);
+			server.clearRequests();
+			Path dest = download(server, "second.grib2");
+			assertArrayEquals(changed, Files.readAllBytes(dest));
+			assertEquals("no response should be 304", 0, server.countStatus(304));
+			assertEquals("the conditional GET request should be answered with 200", 1, server.countStatus(200));
+			assertEquals("the conditional GET request should replace the HEAD request", 0, server.count("HEAD", false));
+			assertTrue("the new version should be downloaded in ranges", server.count("GET", true) >= 1);
+			assertEquals("the cache should record the new version", "\"v2\"", cache.getValidators(server.getURL("file.grib2").toString()).getETag());
+		}
+	}
+	
+	@Test
+	public void testEntryEvictedAfterRevalidationIsDownloadedAgain() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, "\"v1\"", LAST_MODIFIED);
+			download(server, "first.grib2");
+			server.clearRequests();
+			server.runBeforeNextNotModified(() -> {
+				try {
+					for (Path entry : listFiles(directory.resolve("cache").resolve("entries")))
+						Files.delete(entry);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			Path dest = download(server, "second.grib2");
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertEquals("the cached copy should be revalidated", 1, server.countStatus(304));
+			assertEquals("the file should be probed after the cached copy was found to be missing", 1, server.count("HEAD", false));
+			assertTrue("the file should be downloaded again", server.count("GET", true) >= 1);
+			assertNotNull("the file should be cached again", cache.getValidators(server.getURL("file.grib2").toString()));
+		}
+	}
+	
+	private Path download(StubHTTPServer server, String name) throws Exception {
+		Path dest = directory.resolve(name);
+		URL url = server.getURL("file.grib2");
+		new GRIBDownloader(MAX_SEGMENTS * 2, MAX_SEGMENTS, MIN_SEGMENT_SIZE, 0, cache.getPartialDirectory(), cache, log).download(url, dest);
+		return dest;
+	}
+	
+	private static List<Path> listFiles(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+	}
+}
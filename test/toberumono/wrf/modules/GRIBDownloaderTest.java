@@ -0,0 +1,336 @@
+package toberumono.wrf.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Downloads files from {@link StubHTTPServer StubHTTPServers} that honor range requests, that do not advertise range support, that advertise
+ * range support but answer range requests with the whole file, and that drop a connection in the middle of a response, and checks the downloaded
+ * files, the requests that were sent, and the files that were left behind. Subsets of synthetic GRIB1 and GRIB2 files are downloaded via their
+ * {@code .idx} inventories and compared with the selected messages byte for byte.
+ * 
+ * @author Toberumono
+ */
+public class GRIBDownloaderTest {
+	private static final int FILE_SIZE = 3 << 20, MAX_SEGMENTS = 4, MIN_SEGMENT_SIZE = 1 << 18;
+	private static final int[] MESSAGE_SIZES = {5000, 40000, 300000, 20000, 1000}; //The third message is larger than the largest coalesced gap
+	private static final boolean[] GRIB1 = {false, true, false, false, true};
+	private static final String[][] RECORDS = {{":PRMSL:mean sea level:"}, {":UGRD:10 m above ground:", ":VGRD:10 m above ground:"},
+			{":HGT:500 mb:"}, {":TMP:2 m above ground:"}, {":RH:2 m above ground:"}};
+	private static final Logger log = Logger.getLogger(GRIBDownloaderTest.class.getName());
+	private byte[] content;
+	private Path directory;
+	
+	@Before
+	public void setUp() throws IOException {
+		content = new byte[FILE_SIZE];
+		new Random(42).nextBytes(content);
+		directory = Files.createTempDirectory("GRIBDownloaderTest");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.deleteIfExists(path);
+		}
+	}
+	
+	@Test
+	public void testServerThatHonorsRanges() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			Path dest = download(server, null);
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertEquals("HEAD requests", 1, server.count("HEAD", false));
+			assertEquals("whole-file GET requests", 0, server.count("GET", false));
+			assertTrue("the file should be split across several range requests", server.count("GET", true) >= MAX_SEGMENTS);
+			assertEquals("every range request should be answered with 206", server.count("GET", true), server.countStatus(206));
+			assertEquals("only the destination should remain", 1, listFiles(directory).size());
+		}
+	}
+	
+	@Test
+	public void testServerWithoutRanges() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, false, false)) {
+			Path dest = download(server, null);
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertEquals("range requests", 0, server.count("GET", true));
+			assertEquals("whole-file GET requests", 1, server.count("GET", false));
+			assertEquals("only the destination should remain", 1, listFiles(directory).size());
+		}
+	}
+	
+	@Test
+	public void testServerThatAdvertisesRangesButReturnsTheWholeFile() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, true, false)) {
+			Path dest = download(server, null);
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertTrue("a range request should have been attempted", server.count("GET", true) >= 1);
+			assertEquals("no range request should be answered with 206", 0, server.countStatus(206));
+			assertEquals("the download should fall back to a single whole-file GET request", 1, server.count("GET", false));
+			assertEquals("only the destination should remain", 1, listFiles(directory).size());
+		}
+	}
+	
+	@Test
+	public void testSharedPartialDirectory() throws Exception {
+		Path partials = Files.createDirectory(directory.resolve("partials"));
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, "\"v1\"", null);
+			Path dest = download(server, partials);
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			assertEquals("neither the partial download nor its lock file should remain", 0, listFiles(partials).size());
+		}
+	}
+	
+	@Test
+	public void testFileThatChangesDuringDownloadIsCachedUnderItsNewValidators() throws Exception {
+		byte[] changed = content.clone();
+		changed[0] ^= 1;
+		GRIBCache cache = new GRIBCache(directory.resolve("cache"), 1L << 30, 3600000, log);
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, "\"v1\"", null);
+			server.setContentAfterNextHead(changed, "\"v2\"", null);
+			Path dest = directory.resolve("file.grib2");
+			new GRIBDownloader(MAX_SEGMENTS * 2, MAX_SEGMENTS, MIN_SEGMENT_SIZE, 0, cache.getPartialDirectory(), cache, log).download(server.getURL("file.grib2"), dest);
+			assertArrayEquals(changed, Files.readAllBytes(dest));
+			assertEquals("the If-Range mismatch should cause a whole-file GET request", 1, server.count("GET", false));
+			String key = server.getURL("file.grib2").toString();
+			assertEquals("\"v2\"", cache.getValidators(key).getETag());
+			assertFalse("the new content must not be cached under the old validators", cache.retrieve(key, "\"v1\"", null, directory.resolve("stale.grib2")));
+			assertEquals("the partial download directory should be empty", 0, listFiles(cache.getPartialDirectory()).size());
+		}
+	}
+	
+	@Test
+	public void testRetryRequestsOnlyTheMissingRanges() throws Exception {
+		Path partials = Files.createDirectory(directory.resolve("partials"));
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setContent(content, "\"v1\"", null);
+			server.cutOffNextResponse(100000);
+			Path dest = directory.resolve("file.grib2");
+			new GRIBDownloader(MAX_SEGMENTS * 2, MAX_SEGMENTS, MIN_SEGMENT_SIZE, 1, partials, null, log).download(server.getURL("file.grib2"), dest);
+			assertArrayEquals(content, Files.readAllBytes(dest));
+			List<StubHTTPServer.Request> requests = server.getRequests();
+			int retry = 1; //Every request from the first attempt is recorded before it fails, so the retry starts with the second HEAD request
+			while (retry < requests.size() && !requests.get(retry).method.equals("HEAD"))
+				retry++;
+			assertTrue("the download should have been retried: " + requests, retry < requests.size());
+			List<long[]> received = new ArrayList<>();
+			int truncated = 0;
+			for (StubHTTPServer.Request request : requests.subList(0, retry)) {
+				if (request.status != 206)
+					continue;
+				long[] bounds = request.getBounds();
+				if (request.truncated >= 0) {
+					bounds[1] = bounds[0] + request.truncated;
+					truncated++;
+				}
+				received.add(bounds);
+			}
+			assertEquals("exactly one response of the first attempt should have been cut off: " + requests, 1, truncated);
+			List<long[]> requested = new ArrayList<>();
+			for (StubHTTPServer.Request request : requests.subList(retry + 1, requests.size())) {
+				assertEquals("the retry should only send range requests: " + requests, 206, request.status);
+				requested.add(request.getBounds());
+			}
+			assertEquals("the retry should request exactly the bytes that were not received", describe(complement(received, FILE_SIZE)),
+					describe(complement(complement(requested, FILE_SIZE), FILE_SIZE))); //The complement of the complement merges adjacent ranges
+			assertEquals("the retry should not request any byte twice", FILE_SIZE - total(received), total(requested));
+			assertEquals("neither the partial download nor its journal should remain", 0, listFiles(partials).size());
+		}
+	}
+	
+	@Test
+	public void testSubset() throws Exception {
+		byte[][] messages = buildMessages();
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setFile("file.grib2", concatenate(messages, 0, 1, 2, 3, 4), "\"f1\"", null);
+			server.setFile("file.grib2.idx", buildInventory(MESSAGE_SIZES), "\"i1\"", null);
+			Path dest = downloadSubset(server, 0, null, ":VGRD:", ":PRMSL:", ":RH:", ":TMP:");
+			assertArrayEquals(concatenate(messages, 0, 1, 3, 4), Files.readAllBytes(dest));
+			assertEquals("inventory requests", 1, server.count("file.grib2.idx"));
+			assertEquals("the unwanted message should split the selected messages into two range requests: " + server.getRequests(), 2,
+					server.count("GET", true));
+			assertEquals("every range request should be answered with 206", 2, server.countStatus(206));
+		}
+	}
+	
+	@Test
+	public void testSubsetWithStaleInventory() throws Exception {
+		byte[][] messages = buildMessages();
+		int[] stale = MESSAGE_SIZES.clone();
+		stale[0]++; //Every later offset in the inventory is off by one byte
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setFile("file.grib2", concatenate(messages, 0, 1, 2, 3, 4), "\"f1\"", null);
+			server.setFile("file.grib2.idx", buildInventory(stale), "\"i1\"", null);
+			//These check a GRIB2 message with the wrong length, a GRIB1 message at the wrong offset, and a GRIB2 message at the wrong offset
+			for (String field : new String[]{":PRMSL:", ":VGRD:", ":TMP:"}) {
+				try {
+					downloadSubset(server, 0, null, field);
+					fail("The subset for " + field + " was downloaded with a stale inventory.");
+				}
+				catch (IOException e) {
+					assertTrue(e.getMessage(), e.getMessage().contains("does not match the GRIB message"));
+				}
+			}
+			assertFalse("nothing should be placed at the destination", Files.exists(directory.resolve("file.grib2")));
+		}
+	}
+	
+	@Test
+	public void testSubsetWithoutMatchesIsNotRetried() throws Exception {
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setFile("file.grib2.idx", buildInventory(MESSAGE_SIZES), "\"i1\"", null);
+			try {
+				downloadSubset(server, 2, null, ":APCP:");
+				fail("A subset without any matching records was downloaded.");
+			}
+			catch (IllegalArgumentException e) {/* This is the expected result */}
+			assertEquals("the inventory should only be requested once", 1, server.getRequestCount());
+		}
+	}
+	
+	@Test
+	public void testSubsetInventoryIsRevalidatedWithASingleRequest() throws Exception {
+		byte[][] messages = buildMessages();
+		GRIBCache cache = new GRIBCache(directory.resolve("cache"), 1L << 30, 3600000, log);
+		try (StubHTTPServer server = new StubHTTPServer(content, true, true)) {
+			server.setFile("file.grib2", concatenate(messages, 0, 1, 2, 3, 4), "\"f1\"", null);
+			server.setFile("file.grib2.idx", buildInventory(MESSAGE_SIZES), "\"i1\"", null);
+			downloadSubset(server, 0, cache, ":TMP:");
+			server.clearRequests();
+			Path dest = downloadSubset(server, 0, cache, ":TMP:");
+			assertArrayEquals(messages[3], Files.readAllBytes(dest));
+			assertEquals("an unchanged inventory should only be revalidated: " + server.getRequests(), 1, server.countStatus(304));
+			assertEquals("an unchanged inventory should not cause any other requests: " + server.getRequests(), 1, server.getRequestCount());
+			
+			server.setFile("file.grib2", concatenate(messages, 3, 1, 2, 0, 4), "\"f2\"", null);
+			int[] sizes = {MESSAGE_SIZES[3], MESSAGE_SIZES[1], MESSAGE_SIZES[2], MESSAGE_SIZES[0], MESSAGE_SIZES[4]};
+			server.setFile("file.grib2.idx", buildInventory(sizes, 3, 1, 2, 0, 4), "\"i2\"", null);
+			server.clearRequests();
+			dest = downloadSubset(server, 0, cache, ":TMP:", ":PRMSL:");
+			assertArrayEquals(concatenate(messages, 3, 0), Files.readAllBytes(dest));
+			assertEquals("the changed inventory and its validators should come from a single response: " + server.getRequests(), 1,
+					server.count("file.grib2.idx"));
+			assertEquals("\"i2\"", cache.getValidators(server.getURL("file.grib2.idx") + "#:TMP:\n:PRMSL:\n").getETag());
+		}
+	}
+	
+	private Path downloadSubset(StubHTTPServer server, int retries, GRIBCache cache, String... fields) throws Exception {
+		Path dest = directory.resolve("file.grib2");
+		new GRIBDownloader(MAX_SEGMENTS * 2, MAX_SEGMENTS, MIN_SEGMENT_SIZE, retries, cache != null ? cache.getPartialDirectory() : null, cache, log)
+				.downloadSubset(server.getURL("file.grib2"), Arrays.stream(fields).map(Pattern::compile).collect(Collectors.toList()), dest);
+		return dest;
+	}
+	
+	/**
+	 * Builds GRIB messages with {@link #MESSAGE_SIZES} bytes each and random contents after the indicator section.
+	 */
+	private static byte[][] buildMessages() {
+		Random random = new Random(42);
+		byte[][] messages = new byte[MESSAGE_SIZES.length][];
+		for (int i = 0; i < messages.length; i++) {
+			byte[] message = messages[i] = new byte[MESSAGE_SIZES[i]];
+			random.nextBytes(message);
+			message[0] = 'G';
+			message[1] = 'R';
+			message[2] = 'I';
+			message[3] = 'B';
+			if (GRIB1[i]) { //GRIB1 stores the length in 3 bytes followed by the edition
+				for (int b = 0; b < 3; b++)
+					message[4 + b] = (byte) (message.length >>> (8 * (2 - b)));
+				message[7] = 1;
+			}
+			else { //GRIB2 stores the edition followed by the length in 8 bytes
+				message[7] = 2;
+				for (int b = 0; b < 8; b++)
+					message[8 + b] = (byte) ((long) message.length >>> (8 * (7 - b)));
+			}
+		}
+		return messages;
+	}
+	
+	/**
+	 * Builds the inventory of a file that contains the messages in the given order, assuming that they have the given sizes.
+	 */
+	private static byte[] buildInventory(int[] sizes, int... order) {
+		if (order.length == 0)
+			order = new int[]{0, 1, 2, 3, 4};
+		StringBuilder inventory = new StringBuilder();
+		long offset = 0;
+		for (int i = 0; i < order.length; i++) {
+			String[] records = RECORDS[order[i]];
+			for (int r = 0; r < records.length; r++)
+				inventory.append(i + 1).append(r > 0 ? "." + r : "").append(':').append(offset).append(":d=2018010100").append(records[r]).append("anl:\n");
+			offset += sizes[i];
+		}
+		return inventory.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	private static byte[] concatenate(byte[][] messages, int... order) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i : order)
+			out.write(messages[i], 0, messages[i].length);
+		return out.toByteArray();
+	}
+	
+	private Path download(StubHTTPServer server, Path partialDirectory) throws Exception {
+		Path dest = directory.resolve("file.grib2");
+		new GRIBDownloader(MAX_SEGMENTS * 2, MAX_SEGMENTS, MIN_SEGMENT_SIZE, 0, partialDirectory, null, log).download(server.getURL("file.grib2"), dest);
+		return dest;
+	}
+	
+	/**
+	 * Computes the parts of [0, length) that are not covered by the given {start, end (exclusive)} ranges.
+	 */
+	private static List<long[]> complement(List<long[]> ranges, long length) {
+		List<long[]> sorted = new ArrayList<>(ranges), out = new ArrayList<>();
+		sorted.sort(Comparator.comparingLong(range -> range[0]));
+		long position = 0;
+		for (long[] range : sorted) {
+			if (range[0] > position)
+				out.add(new long[]{position, range[0]});
+			position = Math.max(position, range[1]);
+		}
+		if (position < length)
+			out.add(new long[]{position, length});
+		return out;
+	}
+	
+	private static long total(List<long[]> ranges) {
+		return ranges.stream().mapToLong(range -> range[1] - range[0]).sum();
+	}
+	
+	private static String describe(List<long[]> ranges) {
+		return ranges.stream().map(range -> range[0] + "-" + range[1]).collect(Collectors.joining(", "));
+	}
+	
+	private static List<Path> listFiles(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package toberumono.wrf.modules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how {@link GRIBInventory} parses {@code .idx} inventories and groups the selected GRIB messages into range requests, including sub-messages
+ * that share an offset, coalescing across small gaps, and the open-ended range of the last message in the file.
+ * 
+ * @author Toberumono
+ */
+public class GRIBInventoryTest {
+	private static final String INVENTORY = String.join("\n",
+			"1:0:d=2018010100:PRMSL:mean sea level:anl:",
+			"2:1000:d=2018010100:UGRD:10 m above ground:anl:",
+			"2.1:1000:d=2018010100:VGRD:10 m above ground:anl:",
+			"",
+			"3:3000:d=2018010100:TMP:2 m above ground:anl:",
+			"4:3500:d=2018010100:RH:2 m above ground:anl:",
+			"5:10000:d=2018010100:HGT:500 mb:anl:");
+	
+	@Test
+	public void testSubMessagesShareAnOffset() throws IOException {
+		List<GRIBInventory.Request> requests = select(INVENTORY, 0, ":VGRD:");
+		assertEquals("1000-3000", describe(requests));
+		assertEquals("bytes=1000-2999", requests.get(0).toRangeHeader());
+		assertEquals("a message whose sub-messages all match is selected once", "1000-3000", describe(select(INVENTORY, 0, ":[UV]GRD:")));
+	}
+	
+	@Test
+	public void testCoalescing() throws IOException {
+		assertEquals("the gap is exactly the largest allowed gap", "0-1000 3000-3500", describe(select(INVENTORY, 2000, ":PRMSL:", ":TMP:")));
+		assertEquals("0-1000 | 3000-3500", describe(select(INVENTORY, 1999, ":PRMSL:", ":TMP:")));
+		assertEquals("adjacent messages are always coalesced", "1000-3000 3000-3500", describe(select(INVENTORY, 0, ":VGRD:", ":TMP:")));
+		assertEquals("bytes=1000-3499", select(INVENTORY, 0, ":VGRD:", ":TMP:").get(0).toRangeHeader());
+	}
+	
+	@Test
+	public void testLastMessageIsOpenEnded() throws IOException {
+		List<GRIBInventory.Request> requests = select(INVENTORY, 0, ":HGT:");
+		assertEquals("10000-end", describe(requests));
+		assertEquals(-1, requests.get(0).getEnd());
+		assertEquals("bytes=10000-", requests.get(0).toRangeHeader());
+		requests = select(INVENTORY, 6500, ":RH:", ":HGT:");
+		assertEquals("3500-10000 10000-end", describe(requests));
+		assertEquals("bytes=3500-", requests.get(0).toRangeHeader());
+	}
+	
+	@Test
+	public void testNoMatches() throws IOException {
+		assertEquals("", describe(select(INVENTORY, 1 << 18, ":APCP:")));
+	}
+	
+	@Test
+	public void testMalformedInventories() {
+		for (String inventory : new String[]{"1:0:d=2018010100:TMP\n2:x:d=2018010100:RH", "1:100:d=2018010100:TMP\n2:50:d=2018010100:RH", "1:0",
+				"1:-5:d=2018010100:TMP"}) {
+			try {
+				GRIBInventory.parse(new BufferedReader(new StringReader(inventory)));
+				fail("Parsed a malformed inventory: " + inventory);
+			}
+			catch (IOException e) {/* This is the expected result */}
+		}
+	}
+	
+	private static List<GRIBInventory.Request> select(String inventory, long maxGap, String... fields) throws IOException {
+		return GRIBInventory.parse(new BufferedReader(new StringReader(inventory))).select(Arrays.stream(fields).map(Pattern::compile).collect(Collectors.toList()),
+				maxGap);
+	}
+	
+	/**
+	 * Describes the messages of each request as start-end pairs, with the requests separated by " | ".
+	 */
+	private static String describe(List<GRIBInventory.Request> requests) {
+		return requests.stream().map(request -> request.getMessages().stream().map(m -> m[0] + "-" + (m[1] >= 0 ? Long.toString(m[1]) : "end"))
+				.collect(Collectors.joining(" "))).collect(Collectors.joining(" | "));
+	}
+}
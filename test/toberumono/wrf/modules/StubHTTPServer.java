@@ -0,0 +1,307 @@
+package toberumono.wrf.modules;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that serves files from memory. Requests for names that have not been {@link #setFile(String, byte[], String, String) set}
+ * are answered with the default file. Whether it advertises and honors range requests and which validators it sends can be
+ * changed between requests, and every request that it receives is recorded so that tests can check how a file was transferred.
+ * 
+ * @author Toberumono
+ */
+final class StubHTTPServer implements AutoCloseable {
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final List<Request> requests;
+	private final Map<String, byte[]> files;
+	private final Map<String, String[]> validators;
+	private volatile byte[] content;
+	private volatile String etag, lastModified;
+	private volatile boolean advertiseRanges, honorRanges;
+	private volatile Runnable afterHead, beforeNotModified;
+	private int cutOff;
+	
+	/**
+	 * Starts a new {@link StubHTTPServer} on a free local port.
+	 * 
+	 * @param content
+	 *            the content of the file
+	 * @param advertiseRanges
+	 *            whether the server sends {@code Accept-Ranges: bytes}
+	 * @param honorRanges
+	 *            whether the server responds to range requests with {@code 206 Partial Content}
+	 * @throws IOException
+	 *             if the server cannot be started
+	 */
+	StubHTTPServer(byte[] content, boolean advertiseRanges, boolean honorRanges) throws IOException {
+		this.content = content;
+		this.advertiseRanges = advertiseRanges;
+		this.honorRanges = honorRanges;
+		etag = null;
+		lastModified = null;
+		afterHead = null;
+		beforeNotModified = null;
+		cutOff = -1;
+		requests = new ArrayList<>();
+		files = new ConcurrentHashMap<>();
+		validators = new ConcurrentHashMap<>();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+	
+	/**
+	 * @param name
+	 *            the name of the file
+	 * @return the {@link URL} of the file with the given name on this server
+	 * @throws MalformedURLException
+	 *             if {@code name} is not a valid path
+	 */
+	URL getURL(String name) throws MalformedURLException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/" + name);
+	}
+	
+	/**
+	 * Replaces the served file.
+	 * 
+	 * @param content
+	 *            the new content of the file
+	 * @param etag
+	 *            the new ETag of the file or {@code null} if the server should not send one
+	 * @param lastModified
+	 *            the new Last-Modified value of the file or {@code null} if the server should not send one
+	 */
+	void setContent(byte[] content, String etag, String lastModified) {
+		this.content = content;
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+	
+	/**
+	 * Serves the given content for requests for the given name instead of the default file.
+	 * 
+	 * @param name
+	 *            the name of the file
+	 * @param content
+	 *            the content of the file
+	 * @param etag
+	 *            the ETag of the file or {@code null} if the server should not send one
+	 * @param lastModified
+	 *            the Last-Modified value of the file or {@code null} if the server should not send one
+	 */
+	void setFile(String name, byte[] content, String etag, String lastModified) {
+		validators.put(name, new String[]{etag, lastModified}); //The validators are stored first so that they are never missing for a stored file
+		files.put(name, content);
+	}
+	
+	/**
+	 * Replaces the served file as soon as the next HEAD request has been answered, which simulates a file that changes while it is being downloaded.
+	 * 
+	 * @param content
+	 *            the new content of the file
+	 * @param etag
+	 *            the new ETag of the file or {@code null} if the server should not send one
+	 * @param lastModified
+	 *            the new Last-Modified value of the file or {@code null} if the server should not send one
+	 */
+	void setContentAfterNextHead(byte[] content, String etag, String lastModified) {
+		afterHead = () -> setContent(content, etag, lastModified);
+	}
+	
+	/**
+	 * Runs the given action when the server has decided to send the next {@code 304 Not Modified} response, just before the response is sent.
+	 * 
+	 * @param action
+	 *            the action to run
+	 */
+	void runBeforeNextNotModified(Runnable action) {
+		beforeNotModified = action;
+	}
+	
+	/**
+	 * Makes the server close the connection after sending the given number of bytes of the next response that has a body, which simulates a
+	 * connection that is dropped in the middle of a transfer. The response still declares its full length.
+	 * 
+	 * @param bytes
+	 *            the number of bytes of the body to send
+	 */
+	synchronized void cutOffNextResponse(int bytes) {
+		cutOff = bytes;
+	}
+	
+	/**
+	 * @return the recorded {@link Request Requests} in the order in which they were received
+	 */
+	synchronized List<Request> getRequests() {
+		return new ArrayList<>(requests);
+	}
+	
+	/**
+	 * Forgets the {@link Request Requests} that the server has received so far.
+	 */
+	synchronized void clearRequests() {
+		requests.clear();
+	}
+	
+	/**
+	 * @param method
+	 *            the HTTP method
+	 * @param ranged
+	 *            whether to count range requests or whole-file requests
+	 * @return the number of recorded {@link Request Requests} with the given method and kind
+	 */
+	synchronized long count(String method, boolean ranged) {
+		return requests.stream().filter(r -> r.method.equals(method) && (r.range != null) == ranged).count();
+	}
+	
+	/**
+	 * @param name
+	 *            the name of the file
+	 * @return the number of recorded {@link Request Requests} for the file with the given name
+	 */
+	synchronized long count(String name) {
+		return requests.stream().filter(r -> r.name.equals(name)).count();
+	}
+	
+	/**
+	 * @return the number of {@link Request Requests} that the server has received since it was started or last {@link #clearRequests() cleared}
+	 */
+	synchronized int getRequestCount() {
+		return requests.size();
+	}
+	
+	/**
+	 * @param status
+	 *            the HTTP status code
+	 * @return the number of recorded {@link Request Requests} that were answered with the given status code
+	 */
+	synchronized long countStatus(int status) {
+		return requests.stream().filter(r -> r.status == status).count();
+	}
+	
+	/*
+	 * Records the request and returns the number of bytes of its body to send
+	 */
+	private synchronized int record(Request request, int count) {
+		requests.add(request);
+		if (count == 0 || cutOff < 0)
+			return count;
+		request.truncated = Math.min(cutOff, count);
+		cutOff = -1;
+		return request.truncated;
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		String name = exchange.getRequestURI().getPath().substring(1);
+		byte[] content = files.get(name);
+		String etag, lastModified;
+		if (content != null) {
+			etag = validators.get(name)[0];
+			lastModified = validators.get(name)[1];
+		}
+		else {
+			content = this.content;
+			etag = this.etag;
+			lastModified = this.lastModified;
+		}
+		Headers in = exchange.getRequestHeaders(), out = exchange.getResponseHeaders();
+		if (advertiseRanges)
+			out.add("Accept-Ranges", "bytes");
+		if (etag != null)
+			out.add("ETag", etag);
+		if (lastModified != null)
+			out.add("Last-Modified", lastModified);
+		String range = in.getFirst("Range"), ifRange = in.getFirst("If-Range"), ifNoneMatch = in.getFirst("If-None-Match"),
+				ifModifiedSince = in.getFirst("If-Modified-Since");
+		try {
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				out.add("Content-Length", String.valueOf(content.length));
+				runIfPresent(afterHead); //The response was built from the previous file, so the file can be replaced before the client receives the response
+				afterHead = null;
+				respond(exchange, new Request(name, "HEAD", range), 200, -1, null, 0, 0);
+			}
+			else if (ifNoneMatch != null ? ifNoneMatch.equals(etag) : (ifModifiedSince != null && ifModifiedSince.equals(lastModified))) {
+				runIfPresent(beforeNotModified);
+				beforeNotModified = null;
+				respond(exchange, new Request(name, "GET", range), 304, -1, null, 0, 0);
+			}
+			else if (range != null && honorRanges && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified))) {
+				String[] bounds = range.substring("bytes=".length()).split("-");
+				int start = Integer.parseInt(bounds[0]), end = bounds.length > 1 ? Math.min(Integer.parseInt(bounds[1]), content.length - 1) : content.length - 1;
+				out.add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+				respond(exchange, new Request(name, "GET", range), 206, end - start + 1, content, start, end - start + 1);
+			}
+			else
+				respond(exchange, new Request(name, "GET", range), 200, content.length, content, 0, content.length);
+		}
+		catch (IOException e) {/* The client closed the connection without reading the whole response */}
+		finally {
+			exchange.close();
+		}
+	}
+	
+	private static void runIfPresent(Runnable action) {
+		if (action != null)
+			action.run();
+	}
+	
+	private void respond(HttpExchange exchange, Request request, int status, long length, byte[] body, int offset, int count) throws IOException {
+		request.status = status;
+		count = record(request, body != null ? count : 0);
+		exchange.sendResponseHeaders(status, length);
+		if (body != null) //If the body was cut off, closing the exchange with fewer bytes than the declared length drops the connection
+			exchange.getResponseBody().write(body, offset, count);
+	}
+	
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * A request that the {@link StubHTTPServer} received.
+	 */
+	static final class Request {
+		final String name, method, range;
+		int status, truncated;
+		
+		Request(String name, String method, String range) {
+			this.name = name;
+			this.method = method;
+			this.range = range;
+			truncated = -1;
+		}
+		
+		/**
+		 * @return the {start, end (exclusive)} bounds of the requested range or {@code null} if this is not a range request; the end of a range that
+		 *         extends to the end of the file is -1
+		 */
+		long[] getBounds() {
+			if (range == null)
+				return null;
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			return new long[]{Long.parseLong(bounds[0]), bounds.length > 1 ? Long.parseLong(bounds[1]) + 1 : -1};
+		}
+		
+		@Override
+		public String toString() {
+			return method + " /" + name + (range != null ? " " + range : "") + " -> " + status + (truncated >= 0 ? " (cut off after " + truncated + " bytes)" : "");
+		}
+	}
+}
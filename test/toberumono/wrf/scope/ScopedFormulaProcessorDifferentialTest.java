@@ -0,0 +1,162 @@
+package toberumono.wrf.scope;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toberumono.structures.sexpressions.ConsCell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the values that {@link ScopedFormulaProcessor} computes against the values that {@link LegacyFormulaProcessor} computes for a fixed corpus
+ * of formulae and for randomly generated formulae.<br>
+ * The two engines are expected to agree except where the legacy engine is known to be wrong:
+ * <ul>
+ * <li>a ternary that is nested in an operand or in the false branch of another ternary is left unevaluated</li>
+ * <li>a chain of two or more {@code &&} or {@code ||} operators can throw a {@link NullPointerException}</li>
+ * <li>floating point arithmetic is performed with {@link java.math.BigDecimal BigDecimals}, so results can differ in their last digit or fail with a
+ * non-terminating decimal expansion</li>
+ * <li>{@code 1e3} is lexed as the number 1 followed by the variable e3</li>
+ * </ul>
+ * 
+ * @author Toberumono
+ */
+public class ScopedFormulaProcessorDifferentialTest {
+	private static final String[] CORPUS = {"1 + 2 * 3", "(1 + 2) * 3", "2 ** 3 ** 2", "10 - 4 - 3", "-3 + 5", "- -3", "!true", "~5", "7 / 2", "7.0 / 2", "7 % 3",
+			"1 + 2.5", "'a' + 1", "name + 'x'", "hours * 2", "hours > 5", "hours <= 6 == true", "3 < 4 && 4 < 5", "false || hours == 6", "false && undefinedVariable",
+			"true || undefinedVariable", "5 & 3", "5 | 3", "5 ^ 3", "true & false", "true ? 1 : 2", "false ? 1 : 2", "hours > 5 ? 'big' : 'small'", "list[1]", "list[2] + 1",
+			"child.hours", "child.days", "child.minutes", "child.deep", "child.cond", "child.hoursStep", "1 compareTo 2", "2.5 == 2.5", "1 != 2", "d * 2", "(((1)))",
+			"1 + 2 + 3 + 4", "2 * 3 + 4 * 5", "1 - -1", "hours - 1 > 4 && !(hours == 7)", "true ? false ? 1 : 2 : 3", "1 < 2 || 2 < 1 && false", "10 / 3 * 3",
+			"9223372036854775807 + 1"};
+	/**
+	 * Formulae that the legacy engine evaluates incorrectly mapped to the values that the current engine must produce for them.
+	 */
+	private static final Map<String, Object> KNOWN_DEFECTS = new HashMap<>();
+	private static final String[] BINARY = {"+", "-", "*", "/", "%", "**", "<", "<=", ">", ">=", "==", "!=", "&", "|", "^", "&&", "||", "compareTo"};
+	private static final String[] UNARY = {"-", "+", "~", "!"};
+	private static final String[] ATOMS = {"1", "2", "3", "0", "true", "false", "hours", "'s'", "2.5", "child.hours", "list[1]", "parent", "inherit"};
+	private static final long[] SEEDS = {1, 2, 3};
+	private static final int[] DEPTHS = {3, 5};
+	private static final int FORMULAE_PER_RUN = 10000;
+	private static final double TOLERANCE = 1e-12;
+	private static ScopedMap root;
+	
+	@BeforeClass
+	public static void buildScope() {
+		root = new ScopedMap(null);
+		root.put("hours", 6);
+		root.put("days", 2);
+		root.put("name", "abc");
+		root.put("flag", true);
+		root.put("step", 3);
+		root.put("d", 2.5);
+		ScopedList list = new ScopedList(root);
+		list.add(10);
+		list.add(20);
+		list.add("=1 + 2");
+		root.put("list", list);
+		ScopedMap child = new ScopedMap(root);
+		root.put("child", child);
+		child.put("hours", "=+ 1");
+		child.put("days", "=inherit * 2");
+		child.put("hoursStep", 4);
+		child.put("minutes", "=hours * 60");
+		child.put("deep", "=parent.hours + this.hours");
+		child.put("cond", "=hours > 5 ? 'big' : 'small'");
+		
+		KNOWN_DEFECTS.put("1 + (hours > 5 ? 10 : 20)", 11);
+		KNOWN_DEFECTS.put("false ? 1 : true ? 2 : 3", 2);
+		KNOWN_DEFECTS.put("true || false || false", true);
+		KNOWN_DEFECTS.put("false && true && true", false);
+	}
+	
+	@Test
+	public void testCorpus() {
+		for (String formula : CORPUS)
+			assertEquals(formula, String.valueOf(legacy(formula)), String.valueOf(current(formula)));
+	}
+	
+	@Test
+	public void testKnownDefects() {
+		for (Map.Entry<String, Object> defect : KNOWN_DEFECTS.entrySet())
+			assertEquals(defect.getKey(), defect.getValue(), current(defect.getKey()));
+	}
+	
+	@Test
+	public void testRandomFormulae() {
+		for (long seed : SEEDS) {
+			for (int depth : DEPTHS) {
+				Random random = new Random(seed);
+				for (int i = 0; i < FORMULAE_PER_RUN; i++) {
+					String formula = generate(random, depth);
+					Object legacy = legacy(formula), current = current(formula);
+					assertTrue("seed " + seed + ", depth " + depth + ": " + formula + " => " + current + " [legacy: " + legacy + "]", agree(formula, legacy, current));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ternaries are only generated at the top level because the legacy engine cannot evaluate them anywhere else.
+	 */
+	private static String generate(Random random, int depth) {
+		if (random.nextInt(4) == 0)
+			return generateOperand(random, depth - 1) + " ? " + generateOperand(random, depth - 1) + " : " + generateOperand(random, depth - 1);
+		return generateOperand(random, depth);
+	}
+	
+	private static String generateOperand(Random random, int depth) {
+		switch (depth <= 0 ? 0 : random.nextInt(5)) {
+			case 0:
+			case 1:
+				return ATOMS[random.nextInt(ATOMS.length)];
+			case 2:
+				return UNARY[random.nextInt(UNARY.length)] + " " + generateOperand(random, depth - 1);
+			case 3:
+				return "(" + generateOperand(random, depth - 1) + ")";
+			default:
+				return generateOperand(random, depth - 1) + " " + BINARY[random.nextInt(BINARY.length)] + " " + generateOperand(random, depth - 1);
+		}
+	}
+	
+	private static boolean agree(String formula, Object legacy, Object current) {
+		if (legacy instanceof Throwable) {
+			if (current instanceof Throwable)
+				return true;
+			if (legacy instanceof NullPointerException)
+				return formula.split("&&|\\|\\|", -1).length > 2;
+			return String.valueOf(((Throwable) legacy).getMessage()).contains("Non-terminating decimal expansion") && current instanceof Double;
+		}
+		if (current instanceof Throwable)
+			return false;
+		if (legacy instanceof Number && current instanceof Number) {
+			double l = ((Number) legacy).doubleValue(), c = ((Number) current).doubleValue();
+			return Double.compare(l, c) == 0 || l == c || Math.abs(l - c) <= TOLERANCE * Math.max(Math.abs(l), Math.abs(c));
+		}
+		return String.valueOf(legacy).equals(String.valueOf(current));
+	}
+	
+	private static Object legacy(String formula) {
+		try {
+			Object result = LegacyFormulaProcessor.process(formula, root, null);
+			return result instanceof ConsCell ? LegacyFormulaProcessor.process((ConsCell) result, root, null).getCar() : result;
+		}
+		catch (RuntimeException e) {
+			return e;
+		}
+	}
+	
+	private static Object current(String formula) {
+		try {
+			return ScopedFormulaProcessor.process(formula, root, null);
+		}
+		catch (RuntimeException e) {
+			return e;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package toberumono.wrf.timing;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toberumono.wrf.WRFRunner;
+import toberumono.wrf.scope.Scope;
+import toberumono.wrf.scope.ScopedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Races many threads on the first access to {@link Lazy} values, {@link AbstractTimingComponent AbstractTimingComponents}, and
+ * {@link ComputedTiming ComputedTimings} to check that each value is computed exactly once, that every thread sees the fully computed value, and
+ * that nothing is locked once the value has been computed.
+ * 
+ * @author Toberumono
+ */
+public class ConcurrentFirstAccessTest {
+	private static final int THREADS = 16, ROUNDS = 200;
+	private static final long TIMEOUT = 10;
+	private static ExecutorService pool;
+	
+	@BeforeClass
+	public static void setUp() {
+		WRFRunner.initFactories();
+		pool = Executors.newFixedThreadPool(THREADS);
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		pool.shutdownNow();
+	}
+	
+	@Test
+	public void testLazyComputesOnce() throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			AtomicInteger computations = new AtomicInteger(0);
+			Lazy<Object> lazy = new Lazy<>(() -> {
+				computations.incrementAndGet();
+				Thread.yield(); //Widens the window in which other threads can observe the value being computed
+				return new Object();
+			});
+			List<Object> values = race(lazy::get);
+			assertEquals("computations in round " + round, 1, computations.get());
+			for (Object value : values)
+				assertSame("value in round " + round, values.get(0), value);
+		}
+	}
+	
+	@Test
+	public void testLazyDoesNotLockOnceComputed() throws Exception {
+		Lazy<Object> lazy = new Lazy<>(Object::new);
+		Object expected = lazy.get();
+		synchronized (lazy) { //If get() still locked, it would block until this block exits
+			assertSame(expected, pool.submit(lazy::get).get(TIMEOUT, TimeUnit.SECONDS));
+		}
+	}
+	
+	@Test
+	public void testComponentComputesOnce() throws Exception {
+		Logger log = Logger.getLogger(ConcurrentFirstAccessTest.class.getName());
+		for (int round = 0; round < ROUNDS; round++) {
+			CountingComponent component = new CountingComponent(log, null);
+			long base = round;
+			for (Long value : race(() -> component.apply(base)))
+				assertEquals("value in round " + round, base + CountingComponent.FIRST + 2 * CountingComponent.FIRST, value.longValue());
+			assertEquals("computations in round " + round, 1, component.computations.get());
+		}
+	}
+	
+	@Test
+	public void testComponentsSharingALoggerDoNotContend() throws Exception {
+		Logger log = Logger.getLogger(ConcurrentFirstAccessTest.class.getName());
+		CountDownLatch release = new CountDownLatch(1);
+		CountingComponent blocked = new CountingComponent(log, release), other = new CountingComponent(log, null);
+		Future<Long> blockedResult = pool.submit(() -> blocked.apply(0L));
+		try {
+			assertEquals(3 * CountingComponent.FIRST, pool.submit(() -> other.apply(0L)).get(TIMEOUT, TimeUnit.SECONDS).longValue());
+		}
+		finally {
+			release.countDown();
+		}
+		assertEquals(3 * CountingComponent.FIRST, blockedResult.get(TIMEOUT, TimeUnit.SECONDS).longValue());
+	}
+	
+	@Test
+	public void testComputedTimingFirstAccess() throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			Calendar base = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			base.setTimeInMillis(1500000000000L + round * 3600000L);
+			ComputedTiming[] reference = buildTimings(base), raced = buildTimings(base);
+			long expected = describe(reference);
+			for (Long value : race(() -> describe(raced)))
+				assertEquals("value in round " + round, expected, value.longValue());
+		}
+	}
+	
+	/**
+	 * Builds a global {@link ComputedTiming} and a {@link ComputedTiming} that inherits from it.
+	 */
+	private static ComputedTiming[] buildTimings(Calendar base) {
+		ScopedMap offset = map("hours", 3), round = map("magnitude", "hours", "diff", 6), duration = map("hours", 48), clear = map("keep", "hours");
+		ComputedTiming global = new ComputedTiming(map("offset", offset, "round", round, "duration", duration, "clear", clear), base, null);
+		return new ComputedTiming[]{global, new ComputedTiming(map("offset", map("hours", 6)), global)};
+	}
+	
+	/**
+	 * Reads the values of the {@link ComputedTiming ComputedTimings} in an order that forces the inheriting one to compute its parent's values.
+	 */
+	private static long describe(ComputedTiming[] timings) {
+		long out = timings[1].getEnd().getTimeInMillis();
+		out = out * 31 + timings[0].getStart().getTimeInMillis();
+		out = out * 31 + timings[1].getBase().getTimeInMillis();
+		out = out * 31 + ((Number) timings[1].getScopedStart().get("hours")).longValue();
+		return out * 31 + timings[1].getSnapshot().getEnd().toEpochMilli();
+	}
+	
+	private static ScopedMap map(Object... entries) {
+		ScopedMap out = new ScopedMap(null);
+		for (int i = 0; i < entries.length; i += 2)
+			out.put((String) entries[i], entries[i + 1]);
+		return out;
+	}
+	
+	/**
+	 * Runs the given task on {@link #THREADS} threads that are released at the same time.
+	 */
+	private static <T> List<T> race(Callable<T> task) throws Exception {
+		CyclicBarrier start = new CyclicBarrier(THREADS);
+		List<Future<T>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++)
+			futures.add(pool.submit(() -> {
+				start.await();
+				return task.call();
+			}));
+		List<T> out = new ArrayList<>();
+		for (Future<T> future : futures)
+			out.add(future.get(TIMEOUT, TimeUnit.SECONDS));
+		return out;
+	}
+	
+	/**
+	 * A component that computes two fields in separate steps so that a thread that sees a partially computed component produces the wrong result.
+	 */
+	private static final class CountingComponent extends AbstractTimingComponent {
+		static final long FIRST = 1000;
+		final AtomicInteger computations;
+		private final CountDownLatch release;
+		private long first, second;
+		
+		CountingComponent(Logger log, CountDownLatch release) {
+			super(new ScopedMap(null), (Scope) null, log);
+			computations = new AtomicInteger(0);
+			this.release = release;
+		}
+		
+		@Override
+		protected void compute() {
+			computations.incrementAndGet();
+			first = FIRST;
+			Thread.yield();
+			if (release != null) {
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			second = 2 * first;
+		}
+		
+		@Override
+		protected Calendar doApply(Calendar base) {
+			base.setTimeInMillis(doApply(base.getTimeInMillis()));
+			return base;
+		}
+		
+		@Override
+		protected long doApply(long base) {
+			return base + first + second;
+		}
+	}
+}
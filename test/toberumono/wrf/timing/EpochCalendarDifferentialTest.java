@@ -0,0 +1,204 @@
+package toberumono.wrf.timing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import toberumono.wrf.scope.ScopedMap;
+import toberumono.wrf.timing.clear.StandardClear;
+import toberumono.wrf.timing.duration.StandardDuration;
+import toberumono.wrf.timing.offset.StandardOffset;
+import toberumono.wrf.timing.round.BucketRound;
+import toberumono.wrf.timing.round.FractionalRound;
+import toberumono.wrf.timing.round.FunctionRound;
+
+import static org.junit.Assert.assertEquals;
+import static toberumono.wrf.SimulationConstants.TIMING_FIELD_IDS;
+import static toberumono.wrf.SimulationConstants.TIMING_FIELD_NAMES;
+
+/**
+ * Checks that {@link EpochCalendar} and the {@code long}-based {@link TimingComponent#apply(long) apply} methods produce exactly the same results as
+ * a lenient {@link GregorianCalendar} for randomly generated times, fields, amounts, and components in several fixed-offset time zones.
+ * 
+ * @author Toberumono
+ */
+public class EpochCalendarDifferentialTest {
+	private static final String[] ZONES = {"UTC", "GMT+05:30", "GMT-08:00", "GMT+14:00", "GMT-12:00"};
+	private static final long SEED = 42;
+	private static final int FIELD_OPERATIONS = 400000, COMPONENTS = 60, TIMES_PER_COMPONENT = 3000;
+	
+	@Test
+	public void testFieldOperations() {
+		Random random = new Random(SEED);
+		for (int n = 0; n < FIELD_OPERATIONS; n++) {
+			TimeZone zone = TimeZone.getTimeZone(ZONES[random.nextInt(ZONES.length)]);
+			long local = randomTime(random);
+			if (!EpochCalendar.isSupported(local))
+				continue;
+			GregorianCalendar calendar = toCalendar(zone, local);
+			assertEquals("toLocalTime @" + local, local, EpochCalendar.toLocalTime(calendar));
+			for (int field = 0; field < TIMING_FIELD_IDS.size(); field++)
+				assertEquals("get " + field + " @" + local, calendar.get(TIMING_FIELD_IDS.get(field)), EpochCalendar.get(local, field));
+			int field = random.nextInt(TIMING_FIELD_IDS.size()), amount = randomAmount(random);
+			switch (random.nextInt(5)) {
+				case 0:
+					calendar.add(TIMING_FIELD_IDS.get(field), amount);
+					assertSame("add " + field + " " + amount + " @" + local, calendar, EpochCalendar.add(local, field, amount));
+					break;
+				case 1:
+					calendar.set(TIMING_FIELD_IDS.get(field), amount);
+					assertSame("set " + field + " " + amount + " @" + local, calendar, EpochCalendar.set(local, field, amount));
+					break;
+				case 2:
+					int value = random.nextBoolean() ? amount : calendar.get(TIMING_FIELD_IDS.get(field)) + random.nextInt(3) - 1;
+					calendar.set(TIMING_FIELD_IDS.get(field), value);
+					for (int i = 0; i < field; i++)
+						calendar.set(TIMING_FIELD_IDS.get(i), calendar.getActualMinimum(TIMING_FIELD_IDS.get(i)));
+					assertSame("truncate " + field + " " + value + " @" + local, calendar, EpochCalendar.truncate(local, field, value));
+					break;
+				case 3:
+					int[] values = new int[TIMING_FIELD_IDS.size()];
+					int count = random.nextInt(values.length);
+					for (int i = 0; i < values.length; i++)
+						values[i] = random.nextBoolean() ? randomAmount(random) : EpochCalendar.getActualMinimum(i);
+					for (int i = 0; i < count; i++)
+						calendar.set(TIMING_FIELD_IDS.get(i), values[i]);
+					assertSame("setLowest " + count + " " + Arrays.toString(values) + " @" + local, calendar, EpochCalendar.setLowest(local, values, count));
+					break;
+				default:
+					if (TIMING_FIELD_IDS.get(field) == Calendar.YEAR) //The maximum year depends on the era
+						break;
+					assertEquals("getActualMinimum " + field, calendar.getActualMinimum(TIMING_FIELD_IDS.get(field)), EpochCalendar.getActualMinimum(field));
+					assertEquals("getActualMaximum " + field + " @" + local, calendar.getActualMaximum(TIMING_FIELD_IDS.get(field)), EpochCalendar.getActualMaximum(local, field));
+			}
+		}
+	}
+	
+	@Test
+	public void testComponents() {
+		Random random = new Random(SEED);
+		for (TimingComponent component : randomComponents(random)) {
+			for (int n = 0; n < TIMES_PER_COMPONENT; n++) {
+				TimeZone zone = TimeZone.getTimeZone(ZONES[random.nextInt(ZONES.length)]);
+				long local = randomTime(random);
+				if (!EpochCalendar.isSupported(local))
+					continue;
+				long expected;
+				try {
+					expected = EpochCalendar.toLocalTime(component.apply(toCalendar(zone, local)));
+				}
+				catch (RuntimeException e) { //The Calendar-based implementation rejected the parameters, so there is nothing to compare against
+					continue;
+				}
+				assertEquals(component.getClass().getSimpleName() + " " + component + " @" + local, expected, component.apply(local));
+			}
+		}
+	}
+	
+	/**
+	 * The result of an {@link EpochCalendar} operation must either match the {@link Calendar} or be {@link EpochCalendar#UNSUPPORTED}.
+	 */
+	private static void assertSame(String message, Calendar expected, long actual) {
+		if (actual != EpochCalendar.UNSUPPORTED)
+			assertEquals(message, expected.getTimeInMillis() + expected.getTimeZone().getRawOffset(), actual);
+	}
+	
+	private static GregorianCalendar toCalendar(TimeZone zone, long local) {
+		GregorianCalendar calendar = new GregorianCalendar(zone);
+		calendar.setTimeInMillis(local - zone.getRawOffset());
+		return calendar;
+	}
+	
+	/**
+	 * Produces times around the epoch, across the supported range, near the start of the supported range, and at the ends of months.
+	 */
+	private static long randomTime(Random random) {
+		switch (random.nextInt(4)) {
+			case 0:
+				return (long) (random.nextDouble() * 4e12) - 2000000000000L;
+			case 1:
+				return (long) ((random.nextDouble() * (3000 - EpochCalendar.MIN_YEAR) + EpochCalendar.MIN_YEAR - 1970) * 365.2425 * 86400000L);
+			case 2:
+				return -12212553600000L + random.nextInt(100) * 86400000L + random.nextInt(86400000);
+			default:
+				GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+				calendar.clear();
+				calendar.set(EpochCalendar.MIN_YEAR + random.nextInt(1000), random.nextInt(12), 1);
+				calendar.set(Calendar.DAY_OF_MONTH, calendar.getActualMaximum(Calendar.DAY_OF_MONTH) - random.nextInt(2));
+				calendar.set(Calendar.HOUR_OF_DAY, random.nextInt(24));
+				return calendar.getTimeInMillis();
+		}
+	}
+	
+	/**
+	 * Produces small amounts, amounts that overflow every field, and the extremes of {@code int}.
+	 */
+	private static int randomAmount(Random random) {
+		switch (random.nextInt(6)) {
+			case 0:
+				return random.nextInt(5) - 2;
+			case 1:
+				return random.nextInt(200) - 100;
+			case 2:
+				return random.nextInt(20000) - 10000;
+			case 3:
+				return random.nextInt();
+			case 4:
+				return random.nextBoolean() ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+			default:
+				return random.nextInt(61);
+		}
+	}
+	
+	private static List<TimingComponent> randomComponents(Random random) {
+		List<TimingComponent> components = new ArrayList<>();
+		String[] diffs = {"next", "previous", "none"};
+		String[] functions = {"%1$s - %1$s %% %2$d", "%1$s + %2$d", "(%1$s + %2$d) %% 24", "this.%1$s > %2$d ? %1$s : 0", "%3$s", "%2$d", "%1$s"};
+		for (int n = 0; n < COMPONENTS; n++) {
+			ScopedMap fields = new ScopedMap(null), clearFields = new ScopedMap(null);
+			for (int i = 0; i < TIMING_FIELD_NAMES.size(); i++) {
+				if (random.nextInt(3) != 0)
+					continue;
+				int value = random.nextInt(random.nextBoolean() ? 100 : 100000) - (random.nextBoolean() ? 50 : 50000);
+				fields.put(TIMING_FIELD_NAMES.get(i), value);
+				clearFields.put(TIMING_FIELD_NAMES.get(i), Math.abs(value) % 40);
+			}
+			ScopedMap offset = copy(fields);
+			offset.put("wrap", random.nextBoolean());
+			components.add(new StandardOffset(offset, null));
+			components.add(new StandardDuration(copy(fields), null));
+			clearFields.put("keep", TIMING_FIELD_NAMES.get(random.nextInt(TIMING_FIELD_NAMES.size())));
+			components.add(new StandardClear(clearFields, null));
+			ScopedMap fractional = new ScopedMap(null);
+			fractional.put("diff", diffs[random.nextInt(diffs.length)]);
+			fractional.put("fraction", random.nextBoolean() ? 1.0 : random.nextDouble());
+			fractional.put("magnitude", TIMING_FIELD_NAMES.get(1 + random.nextInt(TIMING_FIELD_NAMES.size() - 1)));
+			components.add(new FractionalRound(fractional, null));
+			ScopedMap bucket = new ScopedMap(null);
+			bucket.put(TIMING_FIELD_NAMES.get(random.nextInt(TIMING_FIELD_NAMES.size())), 1 + random.nextInt(15));
+			bucket.put(TIMING_FIELD_NAMES.get(random.nextInt(TIMING_FIELD_NAMES.size())) + "-step", 1 + random.nextInt(7));
+			bucket.put("rounding-mode", random.nextBoolean() ? "floor" : "half_up");
+			components.add(new BucketRound(bucket, null));
+			ScopedMap function = new ScopedMap(null);
+			for (int i = 0, count = 1 + random.nextInt(3); i < count; i++) {
+				String name = TIMING_FIELD_NAMES.get(random.nextInt(TIMING_FIELD_NAMES.size()));
+				String other = TIMING_FIELD_NAMES.get(random.nextInt(TIMING_FIELD_NAMES.size()));
+				function.put(name, String.format(functions[random.nextInt(functions.length)], name, 1 + random.nextInt(40), other));
+			}
+			components.add(new FunctionRound(function, null));
+		}
+		return components;
+	}
+	
+	private static ScopedMap copy(ScopedMap source) {
+		ScopedMap out = new ScopedMap(null);
+		out.putAll(source);
+		return out;
+	}
+}
@@ -0,0 +1,103 @@
+package toberumono.wrf.timing;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toberumono.wrf.WRFRunner;
+import toberumono.wrf.scope.ScopedMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static toberumono.wrf.SimulationConstants.TIMING_FIELD_IDS;
+
+/**
+ * Evaluates {@link TimingSeries} in a fixed-offset {@link TimeZone}, which uses the epoch millisecond path, and in a {@link TimeZone} with daylight
+ * savings time, which uses the {@link Calendar} path, and checks every base time against {@link ComputedTiming ComputedTimings} built for that base
+ * time and against the increments that {@link toberumono.wrf.modules.GRIBModule GRIBModule} would download.
+ * 
+ * @author Toberumono
+ */
+public class TimingSeriesTest {
+	private static final long FIRST = 1450000000000L, LAST = 1550000000000L, STEP = 3600000L * 61 + 17;
+	private static final int[] TIMESTEP = {0, 0, 0, 3, 0, 0, 0};
+	
+	@BeforeClass
+	public static void setUp() {
+		WRFRunner.initFactories();
+	}
+	
+	@Test
+	public void testFixedOffsetZone() {
+		check(TimeZone.getTimeZone("GMT+05:30"), false);
+		check(TimeZone.getTimeZone("UTC"), true);
+	}
+	
+	@Test
+	public void testZoneWithDaylightSavingsTime() {
+		check(TimeZone.getTimeZone("America/New_York"), false);
+		check(TimeZone.getTimeZone("Europe/London"), true);
+	}
+	
+	private static void check(TimeZone zone, boolean useIncrementDuration) {
+		ScopedMap parameters = parameters(), incrementedParameters = incrementedParameters();
+		ComputedTiming reference = root(parameters, zone, FIRST);
+		TimingSeries series = TimingSeries.evaluate(reference, new ComputedTiming(incrementedParameters, reference), TIMESTEP, useIncrementDuration, zone,
+				FIRST, LAST, STEP, ForkJoinPool.commonPool());
+		long[] starts = series.getStarts(), ends = series.getEnds(), incrementStarts = series.getIncrementStarts(), incrementEnds = series.getIncrementEnds();
+		for (int i = 0; i < series.size(); i++) {
+			String message = zone.getID() + " base " + i;
+			ComputedTiming timing = root(parameters, zone, FIRST + i * STEP), incremented = new ComputedTiming(incrementedParameters, timing);
+			assertEquals(message, timing.getStart().getTimeInMillis(), starts[i]);
+			assertEquals(message, timing.getEnd().getTimeInMillis(), ends[i]);
+			assertEquals(message, incremented.getStart().getTimeInMillis(), incrementStarts[i]);
+			assertEquals(message, incremented.getEnd().getTimeInMillis(), incrementEnds[i]);
+			assertArrayEquals(message, increments(incremented.getStart(), (useIncrementDuration ? incremented : timing).getEnd()), series.getIncrements(i));
+		}
+	}
+	
+	/**
+	 * Replicates the loop in {@link toberumono.wrf.modules.GRIBModule#execute()}.
+	 */
+	private static long[] increments(Calendar start, Calendar end) {
+		Calendar increment = (Calendar) start.clone();
+		List<Long> out = new ArrayList<>();
+		if (increment.after(end))
+			return new long[0];
+		boolean wasBefore;
+		do {
+			out.add(increment.getTimeInMillis());
+			wasBefore = increment.before(end);
+			for (int i = 0; i < TIMESTEP.length; i++)
+				increment.add(TIMING_FIELD_IDS.get(i), TIMESTEP[i]);
+		} while (wasBefore);
+		return out.stream().mapToLong(Long::longValue).toArray();
+	}
+	
+	private static ComputedTiming root(ScopedMap parameters, TimeZone zone, long base) {
+		Calendar calendar = Calendar.getInstance(zone);
+		calendar.setTimeInMillis(base);
+		return new ComputedTiming(parameters, calendar, null);
+	}
+	
+	private static ScopedMap parameters() {
+		return map("offset", map("days", 1, "hours", 3), "round", map("magnitude", "hours", "diff", 6, "fraction", 1.0), "duration", map("hours", 48),
+				"clear", map("keep", "hours"));
+	}
+	
+	private static ScopedMap incrementedParameters() {
+		return map("offset", map("hours", 6), "duration", map("hours", 12));
+	}
+	
+	private static ScopedMap map(Object... entries) {
+		ScopedMap out = new ScopedMap(null);
+		for (int i = 0; i < entries.length; i += 2)
+			out.put((String) entries[i], entries[i + 1]);
+		return out;
+	}
+}